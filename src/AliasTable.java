@@ -0,0 +1,89 @@
+package btbcluster;
+
+import broadwick.rng.RNG;
+import java.io.Serializable;
+
+/**
+ * A table for sampling, in constant time, an index from a discrete distribution using Walker's alias method (with
+ * Vose's construction). Each index is given a column holding its own probability and an alias, a sample picks a
+ * column uniformly at random and then either the column or its alias.
+ */
+public final class AliasTable implements Serializable {
+
+    /**
+     * Create the table.
+     * @param weights the (non-negative) weight of each index, at least one weight must be positive.
+     */
+    public AliasTable(final double[] weights) {
+        final int n = weights.length;
+        this.probabilities = new double[n];
+        this.aliases = new int[n];
+
+        double total = 0.0;
+        for (double weight : weights) {
+            total += weight;
+        }
+
+        // split the columns into those with less and those with more than the mean weight.
+        final double[] scaled = new double[n];
+        final int[] small = new int[n];
+        final int[] large = new int[n];
+        int numSmall = 0;
+        int numLarge = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1.0) {
+                small[numSmall++] = i;
+            } else {
+                large[numLarge++] = i;
+            }
+        }
+
+        // fill each small column with the excess of a large one.
+        while (numSmall > 0 && numLarge > 0) {
+            final int less = small[--numSmall];
+            final int more = large[--numLarge];
+            probabilities[less] = scaled[less];
+            aliases[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            if (scaled[more] < 1.0) {
+                small[numSmall++] = more;
+            } else {
+                large[numLarge++] = more;
+            }
+        }
+        // whatever is left is full (up to rounding errors).
+        while (numLarge > 0) {
+            final int i = large[--numLarge];
+            probabilities[i] = 1.0;
+            aliases[i] = i;
+        }
+        while (numSmall > 0) {
+            final int i = small[--numSmall];
+            probabilities[i] = 1.0;
+            aliases[i] = i;
+        }
+    }
+
+    /**
+     * Sample an index.
+     * @param generator the random number generator to use.
+     * @return the index.
+     */
+    public int sample(final RNG generator) {
+        final int column = generator.getInteger(0, probabilities.length - 1);
+        return generator.getDouble() < probabilities[column] ? column : aliases[column];
+    }
+
+    /**
+     * Get the number of indices in the table.
+     * @return the number of indices.
+     */
+    public int size() {
+        return probabilities.length;
+    }
+
+    private final double[] probabilities;
+    private final int[] aliases;
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,34 @@
+package btbcluster;
+
+import broadwick.BroadwickException;
+import lombok.Getter;
+
+/**
+ * The columns of an output file; the csv header and the type of each column in a columnar file. The columns have the
+ * same names, and are in the same order, in both formats so that a columnar file can be converted back to csv (see
+ * ColumnarToCsv).
+ */
+public abstract class ColumnLayout {
+
+    /**
+     * Create the layout.
+     * @param header the csv header, ending with a newline.
+     * @param types  the type of each column in the header.
+     */
+    protected ColumnLayout(final String header, final ColumnType[] types) {
+        this.header = header;
+        this.columnNames = header.trim().split(",");
+        this.columnTypes = types;
+        if (columnNames.length != columnTypes.length) {
+            throw new BroadwickException(String.format("Layout [%s] has %d columns but %d types",
+                                                       header.trim(), columnNames.length, columnTypes.length));
+        }
+    }
+
+    @Getter
+    private final String header;
+    @Getter
+    private final String[] columnNames;
+    @Getter
+    private final ColumnType[] columnTypes;
+}
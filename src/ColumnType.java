@@ -0,0 +1,42 @@
+package btbcluster;
+
+/**
+ * The types of the columns of a columnar record file (see ColumnarWriter), each type also defines how its values are
+ * written in the csv layout of the records.
+ */
+public enum ColumnType {
+
+    /**
+     * An int, NULL_INT is written as null.
+     */
+    INT,
+    /**
+     * A positive int, negative values are missing and written as an empty string.
+     */
+    OPTIONAL_INT,
+    /**
+     * A positive double, negative values are missing and written as an empty string.
+     */
+    OPTIONAL_DOUBLE,
+    /**
+     * A date stored as the number of days from BroadwickConstants.ZERO_DATE, written as yyyy-MM-dd.
+     */
+    DATE,
+    /**
+     * A boolean, written as TRUE or FALSE.
+     */
+    BOOLEAN,
+    /**
+     * A string taken from a small set of values (ids, states, events) that is stored as a code in a dictionary.
+     */
+    STRING,
+    /**
+     * A string that is (mostly) unique to each record, e.g. a list of SNPs, that is stored as it is.
+     */
+    TEXT;
+
+    /**
+     * The value stored for a null int.
+     */
+    public static final int NULL_INT = Integer.MIN_VALUE;
+}
@@ -0,0 +1,305 @@
+package btbcluster;
+
+import broadwick.BroadwickConstants;
+import broadwick.BroadwickException;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import lombok.Getter;
+
+/**
+ * Read a columnar record file written by ColumnarWriter. Only the projected columns are decompressed, the other
+ * columns are skipped. The file is read a block at a time:
+ * <pre>
+ *   try (ColumnarReader reader = new ColumnarReader(fileName, "Scenario_ID", "date")) {
+ *       while (reader.nextBlock()) {
+ *           for (int row = 0; row < reader.getNumRows(); row++) {
+ *               ... reader.getInt(0, row) ... reader.format(1, row) ...
+ *           }
+ *       }
+ *   }
+ * </pre>
+ */
+public class ColumnarReader implements AutoCloseable {
+
+    /**
+     * Open a file, reading its header.
+     * @param fileName the name of the file.
+     * @param columns  the names of the columns to read, in the order they are to be accessed, all the columns are
+     *                 read if none are given.
+     */
+    public ColumnarReader(final String fileName, final String... columns) {
+        this.fileName = fileName;
+        this.inflater = new Inflater();
+        try {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), 1 << 16));
+            if (in.readInt() != ColumnarWriter.MAGIC) {
+                throw new BroadwickException(String.format("%s is not a columnar record file", fileName));
+            }
+            final int version = in.readInt();
+            if (version != ColumnarWriter.VERSION) {
+                throw new BroadwickException(String.format("%s has unsupported version %d", fileName, version));
+            }
+            final int numColumns = in.readInt();
+            this.fileColumnNames = new String[numColumns];
+            this.fileColumnTypes = new ColumnType[numColumns];
+            for (int i = 0; i < numColumns; i++) {
+                fileColumnNames[i] = readUtf8(in);
+                fileColumnTypes[i] = ColumnType.values()[in.readByte()];
+            }
+        } catch (IOException e) {
+            throw new BroadwickException(e);
+        }
+
+        // map the projected columns to the columns of the file.
+        final List<String> names = Arrays.asList(fileColumnNames);
+        final String[] projected = columns.length == 0 ? fileColumnNames : columns;
+        this.projection = new int[fileColumnNames.length];
+        Arrays.fill(projection, -1);
+        this.columnNames = projected.clone();
+        this.columnTypes = new ColumnType[projected.length];
+        this.blockColumns = new BlockColumn[projected.length];
+        for (int i = 0; i < projected.length; i++) {
+            final int fileColumn = names.indexOf(projected[i]);
+            if (fileColumn < 0) {
+                throw new BroadwickException(String.format("%s has no column %s", fileName, projected[i]));
+            }
+            if (projection[fileColumn] >= 0) {
+                throw new BroadwickException(String.format("Column %s is projected twice", projected[i]));
+            }
+            projection[fileColumn] = i;
+            columnTypes[i] = fileColumnTypes[fileColumn];
+            blockColumns[i] = new BlockColumn(columnTypes[i]);
+        }
+        this.dates = new HashMap<>();
+    }
+
+    /**
+     * Read the next block of rows.
+     * @return true if a block was read, false at the end of the file.
+     */
+    public boolean nextBlock() {
+        try {
+            numRows = in.readInt();
+            if (numRows == 0) {
+                return false;
+            }
+            for (int i = 0; i < fileColumnNames.length; i++) {
+                final int rawLength = in.readInt();
+                final int compressedLength = in.readInt();
+                if (projection[i] < 0) {
+                    skip(compressedLength);
+                } else {
+                    final byte[] bytes = new byte[compressedLength];
+                    in.readFully(bytes);
+                    blockColumns[projection[i]].read(inflate(bytes, rawLength), numRows);
+                }
+            }
+            return true;
+        } catch (EOFException e) {
+            throw new BroadwickException(String.format("%s is truncated", fileName));
+        } catch (IOException e) {
+            throw new BroadwickException(e);
+        }
+    }
+
+    /**
+     * Get the value of an INT, OPTIONAL_INT or DATE column (or the dictionary code of a STRING column).
+     * @param column the index of the column in the projection.
+     * @param row    the row in the current block.
+     * @return the value.
+     */
+    public int getInt(final int column, final int row) {
+        return blockColumns[column].ints[row];
+    }
+
+    /**
+     * Get the value of an OPTIONAL_DOUBLE column.
+     * @param column the index of the column in the projection.
+     * @param row    the row in the current block.
+     * @return the value.
+     */
+    public double getDouble(final int column, final int row) {
+        return blockColumns[column].doubles[row];
+    }
+
+    /**
+     * Get the value of a BOOLEAN column.
+     * @param column the index of the column in the projection.
+     * @param row    the row in the current block.
+     * @return the value.
+     */
+    public boolean getBoolean(final int column, final int row) {
+        return blockColumns[column].ints[row] != 0;
+    }
+
+    /**
+     * Get the value of a STRING or TEXT column.
+     * @param column the index of the column in the projection.
+     * @param row    the row in the current block.
+     * @return the value.
+     */
+    public String getString(final int column, final int row) {
+        final BlockColumn blockColumn = blockColumns[column];
+        if (blockColumn.type == ColumnType.STRING) {
+            return blockColumn.dictionary.get(blockColumn.ints[row]);
+        }
+        return blockColumn.strings[row];
+    }
+
+    /**
+     * Format the value of a column as it is written in the csv layout of the records.
+     * @param column the index of the column in the projection.
+     * @param row    the row in the current block.
+     * @return the value as it appears in the csv file.
+     */
+    public String format(final int column, final int row) {
+        switch (columnTypes[column]) {
+            case INT:
+                final int value = getInt(column, row);
+                return value == ColumnType.NULL_INT ? "null" : String.valueOf(value);
+            case OPTIONAL_INT:
+                return getInt(column, row) < 0 ? "" : String.valueOf(getInt(column, row));
+            case OPTIONAL_DOUBLE:
+                return getDouble(column, row) < 0 ? "" : String.valueOf(getDouble(column, row));
+            case DATE:
+                return dates.computeIfAbsent(getInt(column, row),
+                                             date -> BroadwickConstants.toDate(date).toString(DATE_FORMAT));
+            case BOOLEAN:
+                return getBoolean(column, row) ? "TRUE" : "FALSE";
+            default:
+                return getString(column, row);
+        }
+    }
+
+    @Override
+    public void close() {
+        inflater.end();
+        try {
+            in.close();
+        } catch (IOException e) {
+            throw new BroadwickException(e);
+        }
+    }
+
+    private void skip(final int length) throws IOException {
+        int skipped = 0;
+        while (skipped < length) {
+            final int n = in.skipBytes(length - skipped);
+            if (n <= 0) {
+                throw new EOFException();
+            }
+            skipped += n;
+        }
+    }
+
+    private byte[] inflate(final byte[] bytes, final int rawLength) {
+        final byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(bytes);
+        try {
+            int n = 0;
+            while (n < rawLength && !inflater.finished()) {
+                n += inflater.inflate(raw, n, rawLength - n);
+            }
+            if (n != rawLength) {
+                throw new BroadwickException(String.format("Corrupt block in %s", fileName));
+            }
+        } catch (DataFormatException e) {
+            throw new BroadwickException(e);
+        }
+        return raw;
+    }
+
+    private static String readUtf8(final DataInputStream data) throws IOException {
+        final byte[] bytes = new byte[data.readInt()];
+        data.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The values of a projected column in the current block.
+     */
+    private static final class BlockColumn {
+
+        BlockColumn(final ColumnType type) {
+            this.type = type;
+            this.dictionary = type == ColumnType.STRING ? new ArrayList<>() : null;
+        }
+
+        void read(final byte[] raw, final int numRows) throws IOException {
+            final DataInputStream data = new DataInputStream(new ByteArrayInputStream(raw));
+            switch (type) {
+                case OPTIONAL_DOUBLE:
+                    doubles = new double[numRows];
+                    for (int row = 0; row < numRows; row++) {
+                        doubles[row] = data.readDouble();
+                    }
+                    break;
+                case BOOLEAN:
+                    ints = new int[numRows];
+                    for (int row = 0; row < numRows; row++) {
+                        ints[row] = data.readByte();
+                    }
+                    break;
+                case TEXT:
+                    strings = new String[numRows];
+                    for (int row = 0; row < numRows; row++) {
+                        strings[row] = readUtf8(data);
+                    }
+                    break;
+                case STRING:
+                    final int numNewEntries = data.readInt();
+                    for (int i = 0; i < numNewEntries; i++) {
+                        dictionary.add(readUtf8(data));
+                    }
+                    // the codes follow the new entries.
+                    readInts(data, numRows);
+                    break;
+                default:
+                    readInts(data, numRows);
+                    break;
+            }
+        }
+
+        private void readInts(final DataInputStream data, final int numRows) throws IOException {
+            ints = new int[numRows];
+            for (int row = 0; row < numRows; row++) {
+                ints[row] = data.readInt();
+            }
+        }
+
+        private final ColumnType type;
+        private final List<String> dictionary;
+        private int[] ints;
+        private double[] doubles;
+        private String[] strings;
+    }
+
+    private final String fileName;
+    private final Inflater inflater;
+    private final DataInputStream in;
+    private final String[] fileColumnNames;
+    private final ColumnType[] fileColumnTypes;
+    private final int[] projection;
+    @Getter
+    private final String[] columnNames;
+    @Getter
+    private final ColumnType[] columnTypes;
+    private final BlockColumn[] blockColumns;
+    private final Map<Integer, String> dates;
+    @Getter
+    private int numRows;
+    private static final String DATE_FORMAT = "yyyy-MM-dd";
+}
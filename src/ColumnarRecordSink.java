@@ -0,0 +1,68 @@
+package btbcluster;
+
+import broadwick.BroadwickException;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A record sink that writes a columnar file (see ColumnarWriter) with the scenario id as its first column, followed
+ * by the columns of the record layout. Only the current block of rows is kept in memory.
+ */
+public class ColumnarRecordSink implements RecordSink {
+
+    /**
+     * Create the sink, and the file.
+     * @param fileName the name of the file.
+     * @param layout   the layout of the records.
+     */
+    public ColumnarRecordSink(final String fileName, final ColumnLayout layout) {
+        final int numColumns = layout.getColumnNames().length;
+        final String[] names = new String[numColumns + 1];
+        final ColumnType[] types = new ColumnType[numColumns + 1];
+        names[0] = "Scenario_ID";
+        types[0] = ColumnType.INT;
+        System.arraycopy(layout.getColumnNames(), 0, names, 1, numColumns);
+        System.arraycopy(layout.getColumnTypes(), 0, types, 1, numColumns);
+        this.fileName = fileName;
+        this.columnTypes = layout.getColumnTypes();
+        this.writer = new ColumnarWriter(fileName, names, types);
+    }
+
+    @Override
+    public synchronized <T> void write(final int scenarioId, final Collection<T> records,
+                                       final RecordLayout<? super T> layout) {
+        checkLayout(layout);
+        for (T record : records) {
+            writer.writeInt(scenarioId);
+            layout.write(record, writer);
+            writer.endRow();
+        }
+    }
+
+    @Override
+    public synchronized <T> void write(final int scenarioId, final T table, final int numRows,
+                                       final TableLayout<? super T> layout) {
+        checkLayout(layout);
+        for (int row = 0; row < numRows; row++) {
+            writer.writeInt(scenarioId);
+            layout.write(table, row, writer);
+            writer.endRow();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        writer.close();
+    }
+
+    private void checkLayout(final ColumnLayout layout) {
+        if (!Arrays.equals(layout.getColumnTypes(), columnTypes)) {
+            throw new BroadwickException(String.format("Cannot write records with columns [%s] to %s",
+                                                       layout.getHeader().trim(), fileName));
+        }
+    }
+
+    private final String fileName;
+    private final ColumnType[] columnTypes;
+    private final ColumnarWriter writer;
+}
@@ -0,0 +1,66 @@
+package btbcluster;
+
+import broadwick.io.FileOutput;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Export a columnar record file to the csv layout the records had before, optionally keeping only some columns.
+ * <pre>
+ *   java btbcluster.ColumnarToCsv cattleTestResults.0.bin cattleTestResults.0.csv [column...]
+ * </pre>
+ */
+@Slf4j
+public final class ColumnarToCsv {
+
+    private ColumnarToCsv() {
+        // utility class
+    }
+
+    /**
+     * Convert a columnar record file to csv.
+     * @param args the columnar file, the csv file and, optionally, the names of the columns to export.
+     */
+    public static void main(final String[] args) {
+        if (args.length < 2) {
+            log.error("Usage: ColumnarToCsv <columnar file> <csv file> [column...]");
+            return;
+        }
+        final String[] columns = new String[args.length - 2];
+        System.arraycopy(args, 2, columns, 0, columns.length);
+        final long numRows = convert(args[0], args[1], columns);
+        log.info("Written {} rows of {} to {}", numRows, args[0], args[1]);
+    }
+
+    /**
+     * Convert a columnar record file to csv.
+     * @param columnarFileName the name of the columnar file.
+     * @param csvFileName      the name of the csv file.
+     * @param columns          the names of the columns to export, all the columns are exported if none are given.
+     * @return the number of rows written.
+     */
+    public static long convert(final String columnarFileName, final String csvFileName, final String... columns) {
+        long numRows = 0;
+        try (ColumnarReader reader = new ColumnarReader(columnarFileName, columns);
+             FileOutput fo = new FileOutput(csvFileName, false, false)) {
+            fo.write(String.join(",", reader.getColumnNames()) + "\n");
+            final int numColumns = reader.getColumnNames().length;
+            final StringBuilder sb = new StringBuilder();
+            while (reader.nextBlock()) {
+                for (int row = 0; row < reader.getNumRows(); row++) {
+                    for (int column = 0; column < numColumns; column++) {
+                        if (column > 0) {
+                            sb.append(",");
+                        }
+                        sb.append(reader.format(column, row));
+                    }
+                    sb.append("\n");
+                }
+                fo.write(sb.toString());
+                sb.setLength(0);
+                numRows += reader.getNumRows();
+            }
+            fo.flush();
+        }
+        return numRows;
+    }
+}
@@ -0,0 +1,286 @@
+package btbcluster;
+
+import broadwick.BroadwickException;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Write records to a compact binary columnar file. The rows are written in blocks; within a block the values of each
+ * column are stored together and compressed separately so that a reader can skip the columns it does not need. Dates
+ * are stored as ints (days from BroadwickConstants.ZERO_DATE) and STRING columns (unit ids, animal ids, states...) are
+ * dictionary encoded, each block holding the dictionary entries that first appear in it.
+ * <p>
+ * The file is laid out as
+ * <pre>
+ *   MAGIC, VERSION, number of columns, (name, type) of each column,
+ *   blocks: number of rows, (raw length, compressed length, deflated bytes) of each column,
+ *   0 (the end of the file).
+ * </pre>
+ * The values of a column are big-endian ints (INT, OPTIONAL_INT, DATE and the dictionary codes of STRING), doubles
+ * (OPTIONAL_DOUBLE), bytes (BOOLEAN) or length prefixed UTF-8 strings (TEXT and the dictionary entries of STRING, which
+ * are preceded by the number of new entries). A row is written by writing each of its columns in order and then
+ * calling endRow(), the writer is not thread safe.
+ */
+public class ColumnarWriter implements AutoCloseable {
+
+    /**
+     * Create the file and write its header.
+     * @param fileName the name of the file.
+     * @param names    the names of the columns.
+     * @param types    the types of the columns.
+     */
+    public ColumnarWriter(final String fileName, final String[] names, final ColumnType[] types) {
+        this.fileName = fileName;
+        this.columns = new ColumnBuffer[types.length];
+        for (int i = 0; i < types.length; i++) {
+            columns[i] = new ColumnBuffer(types[i]);
+        }
+        this.deflater = new Deflater(Deflater.BEST_SPEED);
+        this.compressed = new ByteArrayOutputStream();
+        this.chunk = new byte[1 << 14];
+
+        try {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(names.length);
+            for (int i = 0; i < names.length; i++) {
+                writeUtf8(out, names[i]);
+                out.writeByte(types[i].ordinal());
+            }
+        } catch (IOException e) {
+            throw new BroadwickException(e);
+        }
+    }
+
+    /**
+     * Write the value of the next column of an INT or OPTIONAL_INT column.
+     * @param value the value.
+     */
+    public void writeInt(final int value) {
+        try {
+            next(ColumnType.INT, ColumnType.OPTIONAL_INT).data.writeInt(value);
+        } catch (IOException e) {
+            throw new BroadwickException(e);
+        }
+    }
+
+    /**
+     * Write the value of the next column of a DATE column.
+     * @param date the date (the number of days from BroadwickConstants.ZERO_DATE).
+     */
+    public void writeDate(final int date) {
+        try {
+            next(ColumnType.DATE, ColumnType.DATE).data.writeInt(date);
+        } catch (IOException e) {
+            throw new BroadwickException(e);
+        }
+    }
+
+    /**
+     * Write the value of the next column of an OPTIONAL_DOUBLE column.
+     * @param value the value.
+     */
+    public void writeDouble(final double value) {
+        try {
+            next(ColumnType.OPTIONAL_DOUBLE, ColumnType.OPTIONAL_DOUBLE).data.writeDouble(value);
+        } catch (IOException e) {
+            throw new BroadwickException(e);
+        }
+    }
+
+    /**
+     * Write the value of the next column of a BOOLEAN column.
+     * @param value the value.
+     */
+    public void writeBoolean(final boolean value) {
+        try {
+            next(ColumnType.BOOLEAN, ColumnType.BOOLEAN).data.writeByte(value ? 1 : 0);
+        } catch (IOException e) {
+            throw new BroadwickException(e);
+        }
+    }
+
+    /**
+     * Write the value of the next column of a STRING or TEXT column.
+     * @param value the value.
+     */
+    public void writeString(final String value) {
+        final String text = String.valueOf(value);
+        final ColumnBuffer column = next(ColumnType.STRING, ColumnType.TEXT);
+        try {
+            if (column.type == ColumnType.TEXT) {
+                writeUtf8(column.data, text);
+            } else {
+                Integer code = column.dictionary.get(text);
+                if (code == null) {
+                    code = column.dictionary.size();
+                    column.dictionary.put(text, code);
+                    column.newEntries.add(text);
+                }
+                column.data.writeInt(code);
+            }
+        } catch (IOException e) {
+            throw new BroadwickException(e);
+        }
+    }
+
+    /**
+     * End the current row, once a block of rows has been written it is compressed and written to the file.
+     */
+    public void endRow() {
+        if (column != columns.length) {
+            throw new BroadwickException(String.format("Row %d of %s has %d columns, expected %d",
+                                                       numRows, fileName, column, columns.length));
+        }
+        column = 0;
+        numRows++;
+        if (numRows >= BLOCK_SIZE) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (column != 0) {
+            throw new BroadwickException(String.format("Closing %s with an incomplete row", fileName));
+        }
+        writeBlock();
+        try {
+            out.writeInt(0);
+            out.close();
+        } catch (IOException e) {
+            throw new BroadwickException(e);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Get the buffer of the next column in the row, checking it is of the expected type.
+     * @param type  the expected type.
+     * @param other another type that is written in the same way.
+     * @return the buffer of the column.
+     */
+    private ColumnBuffer next(final ColumnType type, final ColumnType other) {
+        if (column >= columns.length) {
+            throw new BroadwickException(String.format("Row %d of %s has more than %d columns",
+                                                       numRows, fileName, columns.length));
+        }
+        final ColumnBuffer buffer = columns[column];
+        if (buffer.type != type && buffer.type != other) {
+            throw new BroadwickException(String.format("Column %d of %s is %s, not %s",
+                                                       column, fileName, buffer.type, type));
+        }
+        column++;
+        return buffer;
+    }
+
+    /**
+     * Compress and write the rows written since the last block.
+     */
+    private void writeBlock() {
+        if (numRows == 0) {
+            return;
+        }
+        try {
+            out.writeInt(numRows);
+            for (ColumnBuffer buffer : columns) {
+                final byte[] raw = buffer.drain();
+                deflater.reset();
+                deflater.setInput(raw);
+                deflater.finish();
+                compressed.reset();
+                while (!deflater.finished()) {
+                    final int n = deflater.deflate(chunk);
+                    compressed.write(chunk, 0, n);
+                }
+                out.writeInt(raw.length);
+                out.writeInt(compressed.size());
+                compressed.writeTo(out);
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new BroadwickException(e);
+        }
+        numRows = 0;
+    }
+
+    /**
+     * Write a string as its length in bytes followed by its UTF-8 encoding.
+     * @param data  the stream to write to.
+     * @param value the string.
+     * @throws IOException if the string could not be written.
+     */
+    private static void writeUtf8(final DataOutputStream data, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    /**
+     * The values of a column in the current block.
+     */
+    private static final class ColumnBuffer {
+
+        ColumnBuffer(final ColumnType type) {
+            this.type = type;
+            this.bytes = new ByteArrayOutputStream();
+            this.data = new DataOutputStream(bytes);
+            this.dictionary = type == ColumnType.STRING ? new HashMap<>() : null;
+            this.newEntries = type == ColumnType.STRING ? new ArrayList<>() : null;
+        }
+
+        /**
+         * Get the raw bytes of the column in the block (preceded, for a STRING column, by the new dictionary
+         * entries) and clear the buffer for the next block.
+         * @return the bytes of the column.
+         * @throws IOException if the bytes could not be written.
+         */
+        byte[] drain() throws IOException {
+            final byte[] raw;
+            if (type == ColumnType.STRING) {
+                final ByteArrayOutputStream block = new ByteArrayOutputStream(bytes.size() + 16 * newEntries.size());
+                final DataOutputStream blockData = new DataOutputStream(block);
+                blockData.writeInt(newEntries.size());
+                for (String entry : newEntries) {
+                    writeUtf8(blockData, entry);
+                }
+                bytes.writeTo(blockData);
+                raw = block.toByteArray();
+                newEntries.clear();
+            } else {
+                raw = bytes.toByteArray();
+            }
+            bytes.reset();
+            return raw;
+        }
+
+        private final ColumnType type;
+        private final ByteArrayOutputStream bytes;
+        private final DataOutputStream data;
+        private final Map<String, Integer> dictionary;
+        private final List<String> newEntries;
+    }
+
+    private final String fileName;
+    private final ColumnBuffer[] columns;
+    private final Deflater deflater;
+    private final ByteArrayOutputStream compressed;
+    private final byte[] chunk;
+    private final DataOutputStream out;
+    private int column;
+    private int numRows;
+    static final int MAGIC = 0x42544243;
+    static final int VERSION = 1;
+    private static final int BLOCK_SIZE = 8192;
+}
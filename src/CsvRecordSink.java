@@ -0,0 +1,65 @@
+package btbcluster;
+
+import broadwick.io.FileOutput;
+import java.util.Collection;
+
+/**
+ * A record sink that writes csv rows. The rows are buffered in a fixed size buffer so the memory used does not depend
+ * on the number of scenarios or records.
+ */
+public class CsvRecordSink implements RecordSink {
+
+    /**
+     * Create the sink, and the file, writing the header of the file.
+     * @param fileName the name of the file.
+     * @param layout   the layout of the records.
+     */
+    public CsvRecordSink(final String fileName, final ColumnLayout layout) {
+        this.file = new FileOutput(fileName, false, false);
+        this.buffer = new StringBuilder(BUFFER_SIZE);
+        this.file.write("Scenario_ID," + layout.getHeader());
+        this.file.flush();
+    }
+
+    @Override
+    public synchronized <T> void write(final int scenarioId, final Collection<T> records,
+                                       final RecordLayout<? super T> layout) {
+        for (T record : records) {
+            buffer.append(scenarioId).append(",").append(layout.format(record)).append("\n");
+            if (buffer.length() >= BUFFER_SIZE) {
+                flushBuffer();
+            }
+        }
+        flushBuffer();
+    }
+
+    @Override
+    public synchronized <T> void write(final int scenarioId, final T table, final int numRows,
+                                       final TableLayout<? super T> layout) {
+        for (int row = 0; row < numRows; row++) {
+            buffer.append(scenarioId).append(",").append(layout.format(table, row)).append("\n");
+            if (buffer.length() >= BUFFER_SIZE) {
+                flushBuffer();
+            }
+        }
+        flushBuffer();
+    }
+
+    @Override
+    public synchronized void close() {
+        flushBuffer();
+        file.close();
+    }
+
+    private void flushBuffer() {
+        if (buffer.length() > 0) {
+            file.write(buffer.toString());
+            file.flush();
+            buffer.setLength(0);
+        }
+    }
+
+    private final FileOutput file;
+    private final StringBuilder buffer;
+    private static final int BUFFER_SIZE = 1 << 16;
+}
@@ -0,0 +1,132 @@
+package btbcluster;
+
+import broadwick.rng.RNG;
+import java.util.Arrays;
+
+/**
+ * A sampler of the destination of a transmission between species, e.g. the farm within range of a reservoir to which
+ * a badger passes the infection. Only the destinations that still have susceptible animals (more animals than
+ * infections) can be drawn; each group of neighbours (the farms of a reservoir or the reservoirs of a farm) keeps the
+ * available destinations in its own Fenwick (binary indexed) tree, so a destination is drawn, uniformly from those
+ * available, in O(log k) time for a group of k neighbours and the event is only dropped if none are available.
+ * <p>
+ * A destination that is listed more than once in a group is drawn in proportion to the number of times it is listed,
+ * as it would be by picking a neighbour at random. The sampler holds the state of a single scenario.
+ */
+public class DestinationSampler {
+
+    /**
+     * Create the sampler, no destination is available.
+     * @param neighbours      the destinations of each group (the units from which the infection is passed).
+     * @param numDestinations the number of destinations.
+     */
+    public DestinationSampler(final UnitNeighbours neighbours, final int numDestinations) {
+        this.neighbours = neighbours;
+        final int numGroups = neighbours.getNumUnits();
+        final int numSlots = neighbours.getNumLinks();
+
+        // the slots (positions in the groups) at which each destination is listed.
+        this.destinationOffsets = new int[numDestinations + 1];
+        for (int slot = 0; slot < numSlots; slot++) {
+            destinationOffsets[neighbours.get(slot) + 1]++;
+        }
+        for (int destination = 0; destination < numDestinations; destination++) {
+            destinationOffsets[destination + 1] += destinationOffsets[destination];
+        }
+        this.destinationSlots = new int[numSlots];
+        this.slotGroups = new int[numSlots];
+        final int[] next = Arrays.copyOf(destinationOffsets, numDestinations);
+        for (int group = 0; group < numGroups; group++) {
+            for (int slot = neighbours.getFirst(group); slot < neighbours.getEnd(group); slot++) {
+                destinationSlots[next[neighbours.get(slot)]++] = slot;
+                slotGroups[slot] = group;
+            }
+        }
+
+        this.tree = new int[numSlots];
+        this.numAvailable = new int[numGroups];
+        this.available = new boolean[numDestinations];
+    }
+
+    /**
+     * Reset the sampler so that no destination is available.
+     */
+    public void reset() {
+        Arrays.fill(tree, 0);
+        Arrays.fill(numAvailable, 0);
+        Arrays.fill(available, false);
+    }
+
+    /**
+     * Set whether a destination can receive an infection, i.e. whether it has susceptible animals.
+     * @param destination the index of the destination.
+     * @param isAvailable true if the destination has susceptible animals.
+     */
+    public void setAvailable(final int destination, final boolean isAvailable) {
+        if (available[destination] == isAvailable) {
+            return;
+        }
+        available[destination] = isAvailable;
+        final int delta = isAvailable ? 1 : -1;
+        for (int i = destinationOffsets[destination]; i < destinationOffsets[destination + 1]; i++) {
+            final int slot = destinationSlots[i];
+            final int group = slotGroups[slot];
+            numAvailable[group] += delta;
+            add(group, slot - neighbours.getFirst(group), delta);
+        }
+    }
+
+    /**
+     * Draw a destination, at random, from the available neighbours of a group.
+     * @param group     the index of the group.
+     * @param generator the random number generator to use.
+     * @return the index of the destination, or -1 if no neighbour of the group is available.
+     */
+    public int sample(final int group, final RNG generator) {
+        if (numAvailable[group] == 0) {
+            return -1;
+        }
+        // find the slot holding the r-th available neighbour by descending the tree of the group.
+        final int base = neighbours.getFirst(group);
+        final int size = neighbours.size(group);
+        int r = generator.getInteger(0, numAvailable[group] - 1);
+        int position = 0;
+        for (int step = Integer.highestOneBit(size); step > 0; step >>= 1) {
+            final int next = position + step;
+            if (next <= size && tree[base + next - 1] <= r) {
+                position = next;
+                r -= tree[base + next - 1];
+            }
+        }
+        return neighbours.get(base + position);
+    }
+
+    /**
+     * Get the number of available neighbours of a group.
+     * @param group the index of the group.
+     * @return the number of available neighbours.
+     */
+    public int getNumAvailable(final int group) {
+        return numAvailable[group];
+    }
+
+    private void add(final int group, final int position, final int delta) {
+        final int base = neighbours.getFirst(group);
+        final int size = neighbours.size(group);
+        for (int i = position + 1; i <= size; i += i & -i) {
+            tree[base + i - 1] += delta;
+        }
+    }
+
+    // the neighbours of the groups, the neighbours of group g are at slots neighbours.getFirst(g) onwards.
+    private final UnitNeighbours neighbours;
+    private final int[] slotGroups;
+    // the slots at which destination d is listed are destinationSlots[destinationOffsets[d]] to
+    // destinationSlots[destinationOffsets[d + 1] - 1].
+    private final int[] destinationOffsets;
+    private final int[] destinationSlots;
+    // the Fenwick trees of the groups, stored one after the other at the same positions as their neighbours.
+    private final int[] tree;
+    private final int[] numAvailable;
+    private final boolean[] available;
+}
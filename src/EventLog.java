@@ -0,0 +1,498 @@
+package btbcluster;
+
+import broadwick.BroadwickConstants;
+import broadwick.BroadwickException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Getter;
+
+/**
+ * The log of the tests and movements of a scenario. Rather than creating an object per record (with its dates as
+ * DateTime objects) each table stores its records in growable primitive columns; unit ids, animal ids and the names
+ * of events are interned into indices and the dates are kept as the number of days from
+ * BroadwickConstants.ZERO_DATE, they are only formatted when the tables are written. Clearing the log keeps the
+ * capacity of the columns so a scenario that is rerun does not reallocate them.
+ */
+public class EventLog {
+
+    public EventLog() {
+        this.units = new UnitIndex();
+        this.animals = new UnitIndex();
+        this.labels = new UnitIndex();
+        this.formattedDates = new HashMap<>();
+        this.cattleTests = new CattleTests();
+        this.badgerTests = new BadgerTests();
+        this.herdTests = new HerdTests();
+        this.movements = new Movements();
+        this.recordingCattleTests = true;
+        this.recordingBadgerTests = true;
+        this.recordingHerdTests = true;
+        this.recordingMovements = true;
+    }
+
+    /**
+     * Set the tables that are recorded, the records of a table that is not recorded are dropped as they are logged.
+     * @param profile   the output profile giving the streams that are collected.
+     * @param recording false if no records are kept for the scenario.
+     */
+    public void setRecording(final OutputProfile profile, final boolean recording) {
+        this.recordingCattleTests = recording && profile.isEnabled(OutputProfile.Stream.CATTLE_TESTS);
+        this.recordingBadgerTests = recording && profile.isEnabled(OutputProfile.Stream.BADGER_TESTS);
+        this.recordingHerdTests = recording && profile.isEnabled(OutputProfile.Stream.HERD_TESTS);
+        this.recordingMovements = recording && profile.isEnabled(OutputProfile.Stream.MOVEMENTS);
+    }
+
+    /**
+     * Remove all the records from the log.
+     */
+    public void clear() {
+        cattleTests.size = 0;
+        badgerTests.size = 0;
+        herdTests.size = 0;
+        movements.size = 0;
+    }
+
+    /**
+     * Record the test of a cow.
+     * @param date           the date of the test (number of days from BroadwickConstants.ZERO_DATE).
+     * @param unitId         the id of the unit in which the animal tested resides.
+     * @param animalId       the id of the tested animal.
+     * @param positiveResult true if the animal tested positive, false otherwise.
+     * @param infectionState infectionState of the animal
+     * @param event          Why was the test performed? pre-move, abattoir, WHT
+     */
+    public void recordCattleTest(final int date, final String unitId, final String animalId,
+                                 final boolean positiveResult, final InfectionStateCow infectionState,
+                                 final String event) {
+        if (!recordingCattleTests) {
+            return;
+        }
+        final CattleTests table = cattleTests;
+        final int row = table.size;
+        if (row == table.dates.length) {
+            table.grow();
+        }
+        table.dates[row] = date;
+        table.units[row] = units.add(unitId);
+        table.animals[row] = animals.add(animalId);
+        table.positive[row] = positiveResult;
+        table.states[row] = (byte) infectionState.ordinal();
+        table.events[row] = label(event);
+        table.size++;
+    }
+
+    /**
+     * Record the test (or detection) of a badger.
+     * @param date           the date of the test (number of days from BroadwickConstants.ZERO_DATE).
+     * @param animalId       the id of the tested animal.
+     * @param unitIdDepart   the id of the unit in which the animal resided before the move.
+     * @param unitIdDest     the id of the unit in which the animal resides after the move.
+     * @param capture        true if the animal was captured.
+     * @param positiveResult true if the animal tested positive, false otherwise.
+     * @param infectionState infectionState of the animal
+     * @param event          Why was the test performed? move, death, capture
+     */
+    public void recordBadgerTest(final int date, final String animalId, final String unitIdDepart,
+                                 final String unitIdDest, final boolean capture, final boolean positiveResult,
+                                 final InfectionStateBadger infectionState, final String event) {
+        if (!recordingBadgerTests) {
+            return;
+        }
+        final BadgerTests table = badgerTests;
+        final int row = table.size;
+        if (row == table.dates.length) {
+            table.grow();
+        }
+        table.dates[row] = date;
+        table.animals[row] = animals.add(animalId);
+        table.departures[row] = units.add(unitIdDepart);
+        table.destinations[row] = units.add(unitIdDest);
+        table.captured[row] = capture;
+        table.positive[row] = positiveResult;
+        table.states[row] = (byte) infectionState.ordinal();
+        table.events[row] = label(event);
+        table.size++;
+    }
+
+    /**
+     * Record the test of a herd.
+     * @param date     the date of the test (number of days from BroadwickConstants.ZERO_DATE).
+     * @param unitId   the id of the herd.
+     * @param infected the number of infected animals in the herd.
+     * @param reactors the number of reactors found.
+     * @param event    the reason for the test.
+     */
+    public void recordHerdTest(final int date, final String unitId, final int infected, final int reactors,
+                               final String event) {
+        if (!recordingHerdTests) {
+            return;
+        }
+        final HerdTests table = herdTests;
+        final int row = table.size;
+        if (row == table.dates.length) {
+            table.grow();
+        }
+        table.dates[row] = date;
+        table.units[row] = units.add(unitId);
+        table.infected[row] = infected;
+        table.reactors[row] = reactors;
+        table.events[row] = label(event);
+        table.size++;
+    }
+
+    /**
+     * Record a movement (or death) of animals, negative values are not known for the movement and are left empty in
+     * the output.
+     * @param date        the date of the movement (number of days from BroadwickConstants.ZERO_DATE).
+     * @param species     the species moved.
+     * @param unitIdFrom  the id of the unit the animals left.
+     * @param unitIdTo    the id of the unit the animals moved to, empty if they died.
+     * @param unitSize    the size of the departure unit.
+     * @param animMove    the number of animals moved.
+     * @param infAnim     the number of infected animals in the departure unit.
+     * @param infMove     the number of infected animals moved.
+     * @param rndChoice   the movement chosen.
+     * @param rndNum      the random number used.
+     */
+    public void recordMovement(final int date, final String species, final String unitIdFrom, final String unitIdTo,
+                               final int unitSize, final int animMove, final int infAnim, final int infMove,
+                               final int rndChoice, final double rndNum) {
+        if (!recordingMovements) {
+            return;
+        }
+        final Movements table = movements;
+        final int row = table.size;
+        if (row == table.dates.length) {
+            table.grow();
+        }
+        table.dates[row] = date;
+        table.species[row] = label(species);
+        table.departures[row] = units.add(unitIdFrom);
+        table.destinations[row] = units.add(unitIdTo);
+        table.unitSizes[row] = unitSize;
+        table.animalsMoved[row] = animMove;
+        table.infectedAnimals[row] = infAnim;
+        table.infectedMoved[row] = infMove;
+        table.choices[row] = rndChoice;
+        table.randomNumbers[row] = rndNum;
+        table.size++;
+    }
+
+    private byte label(final String label) {
+        final int index = labels.add(label);
+        if (index > Byte.MAX_VALUE) {
+            throw new BroadwickException(String.format("Too many event names in the event log, cannot add %s", label));
+        }
+        return (byte) index;
+    }
+
+    private String formatDate(final int date) {
+        String formatted = formattedDates.get(date);
+        if (formatted == null) {
+            formatted = BroadwickConstants.toDate(date).toString(DATE_FORMAT);
+            formattedDates.put(date, formatted);
+        }
+        return formatted;
+    }
+
+    private static String optional(final int value) {
+        return value < 0 ? "" : String.valueOf(value);
+    }
+
+    private static int grownCapacity(final int capacity) {
+        return capacity + (capacity >> 1);
+    }
+
+    /**
+     * The tests of cattle.
+     */
+    public final class CattleTests {
+
+        private CattleTests() {
+            final int capacity = INITIAL_CAPACITY;
+            dates = new int[capacity];
+            units = new int[capacity];
+            animals = new int[capacity];
+            positive = new boolean[capacity];
+            states = new byte[capacity];
+            events = new byte[capacity];
+        }
+
+        private void grow() {
+            final int capacity = grownCapacity(dates.length);
+            dates = Arrays.copyOf(dates, capacity);
+            units = Arrays.copyOf(units, capacity);
+            animals = Arrays.copyOf(animals, capacity);
+            positive = Arrays.copyOf(positive, capacity);
+            states = Arrays.copyOf(states, capacity);
+            events = Arrays.copyOf(events, capacity);
+        }
+
+        private String format(final int row) {
+            final StringBuilder sb = new StringBuilder();
+            sb.append(formatDate(dates[row])).append(",");
+            sb.append(EventLog.this.units.getId(units[row])).append(",");
+            sb.append(EventLog.this.animals.getId(animals[row])).append(",");
+            sb.append(positive[row] ? "TRUE" : "FALSE");
+            sb.append(",").append(InfectionStateCow.values()[states[row]]);
+            sb.append(",").append(labels.getId(events[row]));
+            return sb.toString();
+        }
+
+        private void write(final int row, final ColumnarWriter out) {
+            out.writeDate(dates[row]);
+            out.writeString(EventLog.this.units.getId(units[row]));
+            out.writeString(EventLog.this.animals.getId(animals[row]));
+            out.writeBoolean(positive[row]);
+            out.writeString(InfectionStateCow.values()[states[row]].toString());
+            out.writeString(labels.getId(events[row]));
+        }
+
+        @Getter
+        private int size;
+        private int[] dates;
+        private int[] units;
+        private int[] animals;
+        private boolean[] positive;
+        private byte[] states;
+        private byte[] events;
+    }
+
+    /**
+     * The tests (and detections) of badgers.
+     */
+    public final class BadgerTests {
+
+        private BadgerTests() {
+            final int capacity = INITIAL_CAPACITY;
+            dates = new int[capacity];
+            animals = new int[capacity];
+            departures = new int[capacity];
+            destinations = new int[capacity];
+            captured = new boolean[capacity];
+            positive = new boolean[capacity];
+            states = new byte[capacity];
+            events = new byte[capacity];
+        }
+
+        private void grow() {
+            final int capacity = grownCapacity(dates.length);
+            dates = Arrays.copyOf(dates, capacity);
+            animals = Arrays.copyOf(animals, capacity);
+            departures = Arrays.copyOf(departures, capacity);
+            destinations = Arrays.copyOf(destinations, capacity);
+            captured = Arrays.copyOf(captured, capacity);
+            positive = Arrays.copyOf(positive, capacity);
+            states = Arrays.copyOf(states, capacity);
+            events = Arrays.copyOf(events, capacity);
+        }
+
+        private String format(final int row) {
+            final StringBuilder sb = new StringBuilder();
+            sb.append(formatDate(dates[row])).append(",");
+            sb.append(EventLog.this.animals.getId(animals[row])).append(",");
+            sb.append(units.getId(departures[row])).append(",");
+            sb.append(units.getId(destinations[row])).append(",");
+            sb.append(captured[row] ? "TRUE" : "FALSE").append(",");
+            sb.append(positive[row] ? "TRUE" : "FALSE");
+            sb.append(",").append(InfectionStateBadger.values()[states[row]]);
+            sb.append(",").append(labels.getId(events[row]));
+            return sb.toString();
+        }
+
+        private void write(final int row, final ColumnarWriter out) {
+            out.writeDate(dates[row]);
+            out.writeString(EventLog.this.animals.getId(animals[row]));
+            out.writeString(units.getId(departures[row]));
+            out.writeString(units.getId(destinations[row]));
+            out.writeBoolean(captured[row]);
+            out.writeBoolean(positive[row]);
+            out.writeString(InfectionStateBadger.values()[states[row]].toString());
+            out.writeString(labels.getId(events[row]));
+        }
+
+        @Getter
+        private int size;
+        private int[] dates;
+        private int[] animals;
+        private int[] departures;
+        private int[] destinations;
+        private boolean[] captured;
+        private boolean[] positive;
+        private byte[] states;
+        private byte[] events;
+    }
+
+    /**
+     * The tests of herds.
+     */
+    public final class HerdTests {
+
+        private HerdTests() {
+            final int capacity = INITIAL_CAPACITY;
+            dates = new int[capacity];
+            units = new int[capacity];
+            infected = new int[capacity];
+            reactors = new int[capacity];
+            events = new byte[capacity];
+        }
+
+        private void grow() {
+            final int capacity = grownCapacity(dates.length);
+            dates = Arrays.copyOf(dates, capacity);
+            units = Arrays.copyOf(units, capacity);
+            infected = Arrays.copyOf(infected, capacity);
+            reactors = Arrays.copyOf(reactors, capacity);
+            events = Arrays.copyOf(events, capacity);
+        }
+
+        private String format(final int row) {
+            final StringBuilder sb = new StringBuilder();
+            sb.append(formatDate(dates[row])).append(",");
+            sb.append(EventLog.this.units.getId(units[row])).append(",");
+            sb.append(infected[row]).append(",");
+            sb.append(reactors[row]).append(",");
+            sb.append(labels.getId(events[row]));
+            return sb.toString();
+        }
+
+        private void write(final int row, final ColumnarWriter out) {
+            out.writeDate(dates[row]);
+            out.writeString(EventLog.this.units.getId(units[row]));
+            out.writeInt(infected[row]);
+            out.writeInt(reactors[row]);
+            out.writeString(labels.getId(events[row]));
+        }
+
+        @Getter
+        private int size;
+        private int[] dates;
+        private int[] units;
+        private int[] infected;
+        private int[] reactors;
+        private byte[] events;
+    }
+
+    /**
+     * The movements (and deaths) of animals.
+     */
+    public final class Movements {
+
+        private Movements() {
+            final int capacity = INITIAL_CAPACITY;
+            dates = new int[capacity];
+            species = new byte[capacity];
+            departures = new int[capacity];
+            destinations = new int[capacity];
+            unitSizes = new int[capacity];
+            animalsMoved = new int[capacity];
+            infectedAnimals = new int[capacity];
+            infectedMoved = new int[capacity];
+            choices = new int[capacity];
+            randomNumbers = new double[capacity];
+        }
+
+        private void grow() {
+            final int capacity = grownCapacity(dates.length);
+            dates = Arrays.copyOf(dates, capacity);
+            species = Arrays.copyOf(species, capacity);
+            departures = Arrays.copyOf(departures, capacity);
+            destinations = Arrays.copyOf(destinations, capacity);
+            unitSizes = Arrays.copyOf(unitSizes, capacity);
+            animalsMoved = Arrays.copyOf(animalsMoved, capacity);
+            infectedAnimals = Arrays.copyOf(infectedAnimals, capacity);
+            infectedMoved = Arrays.copyOf(infectedMoved, capacity);
+            choices = Arrays.copyOf(choices, capacity);
+            randomNumbers = Arrays.copyOf(randomNumbers, capacity);
+        }
+
+        private String format(final int row) {
+            final StringBuilder sb = new StringBuilder();
+            sb.append(formatDate(dates[row])).append(",");
+            sb.append(labels.getId(species[row])).append(",");
+            sb.append(units.getId(departures[row])).append(",");
+            sb.append(units.getId(destinations[row])).append(",");
+            sb.append(optional(unitSizes[row])).append(",");
+            sb.append(optional(animalsMoved[row])).append(",");
+            sb.append(optional(infectedAnimals[row])).append(",");
+            sb.append(optional(infectedMoved[row])).append(",");
+            sb.append(optional(choices[row])).append(",");
+            sb.append(randomNumbers[row] < 0 ? "" : String.valueOf(randomNumbers[row]));
+            return sb.toString();
+        }
+
+        private void write(final int row, final ColumnarWriter out) {
+            out.writeDate(dates[row]);
+            out.writeString(labels.getId(species[row]));
+            out.writeString(units.getId(departures[row]));
+            out.writeString(units.getId(destinations[row]));
+            out.writeInt(unitSizes[row]);
+            out.writeInt(animalsMoved[row]);
+            out.writeInt(infectedAnimals[row]);
+            out.writeInt(infectedMoved[row]);
+            out.writeInt(choices[row]);
+            out.writeDouble(randomNumbers[row]);
+        }
+
+        @Getter
+        private int size;
+        private int[] dates;
+        private byte[] species;
+        private int[] departures;
+        private int[] destinations;
+        private int[] unitSizes;
+        private int[] animalsMoved;
+        private int[] infectedAnimals;
+        private int[] infectedMoved;
+        private int[] choices;
+        private double[] randomNumbers;
+    }
+
+    // the layouts of the tables in the output files, the same as the csv files have always had.
+    public static final TableLayout<CattleTests> CATTLE_TESTS = new TableLayout<>(
+            "date,unit_ID,animal_ID,testResult,infectionState,reasonOfTesting\n",
+            new ColumnType[]{ColumnType.DATE, ColumnType.STRING, ColumnType.STRING, ColumnType.BOOLEAN,
+                             ColumnType.STRING, ColumnType.STRING},
+            CattleTests::format,
+            CattleTests::write);
+    public static final TableLayout<BadgerTests> BADGER_TESTS = new TableLayout<>(
+            "date,animal_ID,unit_ID_from,unit_ID_to,capture,testResult,infectionState,reasonOfTesting\n",
+            new ColumnType[]{ColumnType.DATE, ColumnType.STRING, ColumnType.STRING, ColumnType.STRING,
+                             ColumnType.BOOLEAN, ColumnType.BOOLEAN, ColumnType.STRING, ColumnType.STRING},
+            BadgerTests::format,
+            BadgerTests::write);
+    public static final TableLayout<HerdTests> HERD_TESTS = new TableLayout<>(
+            "date,unit_ID,infected,reactors,reasonOfTesting\n",
+            new ColumnType[]{ColumnType.DATE, ColumnType.STRING, ColumnType.INT, ColumnType.INT, ColumnType.STRING},
+            HerdTests::format,
+            HerdTests::write);
+    public static final TableLayout<Movements> MOVEMENTS = new TableLayout<>(
+            "date,species,unitID_from,unitID_to,unit_size,anim_move,inf_anim,inf_move,rnd_choice,rnd_num\n",
+            new ColumnType[]{ColumnType.DATE, ColumnType.STRING, ColumnType.STRING, ColumnType.STRING,
+                             ColumnType.OPTIONAL_INT, ColumnType.OPTIONAL_INT, ColumnType.OPTIONAL_INT,
+                             ColumnType.OPTIONAL_INT, ColumnType.OPTIONAL_INT, ColumnType.OPTIONAL_DOUBLE},
+            Movements::format,
+            Movements::write);
+
+    private final UnitIndex units;
+    private final UnitIndex animals;
+    private final UnitIndex labels;
+    private final Map<Integer, String> formattedDates;
+    @Getter
+    private final CattleTests cattleTests;
+    @Getter
+    private final BadgerTests badgerTests;
+    @Getter
+    private final HerdTests herdTests;
+    @Getter
+    private final Movements movements;
+    private boolean recordingCattleTests;
+    private boolean recordingBadgerTests;
+    @Getter
+    private boolean recordingHerdTests;
+    @Getter
+    private boolean recordingMovements;
+    private static final String DATE_FORMAT = "yyyy-MM-dd";
+    private static final int INITIAL_CAPACITY = 64;
+}
@@ -5,28 +5,33 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import broadwick.statistics.distributions.IntegerDistribution;
 import java.io.Serializable;
-import lombok.Setter;
 
 /**
- *
+ * The (static) details of a farm, the herd size and test dates of each farm change during a scenario and are kept in
+ * the scenario indexed by the farm's index.
  */
 @Slf4j
 @EqualsAndHashCode
 public class Farm implements Serializable {
 
     public Farm(final String id) {
-        this(id, -1, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY);
+        this(id, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY);
     }
 
-    public Farm(final String id, final int size, final double xLocation, final double yLocation) {
+    public Farm(final String id, final double xLocation, final double yLocation) {
         this.id = id;
-        this.herdSize = size;
 //        this.xLocation = xLocation;
 //        this.yLocation = yLocation;
 //        this.movementFrequencies = new HashMap<>();
         this.offMovementDistribution = new IntegerDistribution();
-        this.lastClearTestDate = -1;
-        this.lastPositiveTestDate = -1;
+    }
+
+    /**
+     * Create the (constant time) sampler of the number of animals moved off the farm, once all the movements off the
+     * farm have been added to its off movement distribution.
+     */
+    void createOffMovementSizes() {
+        this.offMovementSizes = MovementSizes.of(offMovementDistribution);
     }
 
     @Override
@@ -35,21 +40,8 @@ public class Farm implements Serializable {
         offMovementDistribution.clear();
     }
     
-    public void changeSize(final int change) {
-        this.herdSize += change;
-    }
-
     @Getter
     private final String id;
-    @Getter
-    @Setter
-    private int herdSize;
-    @Getter
-    @Setter
-    private int lastClearTestDate;
-    @Getter
-    @Setter
-    private int lastPositiveTestDate;
 //    @Getter
 //    private final double xLocation;
 //    @Getter
@@ -58,4 +50,6 @@ public class Farm implements Serializable {
 //    private final Map<String, Collection<Integer>> movementFrequencies;
     @Getter
     private final IntegerDistribution offMovementDistribution;
+    @Getter
+    private MovementSizes offMovementSizes = MovementSizes.EMPTY;
 }
@@ -1,10 +1,8 @@
 package btbcluster;
 
 import broadwick.stochastic.SimulationState;
-import broadwick.utils.CloneUtils;
 import com.google.common.base.Joiner;
 import java.util.ArrayList;
-import java.util.Set;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -13,19 +11,22 @@ import lombok.extern.slf4j.Slf4j;
  * A class to encapsulate the properties of an infected badger.
  */
 @Slf4j
-public class InfectedBadger implements SimulationState {
+public class InfectedBadger implements SimulationState, InfectionBag.Member {
 
     /**
      * Create a badger with a set of snps.
      * @param id          the id of the infected badger.
+     * @param reservoir   the index of the reservoir where the badger can be found.
      * @param reservoirId the id of the reservoir where the badger can be found.
      * @param snps        the snps that should be associated with the badger.
      * @param day         the day the badger is added (this will be used to calculated new mutations)
      */
-    public InfectedBadger(final String id, final String reservoirId, final Set<Integer> snps, final int day) {
+    public InfectedBadger(final String id, final int reservoir, final String reservoirId, final SnpLineage snps,
+                          final int day) {
         this.id = id;
+        this.reservoir = reservoir;
         this.reservoirId = reservoirId;
-        this.snps = (Set<Integer>) CloneUtils.deepClone(snps);
+        this.snps = snps;
         this.lastSnpGeneration = day;
         this.dateSampleTaken = -1;
         // DB: [RememberFarmIDs]
@@ -34,6 +35,26 @@ public class InfectedBadger implements SimulationState {
 
     }
 
+    /**
+     * Move the badger to another reservoir.
+     * @param reservoir   the index of the reservoir.
+     * @param reservoirId the id of the reservoir.
+     */
+    public void moveTo(final int reservoir, final String reservoirId) {
+        this.reservoir = reservoir;
+        this.reservoirId = reservoirId;
+        // DB: [RememberReservoieIDs]
+        allReservoirIds.add(reservoirId);
+    }
+
+    /**
+     * Add the SNPs that have appeared in the strain carried by the badger.
+     * @param newSnps the new SNPs.
+     */
+    public void addSnps(final SnpSet newSnps) {
+        this.snps = snps.add(newSnps);
+    }
+
     @Override
     public int hashCode() {
         return id.hashCode();
@@ -54,7 +75,6 @@ public class InfectedBadger implements SimulationState {
     @Override
     protected void finalize() {
         try {
-            snps.clear();
             snps = null;
             super.finalize();
         } catch (Throwable t) {
@@ -85,7 +105,7 @@ public class InfectedBadger implements SimulationState {
         sb.append(",").append("INFECTIOUS"); // TODO: update when necessary, i.e. other compartments of badger present, not only Susceptible or Infected
         sb.append(",").append(dateSampleTaken);     // TODO: update when we know when badgers get sampled
         sb.append(",").append(lastSnpGeneration);
-        sb.append(",").append(Joiner.on(";").join(snps));
+        sb.append(",").append(snps.toSnpSet().toString(";"));
         return sb.toString();
     }
     
@@ -93,11 +113,28 @@ public class InfectedBadger implements SimulationState {
         return "animal_ID,unit_ID,InfectionStatus,DateSampleTaken,LastSnpGeneration,SNPs\n";
     }
 
+    /**
+     * The layout of the record of a badger (see record()), the same as that of a cow.
+     */
+    public static final RecordLayout<InfectedBadger> LAYOUT = new RecordLayout<>(
+            Header(),
+            new ColumnType[]{ColumnType.STRING, ColumnType.TEXT, ColumnType.STRING, ColumnType.INT, ColumnType.INT,
+                             ColumnType.TEXT},
+            InfectedBadger::record,
+            (badger, out) -> {
+                out.writeString(badger.id);
+                out.writeString(Joiner.on(";").join(badger.allReservoirIds));
+                out.writeString("INFECTIOUS");
+                out.writeInt(badger.dateSampleTaken);
+                out.writeInt(badger.lastSnpGeneration);
+                out.writeString(badger.snps.toSnpSet().toString(";"));
+            });
+
     @Getter
     private final String id;
     @Getter
     @SuppressWarnings("PMD.UnusedPrivateField")
-    private Set<Integer> snps;
+    private SnpLineage snps;
     @Getter
     @Setter
     @SuppressWarnings("PMD.UnusedPrivateField")
@@ -107,10 +144,14 @@ public class InfectedBadger implements SimulationState {
     @SuppressWarnings("PMD.UnusedPrivateField")
     private int dateSampleTaken;
     @Getter
-    @Setter
-    private String reservoirId; // the reservoir where the badger can be found.
+    private int reservoir; // the index of the reservoir where the badger can be found.
+    @Getter
+    private String reservoirId; // the reservoir where the badger can be found, only used when the badger is recorded.
     // DB: [RememberFarmIDs]
     @Getter
     @Setter
     private ArrayList<String> allReservoirIds;
+    @Getter
+    @Setter
+    private int bagIndex = -1; // the position of the badger in the infections of its reservoir.
 }
@@ -1,10 +1,8 @@
 package btbcluster;
 
 import broadwick.stochastic.SimulationState;
-import broadwick.utils.CloneUtils;
 import com.google.common.base.Joiner;
 import java.util.ArrayList;
-import java.util.Set;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -13,7 +11,7 @@ import lombok.extern.slf4j.Slf4j;
  * A class to encapsulate the properties of an infected cow.
  */
 @Slf4j
-public class InfectedCow implements SimulationState {
+public class InfectedCow implements SimulationState, InfectionBag.Member {
 
     // NOTE: Are farmId, snps, dataSampleTaken used anywhere?
     // They could be in MyAmountManager.performEvent()
@@ -24,15 +22,18 @@ public class InfectedCow implements SimulationState {
     /**
      * Create a cow with a set of snps.
      * @param id              the id of the infected cow.
+     * @param farm            the index of the farm where the cow is found
      * @param farmId          the id of the farm where the cow is found
      * @param snps            the snps that should be associated with the cow.
      * @param day             the day the cow is added (this will be used to calculated new mutations)
      * @param infectionStatus the initial infection status of the cow.
      */
-    public InfectedCow(final String id, final String farmId, final Set<Integer> snps, final int day, final InfectionStateCow infectionStatus) {
+    public InfectedCow(final String id, final int farm, final String farmId, final SnpLineage snps, final int day,
+                       final InfectionStateCow infectionStatus) {
         this.id = id;
+        this.farm = farm;
         this.farmId = farmId;
-        this.snps = (Set<Integer>) CloneUtils.deepClone(snps);
+        this.snps = snps;
         this.lastSnpGeneration = day;
         this.infectionStatus = infectionStatus;
         this.dateSampleTaken = -1;
@@ -40,6 +41,26 @@ public class InfectedCow implements SimulationState {
         allFarmIds.add(farmId);
     }
 
+    /**
+     * Move the cow to another farm.
+     * @param farm   the index of the farm.
+     * @param farmId the id of the farm.
+     */
+    public void moveTo(final int farm, final String farmId) {
+        this.farm = farm;
+        this.farmId = farmId;
+        // DB: [RememberFarmIDs]
+        allFarmIds.add(farmId);
+    }
+
+    /**
+     * Add the SNPs that have appeared in the strain carried by the cow.
+     * @param newSnps the new SNPs.
+     */
+    public void addSnps(final SnpSet newSnps) {
+        this.snps = snps.add(newSnps);
+    }
+
     @Override
     public int hashCode() {
         return id.hashCode();
@@ -77,7 +98,6 @@ public class InfectedCow implements SimulationState {
     @Override
     protected void finalize() {
         try {
-            snps.clear();
             snps = null;
             super.finalize();
         } catch (Throwable t) {
@@ -92,7 +112,7 @@ public class InfectedCow implements SimulationState {
         sb.append(",").append(infectionStatus);
         sb.append(",").append(dateSampleTaken);
         sb.append(",").append(lastSnpGeneration);
-        sb.append(",").append(Joiner.on(";").join(snps));
+        sb.append(",").append(snps.toSnpSet().toString(";"));
                   
         return sb.toString();
     }
@@ -100,12 +120,29 @@ public class InfectedCow implements SimulationState {
     public static final String Header() {
         return "animal_ID,unit_ID,InfectionStatus,DateSampleTaken,LastSnpGeneration,SNPs\n";
     }
+
+    /**
+     * The layout of the record of a cow (see record()).
+     */
+    public static final RecordLayout<InfectedCow> LAYOUT = new RecordLayout<>(
+            Header(),
+            new ColumnType[]{ColumnType.STRING, ColumnType.TEXT, ColumnType.STRING, ColumnType.INT, ColumnType.INT,
+                             ColumnType.TEXT},
+            InfectedCow::record,
+            (cow, out) -> {
+                out.writeString(cow.id);
+                out.writeString(Joiner.on(";").join(cow.allFarmIds));
+                out.writeString(String.valueOf(cow.infectionStatus));
+                out.writeInt(cow.dateSampleTaken);
+                out.writeInt(cow.lastSnpGeneration);
+                out.writeString(cow.snps.toSnpSet().toString(";"));
+            });
     
     @Getter
     private final String id;
     @Getter
     @SuppressWarnings("PMD.UnusedPrivateField")
-    private Set<Integer> snps;
+    private SnpLineage snps;
     @Getter
     @Setter
     @SuppressWarnings("PMD.UnusedPrivateField")
@@ -118,10 +155,14 @@ public class InfectedCow implements SimulationState {
     @Setter
     private InfectionStateCow infectionStatus;
     @Getter
-    @Setter
-    private String farmId; // the id of the farm where the cow is found - needs to be updated when moved
+    private int farm; // the index of the farm where the cow is found - needs to be updated when moved
+    @Getter
+    private String farmId; // the id of the farm where the cow is found, only used when the cow is recorded
     // DB: [RememberFarmIDs]
     @Getter
     @Setter
     private ArrayList<String> allFarmIds;
+    @Getter
+    @Setter
+    private int bagIndex = -1; // the position of the cow in the infections of its farm.
 }
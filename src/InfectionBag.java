@@ -0,0 +1,157 @@
+package btbcluster;
+
+import broadwick.rng.RNG;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * The infected animals of a farm or reservoir. The animals are held in a dense array and each animal stores its own
+ * position in the array so that it is added, found and removed (by moving the last animal into its place) in
+ * constant time, whatever the number of infections in the unit.
+ * <p>
+ * An animal can be in only one bag at a time and is found by identity, not by its id. The order of the animals in
+ * the bag changes as animals are removed and selected.
+ * @param <T> the type of the animals.
+ */
+public class InfectionBag<T extends InfectionBag.Member> extends AbstractList<T> implements RandomAccess {
+
+    /**
+     * Create an empty bag.
+     */
+    public InfectionBag() {
+        this.elements = EMPTY;
+        this.size = 0;
+    }
+
+    @Override
+    public T get(final int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(String.format("Index %d, size %d", index, size));
+        }
+        return elementAt(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(final T element) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(INITIAL_CAPACITY, 2 * size));
+        }
+        element.setBagIndex(size);
+        elements[size++] = element;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    @Override
+    public int indexOf(final Object o) {
+        if (!(o instanceof Member)) {
+            return -1;
+        }
+        final int index = ((Member) o).getBagIndex();
+        return index >= 0 && index < size && elements[index] == o ? index : -1;
+    }
+
+    @Override
+    public int lastIndexOf(final Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        final int index = indexOf(o);
+        if (index < 0) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    @Override
+    public T remove(final int index) {
+        final T element = get(index);
+        final int last = --size;
+        if (index != last) {
+            elements[index] = elements[last];
+            elementAt(index).setBagIndex(index);
+        }
+        elements[last] = null;
+        element.setBagIndex(-1);
+        modCount++;
+        return element;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            elementAt(i).setBagIndex(-1);
+            elements[i] = null;
+        }
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Select a number of distinct animals, at random, from the bag. The selected animals are swapped to the front of
+     * the bag (a partial Fisher-Yates shuffle) so the selection takes time proportional to the number selected.
+     * @param generator the random number generator to use.
+     * @param k         the number of animals to select, at most the size of the bag.
+     * @param selection the collection to which the selected animals are added.
+     */
+    public void select(final RNG generator, final int k, final Collection<? super T> selection) {
+        for (int i = 0; i < k; i++) {
+            swap(i, generator.getInteger(i, size - 1));
+            selection.add(elementAt(i));
+        }
+        modCount++;
+    }
+
+    private void swap(final int i, final int j) {
+        if (i != j) {
+            final Object element = elements[i];
+            elements[i] = elements[j];
+            elements[j] = element;
+            elementAt(i).setBagIndex(i);
+            elementAt(j).setBagIndex(j);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T elementAt(final int index) {
+        return (T) elements[index];
+    }
+
+    /**
+     * An animal that can be held in a bag, the animal stores its position in the bag it is in.
+     */
+    public interface Member {
+
+        /**
+         * Get the position of the animal in its bag.
+         * @return the position, or -1 if the animal is not in a bag.
+         */
+        int getBagIndex();
+
+        /**
+         * Set the position of the animal in its bag.
+         * @param bagIndex the position, or -1 if the animal is not in a bag.
+         */
+        void setBagIndex(int bagIndex);
+    }
+
+    private Object[] elements;
+    private int size;
+    private static final Object[] EMPTY = new Object[0];
+    private static final int INITIAL_CAPACITY = 8;
+}
@@ -1,9 +1,6 @@
 package btbcluster;
 
 import broadwick.graph.Vertex;
-import broadwick.utils.CloneUtils;
-import com.google.common.base.Joiner;
-import java.util.Set;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -20,10 +17,10 @@ class InfectionNode extends Vertex {
      * @param detectionDate the date (number of days from ZERO_DATE) the animal was detected (sampled)
      * @param isACow        true if the node refers to a cow, false for a badger
      */
-    public InfectionNode(final String id, final String locationId, final Set<Integer> snps,
+    public InfectionNode(final String id, final String locationId, final SnpLineage snps,
                          final Integer infectionDate, final Integer detectionDate, final boolean isACow) {
         super(id);
-        this.snp = CloneUtils.deepClone(snps);
+        this.snp = snps;
         this.locationId = locationId;
         this.infectionDate = infectionDate;
         this.detectionDate = detectionDate;
@@ -37,7 +34,6 @@ class InfectionNode extends Vertex {
     @Override
     protected void finalize() throws Throwable {
         super.finalize();
-        snp.clear();
     }
 
     @Override
@@ -75,7 +71,7 @@ class InfectionNode extends Vertex {
         sb.append(",").append(isCow());
         sb.append(",").append(infectionDate);
         sb.append(",").append(detectionDate);
-        sb.append(",").append(Joiner.on(";").join(snp));
+        sb.append(",").append(snp.toSnpSet().toString(";"));
         
         return sb.toString();
     }
@@ -83,12 +79,27 @@ class InfectionNode extends Vertex {
     public static final String Header() {
         return "animal_ID,isCow,InfectionDate,DetectionDate,SNPs\n";
     }
+
+    /**
+     * The layout of the record of a node (see record()).
+     */
+    public static final RecordLayout<InfectionNode> LAYOUT = new RecordLayout<>(
+            Header(),
+            new ColumnType[]{ColumnType.STRING, ColumnType.STRING, ColumnType.INT, ColumnType.INT, ColumnType.TEXT},
+            InfectionNode::record,
+            (node, out) -> {
+                out.writeString(node.id);
+                out.writeString(String.valueOf(node.cow));
+                out.writeInt(node.infectionDate == null ? ColumnType.NULL_INT : node.infectionDate);
+                out.writeInt(node.detectionDate == null ? ColumnType.NULL_INT : node.detectionDate);
+                out.writeString(node.snp.toSnpSet().toString(";"));
+            });
     
     @Getter
     private final boolean cow;
     @Getter
     @SuppressWarnings("PMD.UnusedPrivateField")
-    private final Set<Integer> snp;
+    private final SnpLineage snp;
     @Getter
     @Setter
     @SuppressWarnings("PMD.UnusedPrivateField")
@@ -0,0 +1,195 @@
+package btbcluster;
+
+import broadwick.rng.RNG;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The departure and destination unit indices of all the known movements. Each distinct departure-destination pair is
+ * stored once with the number of times it was observed as its weight; once all the movements have been added an alias
+ * table is created so that a movement can be picked at random, respecting the distribution of actual movements, in
+ * constant time.
+ */
+public class MovementEdges {
+
+    public MovementEdges() {
+        this.departures = new int[INITIAL_CAPACITY];
+        this.destinations = new int[INITIAL_CAPACITY];
+        this.weights = new int[INITIAL_CAPACITY];
+        this.edges = new HashMap<>();
+        this.size = 0;
+        this.numMovements = 0;
+    }
+
+    /**
+     * Add a movement.
+     * @param departure   the index of the departure unit.
+     * @param destination the index of the destination unit.
+     */
+    public void add(final int departure, final int destination) {
+        final Long key = ((long) departure << 32) | (destination & 0xffffffffL);
+        final Integer edge = edges.get(key);
+        if (edge != null) {
+            weights[edge]++;
+        } else {
+            if (size == departures.length) {
+                final int capacity = Math.max(INITIAL_CAPACITY, 2 * size);
+                departures = Arrays.copyOf(departures, capacity);
+                destinations = Arrays.copyOf(destinations, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+            }
+            departures[size] = departure;
+            destinations[size] = destination;
+            weights[size] = 1;
+            edges.put(key, size);
+            size++;
+        }
+        numMovements++;
+        table = null;
+    }
+
+    /**
+     * Create the table from which the movements are sampled, this must be called once all the movements have been
+     * added (and before the movements are shared between threads).
+     */
+    public void createSampler() {
+        departures = Arrays.copyOf(departures, size);
+        destinations = Arrays.copyOf(destinations, size);
+        weights = Arrays.copyOf(weights, size);
+        final double[] w = new double[size];
+        for (int i = 0; i < size; i++) {
+            w[i] = weights[i];
+        }
+        table = size == 0 ? null : new AliasTable(w);
+        // the movements are not added to once the sampler is created, the index of the pairs is no longer needed.
+        edges.clear();
+
+        // the movements of each unit (as departure or destination) stored as a compressed list, the movements of
+        // unit u are unitMovements[unitOffsets[u]] to unitMovements[unitOffsets[u + 1] - 1].
+        int numUnits = 0;
+        for (int i = 0; i < size; i++) {
+            numUnits = Math.max(numUnits, Math.max(departures[i], destinations[i]) + 1);
+        }
+        unitOffsets = new int[numUnits + 1];
+        for (int i = 0; i < size; i++) {
+            unitOffsets[departures[i] + 1]++;
+            unitOffsets[destinations[i] + 1]++;
+        }
+        for (int u = 0; u < numUnits; u++) {
+            unitOffsets[u + 1] += unitOffsets[u];
+        }
+        unitMovements = new int[2 * size];
+        final int[] next = Arrays.copyOf(unitOffsets, numUnits);
+        for (int i = 0; i < size; i++) {
+            unitMovements[next[departures[i]]++] = i;
+            unitMovements[next[destinations[i]]++] = i;
+        }
+    }
+
+    /**
+     * Get the position of the first movement in which a unit is the departure or the destination, the movements of
+     * the unit are getUnitMovement(i) for i from getFirstUnitMovement(unit) to getEndUnitMovement(unit) - 1.
+     * @param unit the index of the unit.
+     * @return the position of the first movement of the unit.
+     */
+    public int getFirstUnitMovement(final int unit) {
+        return unit + 1 < unitOffsets.length ? unitOffsets[unit] : 0;
+    }
+
+    /**
+     * Get the position after the last movement in which a unit is the departure or the destination.
+     * @param unit the index of the unit.
+     * @return the position after the last movement of the unit.
+     */
+    public int getEndUnitMovement(final int unit) {
+        return unit + 1 < unitOffsets.length ? unitOffsets[unit + 1] : 0;
+    }
+
+    /**
+     * Get a movement of a unit.
+     * @param position the position of the movement in the list of the movements of the units.
+     * @return the index of the movement.
+     */
+    public int getUnitMovement(final int position) {
+        return unitMovements[position];
+    }
+
+    /**
+     * Pick a movement at random, each distinct movement is picked with a probability proportional to the number of
+     * times it was observed.
+     * @param generator the random number generator to use.
+     * @return the index of the movement.
+     */
+    public int sample(final RNG generator) {
+        return table.sample(generator);
+    }
+
+    /**
+     * Get the index of the departure unit of a movement.
+     * @param movement the index of the movement.
+     * @return the index of the departure unit.
+     */
+    public int getDeparture(final int movement) {
+        return departures[movement];
+    }
+
+    /**
+     * Get the index of the destination unit of a movement.
+     * @param movement the index of the movement.
+     * @return the index of the destination unit.
+     */
+    public int getDestination(final int movement) {
+        return destinations[movement];
+    }
+
+    /**
+     * Get the number of times a movement was observed.
+     * @param movement the index of the movement.
+     * @return the weight of the movement.
+     */
+    public int getWeight(final int movement) {
+        return weights[movement];
+    }
+
+    /**
+     * Get the number of distinct movements.
+     * @return the number of distinct departure-destination pairs.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the number of movements that were added, including the duplicates.
+     * @return the number of movements.
+     */
+    public int getNumMovements() {
+        return numMovements;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(departures[i]).append("-").append(destinations[i]).append("x").append(weights[i]);
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+
+    private int[] departures;
+    private int[] destinations;
+    private int[] weights;
+    private final Map<Long, Integer> edges;
+    private int size;
+    private int numMovements;
+    private AliasTable table;
+    private int[] unitOffsets = new int[1];
+    private int[] unitMovements = new int[0];
+    private static final int INITIAL_CAPACITY = 1024;
+}
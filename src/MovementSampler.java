@@ -0,0 +1,291 @@
+package btbcluster;
+
+import broadwick.rng.RNG;
+import java.util.Arrays;
+
+/**
+ * A sampler of the movements between units that only draws the movements that can take place, i.e. those between
+ * two herds that are not under movement restriction. The weights of the movements are kept in a Fenwick (binary
+ * indexed) tree; when a herd is restricted the weights of its movements are set to zero and they are restored when the
+ * restriction is lifted, so a movement is drawn, and a restriction applied or lifted, in O(log n) time.
+ * <p>
+ * A focused sampler also keeps the weights of the movements whose departure unit holds infected animals in a second
+ * tree, so that the movements off infected units can be drawn on their own. The movements that carry no infection are
+ * not drawn at all, only the number of animals they move is: the distribution of the size of a movement off a unit
+ * without infected animals is the mixture of the off movement distributions of those units, weighted by the weights
+ * of their movements that are not blocked. The mixture is kept, by size, in a third tree that is updated as units are
+ * blocked and unblocked and gain and lose their infected animals, so a size is drawn in O(log s) time for sizes of
+ * up to s animals (see MyMonteCarloScenarioObserver).
+ * <p>
+ * The sampler holds the state of a single scenario.
+ */
+public class MovementSampler {
+
+    /**
+     * Create the sampler.
+     * @param movements the movements (whose sampler has been created).
+     * @param numUnits  the number of units (farms or reservoirs).
+     * @param focused   true if the movements off infected units are tracked.
+     * @param maxSize   the largest number of animals moved off a unit in a movement, only used if focused.
+     */
+    public MovementSampler(final MovementEdges movements, final int numUnits, final boolean focused,
+                           final int maxSize) {
+        this.movements = movements;
+        final int n = movements.size();
+        this.tree = new long[n + 1];
+        this.numBlockedUnits = new byte[n];
+        this.topBit = n == 0 ? 0 : Integer.highestOneBit(n);
+        this.focused = focused;
+        this.infectedTree = focused ? new long[n + 1] : null;
+        this.infected = focused ? new boolean[numUnits] : null;
+        this.sizes = focused ? new MovementSizes[numUnits] : null;
+        this.feasibleWeights = focused ? new long[numUnits] : null;
+        this.sizeTree = focused ? new double[maxSize + 2] : null;
+        this.sizeTopBit = Integer.highestOneBit(maxSize + 1);
+        reset();
+    }
+
+    /**
+     * Reset the sampler so that every movement can be drawn (and, for a focused sampler, no unit is infected and the
+     * off movement distributions of the units have to be set).
+     */
+    public final void reset() {
+        final int n = numBlockedUnits.length;
+        Arrays.fill(numBlockedUnits, (byte) 0);
+        Arrays.fill(tree, 0L);
+        // build the tree in linear time, each node passes its sum to its parent.
+        for (int i = 1; i <= n; i++) {
+            tree[i] += movements.getWeight(i - 1);
+            final int parent = i + (i & -i);
+            if (parent <= n) {
+                tree[parent] += tree[i];
+            }
+        }
+        if (focused) {
+            Arrays.fill(infectedTree, 0L);
+            Arrays.fill(infected, false);
+            Arrays.fill(sizes, null);
+            Arrays.fill(feasibleWeights, 0L);
+            Arrays.fill(sizeTree, 0.0);
+            for (int movement = 0; movement < n; movement++) {
+                feasibleWeights[movements.getDeparture(movement)] += movements.getWeight(movement);
+            }
+        }
+    }
+
+    /**
+     * Block the movements to and from a unit (i.e. the herd has been put under restriction).
+     * @param unit the index of the unit.
+     */
+    public void block(final int unit) {
+        for (int i = movements.getFirstUnitMovement(unit); i < movements.getEndUnitMovement(unit); i++) {
+            final int movement = movements.getUnitMovement(i);
+            if (numBlockedUnits[movement]++ == 0) {
+                setFeasible(movement, -1);
+            }
+        }
+    }
+
+    /**
+     * Unblock the movements to and from a unit (i.e. the restriction on the herd has been lifted), a movement can
+     * only be drawn once neither of its units is blocked.
+     * @param unit the index of the unit.
+     */
+    public void unblock(final int unit) {
+        for (int i = movements.getFirstUnitMovement(unit); i < movements.getEndUnitMovement(unit); i++) {
+            final int movement = movements.getUnitMovement(i);
+            if (--numBlockedUnits[movement] == 0) {
+                setFeasible(movement, 1);
+            }
+        }
+    }
+
+    /**
+     * Set the distribution of the number of animals moved off a unit, this is only used by a focused sampler.
+     * @param unit      the index of the unit.
+     * @param unitSizes the off movement distribution of the unit.
+     */
+    public void setSizes(final int unit, final MovementSizes unitSizes) {
+        if (!focused) {
+            return;
+        }
+        if (!infected[unit]) {
+            addSizes(unit, -feasibleWeights[unit]);
+        }
+        sizes[unit] = unitSizes;
+        if (!infected[unit]) {
+            addSizes(unit, feasibleWeights[unit]);
+        }
+    }
+
+    /**
+     * Set whether a unit holds infected animals, this is only used by a focused sampler.
+     * @param unit        the index of the unit.
+     * @param hasInfected true if the unit holds infected animals.
+     */
+    public void setInfected(final int unit, final boolean hasInfected) {
+        if (!focused || infected[unit] == hasInfected) {
+            return;
+        }
+        infected[unit] = hasInfected;
+        final int sign = hasInfected ? 1 : -1;
+        addSizes(unit, -sign * feasibleWeights[unit]);
+        for (int i = movements.getFirstUnitMovement(unit); i < movements.getEndUnitMovement(unit); i++) {
+            final int movement = movements.getUnitMovement(i);
+            if (movements.getDeparture(movement) == unit && numBlockedUnits[movement] == 0) {
+                add(infectedTree, movement, sign * movements.getWeight(movement));
+            }
+        }
+    }
+
+    /**
+     * Draw a movement, each movement that is not blocked is drawn with a probability proportional to its weight.
+     * @param generator the random number generator to use.
+     * @return the index of the movement, or -1 if every movement is blocked.
+     */
+    public int sample(final RNG generator) {
+        return sample(tree, generator);
+    }
+
+    /**
+     * Draw a movement off a unit that holds infected animals, each such movement that is not blocked is drawn with a
+     * probability proportional to its weight. This can only be used with a focused sampler.
+     * @param generator the random number generator to use.
+     * @return the index of the movement, or -1 if there are no such movements.
+     */
+    public int sampleInfected(final RNG generator) {
+        return sample(infectedTree, generator);
+    }
+
+    /**
+     * Draw the number of animals moved by a movement, that is not blocked, off a unit that holds no infected animals
+     * without drawing the movement itself. This can only be used with a focused sampler.
+     * @param generator the random number generator to use.
+     * @return the number of animals moved, or -1 if there are no such movements.
+     */
+    public int sampleUninfectedSize(final RNG generator) {
+        double total = 0.0;
+        for (int i = sizeTree.length - 1; i > 0; i -= i & -i) {
+            total += sizeTree[i];
+        }
+        if (total <= 0.0) {
+            return -1;
+        }
+        double remaining = generator.getDouble() * total;
+
+        // find the size whose cumulative weight first exceeds the target, position i of the tree holds size i - 1.
+        int position = 0;
+        for (int bit = sizeTopBit; bit > 0; bit >>>= 1) {
+            final int next = position + bit;
+            if (next < sizeTree.length && sizeTree[next] <= remaining) {
+                position = next;
+                remaining -= sizeTree[next];
+            }
+        }
+        return Math.min(position, sizeTree.length - 2);
+    }
+
+    /**
+     * Get the total weight of the movements that are not blocked.
+     * @return the total weight.
+     */
+    public long getTotalWeight() {
+        return total(tree);
+    }
+
+    /**
+     * Get the total weight of the movements that are not blocked and whose departure unit holds infected animals.
+     * This can only be used with a focused sampler.
+     * @return the total weight.
+     */
+    public long getInfectedWeight() {
+        return total(infectedTree);
+    }
+
+    private void setFeasible(final int movement, final int sign) {
+        final int weight = movements.getWeight(movement);
+        add(tree, movement, sign * weight);
+        if (focused) {
+            final int departure = movements.getDeparture(movement);
+            feasibleWeights[departure] += sign * weight;
+            if (infected[departure]) {
+                add(infectedTree, movement, sign * weight);
+            } else {
+                addSizes(departure, sign * weight);
+            }
+        }
+    }
+
+    // add the off movement distribution of a unit, for movements of a given total weight, to the mixture of sizes; a
+    // unit without movements only makes movements of no animals.
+    private void addSizes(final int unit, final long weight) {
+        final MovementSizes unitSizes = sizes[unit];
+        if (unitSizes == null || weight == 0) {
+            return;
+        }
+        if (unitSizes.isEmpty()) {
+            addSize(0, weight);
+            return;
+        }
+        final double scale = (double) weight / unitSizes.getNumMovements();
+        for (int i = 0; i < unitSizes.getNumSizes(); i++) {
+            addSize(unitSizes.getSize(i), scale * unitSizes.getFrequency(i));
+        }
+    }
+
+    private void addSize(final int size, final double delta) {
+        for (int i = size + 1; i < sizeTree.length; i += i & -i) {
+            sizeTree[i] += delta;
+        }
+    }
+
+    private int sample(final long[] weights, final RNG generator) {
+        final long total = total(weights);
+        if (total <= 0) {
+            return -1;
+        }
+        long remaining = Math.min(total - 1, (long) (generator.getDouble() * total));
+
+        // find the movement whose cumulative weight first exceeds the target.
+        int position = 0;
+        for (int bit = topBit; bit > 0; bit >>>= 1) {
+            final int next = position + bit;
+            if (next < weights.length && weights[next] <= remaining) {
+                position = next;
+                remaining -= weights[next];
+            }
+        }
+        return position;
+    }
+
+    private static long total(final long[] weights) {
+        long total = 0;
+        for (int i = weights.length - 1; i > 0; i -= i & -i) {
+            total += weights[i];
+        }
+        return total;
+    }
+
+    private static void add(final long[] weights, final int movement, final long delta) {
+        for (int i = movement + 1; i < weights.length; i += i & -i) {
+            weights[i] += delta;
+        }
+    }
+
+    private final MovementEdges movements;
+    private final long[] tree;
+    // the number of units (0, 1 or 2) of each movement that are blocked.
+    private final byte[] numBlockedUnits;
+    private final int topBit;
+    private final boolean focused;
+    // the weights of the movements that are not blocked and whose departure unit holds infected animals.
+    private final long[] infectedTree;
+    private final boolean[] infected;
+    // the off movement distribution of each unit and the total weight of its movements that are not blocked.
+    private final MovementSizes[] sizes;
+    private final long[] feasibleWeights;
+    // the mixture of the off movement distributions of the units without infected animals, position i holds size
+    // i - 1.
+    private final double[] sizeTree;
+    private final int sizeTopBit;
+}
@@ -0,0 +1,142 @@
+package btbcluster;
+
+import broadwick.rng.RNG;
+import broadwick.statistics.distributions.IntegerDistribution;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The distribution of the number of animals moved off a unit in a single movement, sampled in constant time with an
+ * alias table. The distribution is immutable; the distribution of the movements a unit of a given size can make is
+ * created with truncate.
+ */
+public final class MovementSizes implements Serializable {
+
+    private MovementSizes(final int[] sizes, final int[] frequencies) {
+        this.sizes = sizes;
+        this.frequencies = frequencies;
+        final double[] weights = new double[sizes.length];
+        int total = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            weights[i] = frequencies[i];
+            total += frequencies[i];
+        }
+        this.numMovements = total;
+        this.table = sizes.length == 0 ? null : new AliasTable(weights);
+    }
+
+    /**
+     * Create the distribution from the frequencies of the movement sizes.
+     * @param distribution the number of movements of each size.
+     * @return the distribution.
+     */
+    public static MovementSizes of(final IntegerDistribution distribution) {
+        final int[] sizes = new int[distribution.getNumBins()];
+        int n = 0;
+        for (int size : distribution.getBins()) {
+            sizes[n++] = size;
+        }
+        Arrays.sort(sizes);
+        final int[] frequencies = new int[sizes.length];
+        for (int i = 0; i < sizes.length; i++) {
+            frequencies[i] = distribution.getFrequency(sizes[i]);
+        }
+        return new MovementSizes(sizes, frequencies);
+    }
+
+    /**
+     * Remove the movements that include a greater number of animals than exist in a unit. The distribution is returned
+     * as is if none of its movements need to be removed.
+     * @param unitSize the number of animals in the unit.
+     * @return the distribution of the movements that can be realised.
+     */
+    public MovementSizes truncate(final int unitSize) {
+        // the sizes are sorted so the movements that are too large are at the end.
+        int n = sizes.length;
+        while (n > 0 && sizes[n - 1] > unitSize) {
+            n--;
+        }
+        if (n == sizes.length) {
+            return this;
+        }
+        return n == 0 ? EMPTY : new MovementSizes(Arrays.copyOf(sizes, n), Arrays.copyOf(frequencies, n));
+    }
+
+    /**
+     * Check if there are no movements in the distribution.
+     * @return true if there are no movements.
+     */
+    public boolean isEmpty() {
+        return sizes.length == 0;
+    }
+
+    /**
+     * Sample the number of animals in a movement.
+     * @param generator the random number generator to use.
+     * @return the number of animals moved.
+     */
+    public int sample(final RNG generator) {
+        return sizes[table.sample(generator)];
+    }
+
+    /**
+     * Get the number of different movement sizes.
+     * @return the number of sizes.
+     */
+    public int getNumSizes() {
+        return sizes.length;
+    }
+
+    /**
+     * Get a movement size, the sizes are in increasing order.
+     * @param i the index of the size.
+     * @return the number of animals moved.
+     */
+    public int getSize(final int i) {
+        return sizes[i];
+    }
+
+    /**
+     * Get the number of movements of a size.
+     * @param i the index of the size.
+     * @return the number of movements.
+     */
+    public int getFrequency(final int i) {
+        return frequencies[i];
+    }
+
+    /**
+     * Get the total number of movements.
+     * @return the number of movements.
+     */
+    public int getNumMovements() {
+        return numMovements;
+    }
+
+    /**
+     * Get the largest number of animals in a movement.
+     * @return the largest movement size, 0 if there are no movements.
+     */
+    public int getMaxSize() {
+        return sizes.length == 0 ? 0 : sizes[sizes.length - 1];
+    }
+
+    /**
+     * Get the distribution as a csv string of the size and frequency of the movements.
+     * @return the distribution as a string.
+     */
+    public String toCsv() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < sizes.length; i++) {
+            sb.append(sizes[i]).append(",").append(frequencies[i]).append("\n");
+        }
+        return sb.toString();
+    }
+
+    private final int[] sizes;
+    private final int[] frequencies;
+    private final AliasTable table;
+    private final int numMovements;
+    public static final MovementSizes EMPTY = new MovementSizes(new int[0], new int[0]);
+    private static final long serialVersionUID = 1L;
+}
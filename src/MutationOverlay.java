@@ -0,0 +1,164 @@
+package btbcluster;
+
+import broadwick.graph.DirectedGraph;
+import broadwick.graph.Edge;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mutations drawn on the branches of a transmission tree after a scenario has run, instead of SNPs being generated
+ * as the infection spreads.
+ * <p>
+ * Each infected animal accumulates mutations from the day it was infected (the start date for the seeds) and passes
+ * those it has accumulated so far to each animal it infects, so the branches of the tree are the periods between the
+ * infection of an animal and the infections it causes. The number of mutations on each branch is Poisson distributed
+ * with mean mutationRate * length. The distance between two nodes is then the sum of the mutations on the path between
+ * them through their lowest common ancestor, which, as the mutations accumulated by an animal only increase with time,
+ * is m(a) + m(b) - 2 * min(m(ca), m(cb)) where m(x) is the number of mutations from the root to x and ca, cb are the
+ * children of the common ancestor on the paths to a and b.
+ */
+final class MutationOverlay {
+
+    /**
+     * Draw the mutations on the branches of the transmission tree.
+     * @param tree         the transmission tree.
+     * @param rootId       the id of the root of the tree.
+     * @param startDate    the start date of the simulation, used for the nodes with no infection date.
+     * @param mutationRate the mean number of mutations per day.
+     * @param variates     the random variates used to draw the number of mutations.
+     */
+    MutationOverlay(final DirectedGraph<InfectionNode, Edge<InfectionNode>> tree, final String rootId,
+                    final int startDate, final double mutationRate, final RandomVariates variates) {
+        final int numNodes = tree.getVertexCount();
+        this.nodeIndex = new HashMap<>(numNodes);
+        this.parents = new int[numNodes];
+        this.depths = new int[numNodes];
+        this.mutations = new int[numNodes];
+
+        // visit the tree from the root, drawing the mutations on the branches to the children of each node in the
+        // order they were infected so the mutations depend only on the tree and the seed of the scenario.
+        final Comparator<InfectionNode> byInfection = Comparator
+                .comparingInt((InfectionNode node) -> infectionDate(node, startDate))
+                .thenComparing(InfectionNode::getId);
+        final List<InfectionNode> nodes = new ArrayList<>(numNodes);
+        final InfectionNode root = tree.getVertex(rootId);
+        nodes.add(root);
+        nodeIndex.put(rootId, 0);
+        parents[0] = 0;
+        int maxDepth = 0;
+        for (int i = 0; i < nodes.size(); i++) {
+            final InfectionNode node = nodes.get(i);
+            final List<InfectionNode> children = new ArrayList<>();
+            for (Edge<InfectionNode> edge : tree.getOutEdges(node)) {
+                children.add(edge.getDestination());
+            }
+            children.sort(byInfection);
+
+            int date = infectionDate(node, startDate);
+            int accumulated = mutations[i];
+            for (InfectionNode child : children) {
+                final int childDate = infectionDate(child, startDate);
+                if (childDate > date) {
+                    accumulated += variates.poisson(mutationRate * (childDate - date));
+                    date = childDate;
+                }
+                final int c = nodes.size();
+                nodes.add(child);
+                nodeIndex.put(child.getId(), c);
+                parents[c] = i;
+                depths[c] = depths[i] + 1;
+                mutations[c] = accumulated;
+                maxDepth = Math.max(maxDepth, depths[c]);
+            }
+        }
+
+        // ancestors[k][i] is the 2^k-th ancestor of node i (or the root).
+        final int numLevels = 32 - Integer.numberOfLeadingZeros(Math.max(1, maxDepth));
+        this.ancestors = new int[numLevels][];
+        this.ancestors[0] = parents;
+        for (int k = 1; k < numLevels; k++) {
+            final int[] previous = ancestors[k - 1];
+            final int[] level = new int[numNodes];
+            for (int i = 0; i < numNodes; i++) {
+                level[i] = previous[previous[i]];
+            }
+            ancestors[k] = level;
+        }
+    }
+
+    /**
+     * Get the distances, as a number of mutations, between a collection of samples.
+     * @param samples the nodes that were sampled.
+     * @return the distance between each pair of samples, indexed by the position of the samples in the array.
+     */
+    PairwiseDistances.PairDistance between(final InfectionNode[] samples) {
+        final int[] indices = new int[samples.length];
+        int maxMutations = 0;
+        for (int i = 0; i < samples.length; i++) {
+            indices[i] = nodeIndex.get(samples[i].getId());
+            maxMutations = Math.max(maxMutations, mutations[indices[i]]);
+        }
+        final int maxDistance = 2 * maxMutations;
+        return new PairwiseDistances.PairDistance() {
+            @Override
+            public int distance(final int i, final int j) {
+                return MutationOverlay.this.distance(indices[i], indices[j]);
+            }
+
+            @Override
+            public int getMaxDistance() {
+                return maxDistance;
+            }
+        };
+    }
+
+    /**
+     * Calculate the number of mutations on the path between two nodes.
+     * @param a the index of the first node.
+     * @param b the index of the second node.
+     * @return the number of mutations.
+     */
+    private int distance(final int a, final int b) {
+        int x = depths[a] >= depths[b] ? a : b;
+        int y = x == a ? b : a;
+
+        // lift the deeper node to the depth of the other, if they then coincide one is the ancestor of the other.
+        int lift = depths[x] - depths[y] - 1;
+        if (lift >= 0) {
+            for (int k = 0; lift > 0; k++, lift >>>= 1) {
+                if ((lift & 1) != 0) {
+                    x = ancestors[k][x];
+                }
+            }
+            if (parents[x] == y) {
+                return mutations[a] + mutations[b] - 2 * mutations[y];
+            }
+            x = parents[x];
+        }
+        if (x == y) {
+            return mutations[a] + mutations[b] - 2 * mutations[x];
+        }
+
+        // lift both nodes to the children of their lowest common ancestor.
+        for (int k = ancestors.length - 1; k >= 0; k--) {
+            if (ancestors[k][x] != ancestors[k][y]) {
+                x = ancestors[k][x];
+                y = ancestors[k][y];
+            }
+        }
+        return mutations[a] + mutations[b] - 2 * Math.min(mutations[x], mutations[y]);
+    }
+
+    private static int infectionDate(final InfectionNode node, final int startDate) {
+        return node.getInfectionDate() == null ? startDate : node.getInfectionDate();
+    }
+
+    private final Map<String, Integer> nodeIndex;
+    private final int[] parents;
+    private final int[] depths;
+    private final int[] mutations;
+    private final int[][] ancestors;
+}
@@ -4,10 +4,6 @@ import broadwick.BroadwickException;
 import broadwick.graph.Edge;
 import broadwick.stochastic.AmountManager;
 import broadwick.stochastic.SimulationEvent;
-import broadwick.stochastic.SimulationState;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -24,245 +20,240 @@ public class MyAmountManager implements AmountManager {
     @Override
     public void performEvent(SimulationEvent event, int times) {
         log.trace("Performing event {} {} times", event, times);
+        if (!(event instanceof TransmissionEvent)) {
+            throw new BroadwickException("Unknown event " + event);
+        }
+        final TransmissionEvent transmission = (TransmissionEvent) event;
         final int date = ((int) scenario.getSimulator().getCurrentTime());
 
         // DB: [Rates]
         // Need to do this 'times', if we have an E->T or T->I event, it will only be done once.
         for (int i = 0; i < times; i++) {
-
-            if (event.getInitialState() instanceof InfectedCow) {
-                // **** source: COW ****
-
-                InfectedCow source = (InfectedCow) event.getInitialState();
-
-                // DB: [DoNotMoveDeadCows]
-                // This event may not be possible as the infected animal may have been removed via a RWHT.
-                // ** COW exists?
-                if (scenario.getInfectedCows().containsKey(source.getId())) {
-
-                    if (event.getFinalState() instanceof InfectedCow) {
-                        // **** COW -> COW transmission ****
-                    
-                        InfectedCow recipient = (InfectedCow) event.getFinalState();
-                        
-                        // if initial state is infectious (the id of the final state will be blank)
-                        //           create an InfectedCow object on this farm and add it to the infectedcows collection.
-                        // else 
-                        //           update the infection status of the cow, the event has a link to the new object so we
-                        //           can just copy the objects
-                        
-                        // ** new infection?
-                        if (recipient.getId().isEmpty()) {
-
-                            final int numInfectionsOnFarm = scenario.getFarmInfections().get(source.getFarmId()).size();
-                            final int herdSize = scenario.getFarmData().get(source.getFarmId()).getHerdSize();
-
-                            // ** any susceptibles?
-                            if (numInfectionsOnFarm < herdSize) {
-                                // **** COW -> COW transmission ****
-                                // * update the SNPs in the COW.
-                                source = updateSnps(source, date);
-                                
-                                log.trace("{}", String.format("Adding new infection onto farm %s (current size=%d) with %d infected animals",
-                                        source.getFarmId(), herdSize, numInfectionsOnFarm));
-
-                                // * create a COW object and add it to the FARM COLLECTION.
-                                final InfectedCow cow = new InfectedCow(
-                                        String.format("Cow_%05d", scenario.getNextCowId()),
-                                        source.getFarmId(),
-                                        source.getSnps(),
-                                        source.getLastSnpGeneration(),
-                                        recipient.getInfectionStatus());
-                                scenario.getFarmInfections().get(cow.getFarmId()).add(cow);
-                                scenario.getInfectedCows().put(cow.getId(), cow);
-
-                                // * add COW into the Transmission TREE
-                                // add source -> cow to the scenario.getResults().getTransmissionTree()
-                                InfectionNode sourceNode = scenario.getResults().getTransmissionTree().getVertex(source.getId());
-
-                                InfectionNode node = new InfectionNode(
-                                        cow.getId(), cow.getFarmId(),
-                                        cow.getSnps(), date, null, true);
-                                scenario.getResults().getTransmissionTree().addVertex(node);
-                                scenario.getResults().getTransmissionTree().addEdge(new Edge<>(sourceNode, node), sourceNode, node);
-                                // record a cow -> cow transmission
-                                // NOTE: Moved here. Let AOH know.
-                                scenario.getResults().getCowCowTransmissions().add(1);
-                            }
-                        } else {
-                            // Disease progress in Cow (next compartment)
-                            source.setInfectionStatus(recipient.getInfectionStatus());
-                        }
-                    } else if (event.getFinalState() instanceof InfectedBadger) {
-                        // **** COW -> BADGER transmission ****
-                        
-                        // find the farm the cow is on and select a connected reservoir.
-                        Collection<Reservoir> connectedReservoirs = scenario.getSettings().getFarmReservoirs().get(source.getFarmId());
-//                        Reservoir reservoir = (Reservoir) scenario.getGenerator().selectOneOf(connectedReservoirs);
-                        Reservoir reservoir;
-                        
-                        // ** find a RESERVOIR that has at least one SUSCEPTIBLE BADGER
-                        // NOTE: can be done better, look at comments for BADGER -> COW transmission
-                        // for now ....
-                        int j = 0;
-                        do {
-                            reservoir = (Reservoir) scenario.getGenerator().selectOneOf(connectedReservoirs);
-    //                        connectedReservoirs.remove(reservoir);
-                            j++;
-                            if (j == connectedReservoirs.size()) break;
-                        } while (scenario.getReservoirInfections().get(reservoir.getId()).size() >= scenario.getReservoirData().get(reservoir.getId()).getReservoirSize());
-                        if (j == connectedReservoirs.size()) continue;
-                        
-                        // * update the SNPs in the COW.
-                        source = updateSnps(source, date);
-                        
-                        // * create a BADGER object and add it to the RESERVOIR COLLECTION.
-                        final InfectedBadger badger = new InfectedBadger(
-                                String.format("Badger_%05d", scenario.getNextBadgerId()),
-                                reservoir.getId(),
-                                source.getSnps(),
-                                source.getLastSnpGeneration());
-                        scenario.getReservoirInfections().get(reservoir.getId()).add(badger);
-                        scenario.getInfectedBadgers().put(badger.getId(), badger);
-                        
-                        // * add BADGER into the Transmission TREE
-                        // add source -> badger to the scenario.getResults().getTransmissionTree()
-                        InfectionNode sourceNode = scenario.getResults().getTransmissionTree().getVertex(source.getId());
-                        
-                        InfectionNode node = new InfectionNode(
-                                badger.getId(), badger.getReservoirId(),
-                                badger.getSnps(), date, null, false);
-                        scenario.getResults().getTransmissionTree().addVertex(node);
-                        scenario.getResults().getTransmissionTree().addEdge(new Edge<>(sourceNode, node), sourceNode, node);
-                        // record a cow -> badger transmission
-                        scenario.getResults().getCowBadgerTransmissions().add(1);
-                    }
-                }
-            } else if (event.getInitialState() instanceof InfectedBadger) {
-                // **** source: BADGER ****
-                
-                InfectedBadger source = (InfectedBadger) event.getInitialState();
-                
-                // ** BADGER exists?
-                if (scenario.getInfectedBadgers().containsKey(source.getId())) {
-                    
-                    if (event.getFinalState() instanceof InfectedBadger) {
-                        // **** BADGER -> BADGER transmission ****
-                        
-                        InfectedBadger recipient = (InfectedBadger) event.getFinalState();
-                        
-                        // ** new infection?
-                        if (recipient.getId().isEmpty()) {
-                            
-                            final int numInfectionsOnReservoir = scenario.getReservoirInfections().get(source.getReservoirId()).size();
-                            final int reservoirSize = scenario.getReservoirData().get(source.getReservoirId()).getReservoirSize();
-
-                            // ** any susceptibles?
-                            if (numInfectionsOnReservoir < reservoirSize) {
-                                // **** BADGER -> BADGER transmission ****
-                                // * update the SNPs in the BADGER.
-                                source = updateSnps(source, date);
-                                
-                                log.trace("{}", String.format("Adding new infection onto reservoir %s (current size=%d) with %d infected animals",
-                                        source.getReservoirId(), reservoirSize, numInfectionsOnReservoir));
-
-                                // * create a BADGER object and add it to the RESERVOIR COLLECTION.
-                                final InfectedBadger badger = new InfectedBadger(
-                                        String.format("Badger_%05d", scenario.getNextBadgerId()),
-                                        source.getReservoirId(),
-                                        source.getSnps(),
-                                        source.getLastSnpGeneration());
-                                scenario.getReservoirInfections().get(badger.getReservoirId()).add(badger);
-                                scenario.getInfectedBadgers().put(badger.getId(), badger);
-
-                                // * add BADGER into the Transmission TREE
-                                // add source -> badger to the scenario.getResults().getTransmissionTree()
-                                InfectionNode sourceNode = scenario.getResults().getTransmissionTree().getVertex(source.getId());
-
-                                InfectionNode node = new InfectionNode(
-                                        badger.getId(), badger.getReservoirId(),
-                                        badger.getSnps(), date, null, false);
-                                scenario.getResults().getTransmissionTree().addVertex(node);
-                                scenario.getResults().getTransmissionTree().addEdge(new Edge<>(sourceNode, node), sourceNode, node);
-                                // record a badger -> badger transmission
-                                scenario.getResults().getBadgerBadgerTransmissions().add(1);
-                            }
-
-                        } else {
-                            // Disease progress in Badger (next compartment)
-                            // at the moment this cannot happen as badgers only have 1 infectious compartment
-//                            source.setInfectionStatus(recipient.getInfectionStatus());
-                        }
-                        
-                    } else if (event.getFinalState() instanceof InfectedCow) {
-                        // **** BADGER -> COW transmission ****
-
-                        // ** find a FARM that has at least one SUSCEPTIBLE COW
-                        // find the reservoir the badger is in and select a farm that is connected to this reservoir.
-                        Reservoir reservoir = scenario.getReservoirData().get(source.getReservoirId());
-                        String farmId;
-
-                        // DB: [InfOnlySusc] Do not create more infected animals on a farm than the herd size on that farm
-                        //     The condition in while() is there to select a destination farm with at least one susceptible cow
-                        //     The if() break; statement is there to prevent from freezing in the loop,
-                        //     if, for instance, the problem is not seelcting a farm with susceptibles, but,
-                        //     that in the meantime, all susceptibles were moved away or new infecteds moved in or were newly infected! 
-//                        Collection<String> connectedFarmIds = (Collection<String>) CloneUtils.deepClone(reservoir.getConnectedFarms());
-                        Collection<String> connectedFarmIds = reservoir.getConnectedFarms();
-                        int j = 0;
-                        do {
-                            farmId = (String) scenario.getGenerator().selectOneOf(connectedFarmIds);
-//                            connectedFarmIds.remove(farmId);
-                            j++;
-                            if (j == connectedFarmIds.size()) break;
-                        } while (scenario.getFarmInfections().get(farmId).size() >= scenario.getFarmData().get(farmId).getHerdSize());
-
-                        if (j == connectedFarmIds.size()) continue;
-                        Farm farm = scenario.getFarmData().get(farmId);
-                        
-                        // * update the SNPs in the BADGER.
-                        source = updateSnps(source, date);
-                        
-                        // * create a COW object and add it to the FARM COLLECTION.
-                        final InfectedCow cow = new InfectedCow(
-                                String.format("Cow_%05d", scenario.getNextCowId()),
-                                farmId,
-                                source.getSnps(),
-                                source.getLastSnpGeneration(),
-                                ((InfectedCow) event.getFinalState()).getInfectionStatus());
-                        scenario.getFarmInfections().get(cow.getFarmId()).add(cow);
-                        scenario.getInfectedCows().put(cow.getId(), cow);
-                        
-                        log.trace("{}", String.format("Adding new infection onto farm %s (current size=%d) with %d infected animals from a badger",
-                            farmId, farm.getHerdSize(),
-                            scenario.getFarmInfections().get(farmId).size()));
-
-                        // * add COW into the Transmission TREE
-                        // add source -> cow to the scenario.getResults().getTransmissionTree()
-                        InfectionNode sourceNode = scenario.getResults().getTransmissionTree().getVertex(source.getId());
-
-                        InfectionNode node = new InfectionNode(
-                                cow.getId(), farmId,
-                                cow.getSnps(), date, null, true);
-                        scenario.getResults().getTransmissionTree().addVertex(node);
-                        scenario.getResults().getTransmissionTree().addEdge(new Edge<>(sourceNode, node), sourceNode, node);
-                        // record a badger -> cow transmission
-                        scenario.getResults().getBadgerCowTransmissions().add(1);
-                    }
-                }
-                
-            } else {
-                throw new BroadwickException("Unknown event " + event);
+            // each route has its own handler, the events only carry their source and route.
+            switch (transmission.getRoute()) {
+                case EXPOSED_TO_TESTSENSITIVE:
+                    progressCow((InfectedCow) event.getInitialState(), InfectionStateCow.TESTSENSITIVE);
+                    break;
+                case TESTSENSITIVE_TO_INFECTIOUS:
+                    progressCow((InfectedCow) event.getInitialState(), InfectionStateCow.INFECTIOUS);
+                    break;
+                case COW_TO_COW:
+                    infectCowFromCow((InfectedCow) event.getInitialState(), date);
+                    break;
+                case COW_TO_BADGER:
+                    infectBadgerFromCow((InfectedCow) event.getInitialState(), date);
+                    break;
+                case BADGER_TO_BADGER:
+                    infectBadgerFromBadger((InfectedBadger) event.getInitialState(), date);
+                    break;
+                case BADGER_TO_COW:
+                    infectCowFromBadger((InfectedBadger) event.getInitialState(), date);
+                    break;
+                default:
+                    throw new BroadwickException("Unknown event " + event);
             }
         }
     }
 
+    /**
+     * Move the infection of a cow to its next compartment.
+     * @param source the infected cow.
+     * @param status the new infection status of the cow.
+     */
+    private void progressCow(final InfectedCow source, final InfectionStateCow status) {
+        // DB: [DoNotMoveDeadCows]
+        // This event may not be possible as the infected animal may have been removed via a RWHT.
+        // ** COW exists?
+        if (scenario.getInfectedCows().containsKey(source.getId())) {
+            // Disease progress in Cow (next compartment)
+            source.setInfectionStatus(status);
+        }
+    }
+
+    /**
+     * Infect a susceptible cow on the farm of an infected cow.
+     * @param cow  the infected cow.
+     * @param date the date of the infection.
+     */
+    private void infectCowFromCow(final InfectedCow cow, final int date) {
+        // ** COW exists?
+        if (!scenario.getInfectedCows().containsKey(cow.getId())) {
+            return;
+        }
+        final int numInfectionsOnFarm = scenario.getNumInfectedCows(cow.getFarm());
+        final int herdSize = scenario.getHerdSize(cow.getFarm());
+
+        // ** any susceptibles?
+        if (numInfectionsOnFarm < herdSize) {
+            // **** COW -> COW transmission ****
+            // * update the SNPs in the COW.
+            final InfectedCow source = updateSnps(cow, date);
+
+            log.trace("{}", String.format("Adding new infection onto farm %s (current size=%d) with %d infected animals",
+                    source.getFarmId(), herdSize, numInfectionsOnFarm));
+
+            // * create a COW object and add it to the FARM COLLECTION.
+            final InfectedCow newCow = new InfectedCow(
+                    String.format("Cow_%05d", scenario.getNextCowId()),
+                    source.getFarm(),
+                    source.getFarmId(),
+                    source.getSnps(),
+                    source.getLastSnpGeneration(),
+                    InfectionStateCow.EXPOSED);
+            scenario.addInfectedCow(newCow);
+
+            // * add COW into the Transmission TREE
+            addToTransmissionTree(source.getId(), newCow.getId(), newCow.getFarmId(), newCow.getSnps(), date, true);
+            // record a cow -> cow transmission
+            // NOTE: Moved here. Let AOH know.
+            scenario.getResults().getCowCowTransmissions().add(1);
+        }
+    }
+
+    /**
+     * Infect a susceptible badger in a reservoir connected to the farm of an infected cow.
+     * @param cow  the infected cow.
+     * @param date the date of the infection.
+     */
+    private void infectBadgerFromCow(final InfectedCow cow, final int date) {
+        // ** COW exists?
+        if (!scenario.getInfectedCows().containsKey(cow.getId())) {
+            return;
+        }
+        // find the farm the cow is on and select a connected reservoir.
+        // ** find a RESERVOIR that has at least one SUSCEPTIBLE BADGER
+        final int reservoir = scenario.getReservoirsWithSusceptibles().sample(cow.getFarm(), scenario.getGenerator());
+        if (reservoir < 0) {
+            return;
+        }
+
+        // * update the SNPs in the COW.
+        final InfectedCow source = updateSnps(cow, date);
+
+        // * create a BADGER object and add it to the RESERVOIR COLLECTION.
+        final InfectedBadger badger = new InfectedBadger(
+                String.format("Badger_%05d", scenario.getNextBadgerId()),
+                reservoir,
+                scenario.getTopology().getReservoirId(reservoir),
+                source.getSnps(),
+                source.getLastSnpGeneration());
+        scenario.addInfectedBadger(badger);
+
+        // * add BADGER into the Transmission TREE
+        addToTransmissionTree(source.getId(), badger.getId(), badger.getReservoirId(), badger.getSnps(), date, false);
+        // record a cow -> badger transmission
+        scenario.getResults().getCowBadgerTransmissions().add(1);
+    }
+
+    /**
+     * Infect a susceptible badger in the reservoir of an infected badger.
+     * @param badger the infected badger.
+     * @param date   the date of the infection.
+     */
+    private void infectBadgerFromBadger(final InfectedBadger badger, final int date) {
+        // ** BADGER exists?
+        if (!scenario.getInfectedBadgers().containsKey(badger.getId())) {
+            return;
+        }
+        final int numInfectionsOnReservoir = scenario.getNumInfectedBadgers(badger.getReservoir());
+        final int reservoirSize = scenario.getReservoirSize(badger.getReservoir());
+
+        // ** any susceptibles?
+        if (numInfectionsOnReservoir < reservoirSize) {
+            // **** BADGER -> BADGER transmission ****
+            // * update the SNPs in the BADGER.
+            final InfectedBadger source = updateSnps(badger, date);
+
+            log.trace("{}", String.format("Adding new infection onto reservoir %s (current size=%d) with %d infected animals",
+                    source.getReservoirId(), reservoirSize, numInfectionsOnReservoir));
+
+            // * create a BADGER object and add it to the RESERVOIR COLLECTION.
+            final InfectedBadger newBadger = new InfectedBadger(
+                    String.format("Badger_%05d", scenario.getNextBadgerId()),
+                    source.getReservoir(),
+                    source.getReservoirId(),
+                    source.getSnps(),
+                    source.getLastSnpGeneration());
+            scenario.addInfectedBadger(newBadger);
+
+            // * add BADGER into the Transmission TREE
+            addToTransmissionTree(source.getId(), newBadger.getId(), newBadger.getReservoirId(), newBadger.getSnps(),
+                                  date, false);
+            // record a badger -> badger transmission
+            scenario.getResults().getBadgerBadgerTransmissions().add(1);
+        }
+    }
+
+    /**
+     * Infect a susceptible cow on a farm connected to the reservoir of an infected badger.
+     * @param badger the infected badger.
+     * @param date   the date of the infection.
+     */
+    private void infectCowFromBadger(final InfectedBadger badger, final int date) {
+        // ** BADGER exists?
+        if (!scenario.getInfectedBadgers().containsKey(badger.getId())) {
+            return;
+        }
+        // ** find a FARM that has at least one SUSCEPTIBLE COW
+        // find the reservoir the badger is in and select a farm that is connected to this reservoir.
+
+        // DB: [InfOnlySusc] Do not create more infected animals on a farm than the herd size on that farm
+        //     Only the farms with at least one susceptible cow are drawn; if, for instance, all
+        //     susceptibles were moved away or new infecteds moved in or were newly infected there is
+        //     no farm to draw and the transmission does not take place.
+        final int farm = scenario.getFarmsWithSusceptibles().sample(badger.getReservoir(), scenario.getGenerator());
+        if (farm < 0) {
+            return;
+        }
+        final String farmId = scenario.getTopology().getFarmId(farm);
+
+        // * update the SNPs in the BADGER.
+        final InfectedBadger source = updateSnps(badger, date);
+
+        // * create a COW object and add it to the FARM COLLECTION.
+        final InfectedCow cow = new InfectedCow(
+                String.format("Cow_%05d", scenario.getNextCowId()),
+                farm,
+                farmId,
+                source.getSnps(),
+                source.getLastSnpGeneration(),
+                InfectionStateCow.EXPOSED);
+        scenario.addInfectedCow(cow);
+
+        log.trace("{}", String.format("Adding new infection onto farm %s (current size=%d) with %d infected animals from a badger",
+            farmId, scenario.getHerdSize(farm),
+            scenario.getNumInfectedCows(farm)));
+
+        // * add COW into the Transmission TREE
+        addToTransmissionTree(source.getId(), cow.getId(), farmId, cow.getSnps(), date, true);
+        // record a badger -> cow transmission
+        scenario.getResults().getBadgerCowTransmissions().add(1);
+    }
+
+    /**
+     * Add a newly infected animal to the transmission tree.
+     * @param sourceId the id of the animal that passed on the infection.
+     * @param id       the id of the newly infected animal.
+     * @param unitId   the id of the farm or reservoir of the newly infected animal.
+     * @param snps     the SNPs of the newly infected animal.
+     * @param date     the date of the infection.
+     * @param isCow    true if the newly infected animal is a cow.
+     */
+    private void addToTransmissionTree(final String sourceId, final String id, final String unitId,
+                                       final SnpLineage snps, final int date, final boolean isCow) {
+        // add source -> animal to the scenario.getResults().getTransmissionTree()
+        InfectionNode sourceNode = scenario.getResults().getTransmissionTree().getVertex(sourceId);
+
+        InfectionNode node = new InfectionNode(id, unitId, snps, date, null, isCow);
+        scenario.getResults().getTransmissionTree().addVertex(node);
+        scenario.getResults().getTransmissionTree().addEdge(new Edge<>(sourceNode, node), sourceNode, node);
+    }
+
     private InfectedBadger updateSnps(InfectedBadger source, final int date) {
-        source.getSnps().addAll(
-                                ProjectSettings.generateSnp(
+        source.addSnps(
+                                scenario.getSnpAllocator().generateSnp(
                                         scenario.getStep().getCoordinates().get("mutationRate"),
                                         date,
-                                        scenario.getGenerator(),
                                         source.getLastSnpGeneration()));
         source.setLastSnpGeneration(date);
         
@@ -270,11 +261,10 @@ public class MyAmountManager implements AmountManager {
     }
     
     private InfectedCow updateSnps(InfectedCow source, final int date) {
-        source.getSnps().addAll(
-                                ProjectSettings.generateSnp(
+        source.addSnps(
+                                scenario.getSnpAllocator().generateSnp(
                                         scenario.getStep().getCoordinates().get("mutationRate"),
                                         date,
-                                        scenario.getGenerator(),
                                         source.getLastSnpGeneration()));
         source.setLastSnpGeneration(date);
         
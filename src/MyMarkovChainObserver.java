@@ -6,8 +6,6 @@ import broadwick.io.FileOutput;
 import broadwick.montecarlo.markovchain.observer.MarkovChainObserver;
 import broadwick.rng.RNG;
 import com.google.common.base.Joiner;
-import java.util.Collection;
-import java.util.Map;
 import lombok.EqualsAndHashCode;
 import lombok.extern.slf4j.Slf4j;
 
@@ -20,12 +18,16 @@ public class MyMarkovChainObserver extends MarkovChainObserver {
 
     MyMarkovChainObserver(final String transmissionNetworkFileName,
                           final String observedTransmissionNetworkFileName,
-                          final String snpDistanceFileName) {
+                          final String snpDistanceFileName,
+                          final OutputProfile outputProfile,
+                          final boolean columnarOutput) {
         super();
 
         this.transmissionNetworkFileName = transmissionNetworkFileName;
         this.observedTransmissionNetworkFileName = observedTransmissionNetworkFileName;
         this.snpDistanceFileName = snpDistanceFileName;
+        this.outputProfile = outputProfile;
+        this.columnarOutput = columnarOutput;
     }
 
     @Override
@@ -40,27 +42,16 @@ public class MyMarkovChainObserver extends MarkovChainObserver {
         this.timeSeriesInfectedReservoirs = String.format("TimeSeriesInfectedReservoirs.%d.csv", this.monteCarlo.getId());
         this.timeSeriesInfectedBadgers = String.format("TimeSeriesInfectedBadgers.%d.csv", this.monteCarlo.getId());
         this.likelihoodsFileName = String.format("Likelihoods.%d.csv", this.monteCarlo.getId());
-        
-        // DB: [testData]
-        this.cattleTestFilename= String.format("cattleTestResults.%d.csv", this.monteCarlo.getId(), false, false);
-        this.recordBadgersFilename = String.format("recordedBadgers.%d.csv", this.monteCarlo.getId(), false, false);
-        this.herdTestFilename = String.format("herdTestResults.%d.csv", this.monteCarlo.getId(), false, false);
-        
-        // stochastic events
-        this.initialSizesFilename = String.format("initialSizes.%d.csv", this.monteCarlo.getId(), false, false);
-        this.initialInfStatesFilename = String.format("initialInfectionStates.%d.csv", this.monteCarlo.getId(), false, false);
-        this.initialRestrictionsFilename = String.format("initialRestrictions.%d.csv", this.monteCarlo.getId(), false, false);
-        this.recordedMovementFilename = String.format("movements.%d.csv", this.monteCarlo.getId(), false, false);
-        
-        // DB: [OutInf]
-        this.allSequencesFileName = String.format("AllSequences.%d.csv", this.monteCarlo.getId(), false, false);
+
+        // the records of the scenarios of this chain.
+        this.recordSinks = new ScenarioRecordSinks(outputProfile, columnarOutput, this.monteCarlo.getId());
         
         // DB: [NodeSeq]
         // this file gets overwritten by different scenarios in the same MC chain :-(
-        nodeSequencesFile = new FileOutput(String.format("NodeSequences.%d.csv", this.monteCarlo.getId()), false, false);
-        nodeSequencesFile.write("Scenario_ID,");
-        nodeSequencesFile.write(InfectionNode.Header());
-        nodeSequencesFile.flush();
+        if (outputProfile.isEnabled(OutputProfile.Stream.NODE_SEQUENCES)) {
+            nodeSequencesFile = RecordSink.open(String.format("NodeSequences.%d", this.monteCarlo.getId()),
+                                                InfectionNode.LAYOUT, columnarOutput);
+        }
     }
 
     @Override
@@ -71,19 +62,23 @@ public class MyMarkovChainObserver extends MarkovChainObserver {
 
         if (this.monteCarlo.isLastStepAccepted()) {
 
-            try (FileOutput fo = new FileOutput(snpDistanceFileName, false, false)) {
-                fo.write(results.getPairwiseDistancesDistribution().toString());
+            if (outputProfile.isEnabled(OutputProfile.Stream.SNP_DISTANCES)) {
+                try (FileOutput fo = new FileOutput(snpDistanceFileName, false, false)) {
+                    fo.write(results.getPairwiseDistancesDistribution().toString());
+                }
             }
 
-            try (FileOutput fo = new FileOutput(transmissionNetworkFileName, false, false)) {
-            //fo.write(GraphViz.toString(results.getTransmissionTree()));
-                //fo.write(GraphMl.toString(results.getTransmissionTree(), true));
-                fo.write(EdgeList.toString(results.getTransmissionTree()));
-            }
-            try (FileOutput fo = new FileOutput(observedTransmissionNetworkFileName, false, false)) {
-            //fo.write(GraphViz.toString(results.getObservedTransmissionTree()));
-                //fo.write(GraphMl.toString(results.getObservedTransmissionTree(), true));
-                fo.write(EdgeList.toString(results.getObservedTransmissionTree()));
+            if (outputProfile.isEnabled(OutputProfile.Stream.TREES)) {
+                try (FileOutput fo = new FileOutput(transmissionNetworkFileName, false, false)) {
+                //fo.write(GraphViz.toString(results.getTransmissionTree()));
+                    //fo.write(GraphMl.toString(results.getTransmissionTree(), true));
+                    fo.write(EdgeList.toString(results.getTransmissionTree()));
+                }
+                try (FileOutput fo = new FileOutput(observedTransmissionNetworkFileName, false, false)) {
+                //fo.write(GraphViz.toString(results.getObservedTransmissionTree()));
+                    //fo.write(GraphMl.toString(results.getObservedTransmissionTree(), true));
+                    fo.write(EdgeList.toString(results.getObservedTransmissionTree()));
+                }
             }
 
             //
@@ -114,6 +109,14 @@ public class MyMarkovChainObserver extends MarkovChainObserver {
 
             
         }
+        // the records of the scenarios of the step, in the order the scenarios were created; if only the records of
+        // accepted steps are written those of a rejected step are dropped.
+        if (this.monteCarlo.isLastStepAccepted() || !outputProfile.isRecordAcceptedStepsOnly()) {
+            for (ScenarioRecords records : results.getPendingRecords()) {
+                recordSinks.write(records);
+            }
+        }
+        results.getPendingRecords().clear();
     }
 
     private boolean includeNodeInPhylogeneticTree(final RNG generator,
@@ -145,133 +148,13 @@ public class MyMarkovChainObserver extends MarkovChainObserver {
     public void finished() {
         MyMonteCarloScenarioResults results = ((MyMonteCarloScenarioResults) super.monteCarlo.getConsumer());
         
-        try (FileOutput fo = new FileOutput(this.cattleTestFilename, false, false)) {
-            StringBuilder sb = new StringBuilder();
-            sb.append("Scenario_ID,").append(CattleTest.Header());
-            for (final Map.Entry<Integer, Collection<CattleTest>> entry : results.getAllCattleTests().entrySet()) {
-                for (final CattleTest cattleTest : entry.getValue()) {
-                    sb.append(entry.getKey()).append(",");
-                    sb.append(cattleTest.toString()).append("\n");
-                }
-            }
-            fo.write(sb.toString());
-            fo.flush();
-            fo.close();
-        }
-        
-        try (FileOutput fo = new FileOutput(this.recordBadgersFilename, false, false)) {
-            StringBuilder sb = new StringBuilder();
-            sb.append("Scenario_ID,").append(RecordBadger.Header());
-            for (final Map.Entry<Integer, Collection<RecordBadger>> entry : results.getAllRecordedBadgers().entrySet()) {
-                for (final RecordBadger recordBadger : entry.getValue()) {
-                    sb.append(entry.getKey()).append(",");
-                    sb.append(recordBadger.toString()).append("\n");
-                }
-            }
-            fo.write(sb.toString());
-            fo.flush();
-            fo.close();
-        }
-        
-        try (FileOutput fo = new FileOutput(this.herdTestFilename, false, false)) {
-            StringBuilder sb = new StringBuilder();
-            sb.append("Scenario_ID,").append(HerdTest.Header());
-            for (final Map.Entry<Integer, Collection<HerdTest>> entry : results.getAllHerdTests().entrySet()) {
-                for (final HerdTest herdTest : entry.getValue()) {
-                    sb.append(entry.getKey()).append(",");
-                    sb.append(herdTest.toString()).append("\n");
-                }
-            }
-            fo.write(sb.toString());
-            fo.flush();
-            fo.close();
-        }
-        
-        try (FileOutput fo = new FileOutput(this.initialSizesFilename, false, false)) {
-            StringBuilder sb = new StringBuilder();
-            sb.append("Scenario_ID,").append(RecordInitialSize.Header());
-            for (final Map.Entry<Integer, Collection<RecordInitialSize>> entry : results.getAllInitialSizes().entrySet()) {
-                for (final RecordInitialSize item : entry.getValue()) {
-                    sb.append(entry.getKey()).append(",");
-                    sb.append(item.toString()).append("\n");
-                }
-            }
-            fo.write(sb.toString());
-            fo.flush();
-            fo.close();
-        }
-        
-        try (FileOutput fo = new FileOutput(this.initialInfStatesFilename, false, false)) {
-            StringBuilder sb = new StringBuilder();
-            sb.append("Scenario_ID,").append(RecordInitialInfState.Header());
-            for (final Map.Entry<Integer, Collection<RecordInitialInfState>> entry : results.getAllInitialInfStates().entrySet()) {
-                for (final RecordInitialInfState item : entry.getValue()) {
-                    sb.append(entry.getKey()).append(",");
-                    sb.append(item.toString()).append("\n");
-                }
-            }
-            fo.write(sb.toString());
-            fo.flush();
-            fo.close();
-        }
-        
-        try (FileOutput fo = new FileOutput(this.initialRestrictionsFilename, false, false)) {
-            StringBuilder sb = new StringBuilder();
-            sb.append("Scenario_ID,").append(RecordInitialRestrictions.Header());
-            for (final Map.Entry<Integer, Collection<RecordInitialRestrictions>> entry : results.getAllInitialRestrictions().entrySet()) {
-                for (final RecordInitialRestrictions item : entry.getValue()) {
-                    sb.append(entry.getKey()).append(",");
-                    sb.append(item.toString()).append("\n");
-                }
-            }
-            fo.write(sb.toString());
-            fo.flush();
-            fo.close();
-        }
-        
-        try (FileOutput fo = new FileOutput(this.recordedMovementFilename, false, false)) {
-            StringBuilder sb = new StringBuilder();
-            sb.append("Scenario_ID,").append(RecordMovement.Header());
-            for (final Map.Entry<Integer, Collection<RecordMovement>> entry : results.getAllRecordedMovements().entrySet()) {
-                for (final RecordMovement item : entry.getValue()) {
-                    sb.append(entry.getKey()).append(",");
-                    sb.append(item.toString()).append("\n");
-                }
-            }
-            fo.write(sb.toString());
-            fo.flush();
-            fo.close();
-        }
-        
-        try (FileOutput fo = new FileOutput(this.allSequencesFileName, false, false)) {
-            StringBuilder sb = new StringBuilder();
-            sb.append("Scenario_ID,").append(InfectedCow.Header());
-            for (final Map.Entry<Integer, Collection<InfectedCow>> entry : results.getAllInfectedCows().entrySet()) {
-                for (final InfectedCow cow : entry.getValue()) {
-                    sb.append(entry.getKey()).append(",");
-                    sb.append(cow.record()).append("\n");
-                }
-            }
-            for (final Map.Entry<Integer, Collection<InfectedBadger>> entry : results.getAllInfectedBadgers().entrySet()) {
-                for (final InfectedBadger badger : entry.getValue()) {
-                    sb.append(entry.getKey()).append(",");
-                    sb.append(badger.record()).append("\n");
-                }
-            }
-            fo.write(sb.toString());
-            fo.flush();
-            fo.close();
-        }
-
         // DB: [NodeSeq]
-        StringBuilder sb = new StringBuilder();
-        for (final InfectionNode node : results.getTransmissionTree().getVertices()) {
-            sb.append(results.getScenarioId()).append(",");
-            sb.append(node.record()).append("\n");
+        if (nodeSequencesFile != null) {
+            nodeSequencesFile.write(results.getScenarioId(), results.getTransmissionTree().getVertices(),
+                                    InfectionNode.LAYOUT);
+            nodeSequencesFile.close();
         }
-        nodeSequencesFile.write(sb.toString());
-        nodeSequencesFile.flush();
-        nodeSequencesFile.close();
+        recordSinks.close();
     }
 
     private String snpDistanceFileName;
@@ -284,18 +167,8 @@ public class MyMarkovChainObserver extends MarkovChainObserver {
     private String timeSeriesInfectedBadgers;
     private String likelihoodsFileName;
     
-    // DB: [OutInf] File name for output of all infections' data
-    private String allSequencesFileName;
-    private FileOutput nodeSequencesFile;
-    
-    // DB: [testData]
-    private String cattleTestFilename;
-    private String recordBadgersFilename;
-    private String herdTestFilename;
-    
-    // record stochastic events
-    private String initialSizesFilename;
-    private String initialInfStatesFilename;
-    private String initialRestrictionsFilename;
-    private String recordedMovementFilename;
+    private final OutputProfile outputProfile;
+    private final boolean columnarOutput;
+    private ScenarioRecordSinks recordSinks;
+    private RecordSink nodeSequencesFile;
 }
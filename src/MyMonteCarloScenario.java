@@ -1,6 +1,6 @@
 package btbcluster;
 
-import broadwick.BroadwickConstants;
+import broadwick.BroadwickException;
 import broadwick.graph.DirectedGraph;
 import broadwick.graph.Edge;
 import broadwick.montecarlo.MonteCarloResults;
@@ -9,19 +9,16 @@ import broadwick.montecarlo.MonteCarloStep;
 import broadwick.rng.RNG;
 import broadwick.statistics.distributions.IntegerDistribution;
 import broadwick.stochastic.SimulationController;
-import broadwick.stochastic.SimulationEvent;
-import broadwick.stochastic.SimulationState;
 import broadwick.stochastic.StochasticSimulator;
 import broadwick.stochastic.TransitionKernel;
 import broadwick.stochastic.algorithms.TauLeapingFixedStep;
-import broadwick.utils.CloneUtils;
 import com.google.common.base.Throwables;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -37,33 +34,56 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
     MyMonteCarloScenario(
             final MonteCarloStep step,
             final ProjectSettings settings,
-            final Map<String, Farm> farmData,
-            final Map<String, Reservoir> reservoirData,
-            final Map<String, Collection<InfectedCow>> farmInfections,
-            final Map<String, Collection<InfectedBadger>> reservoirInfections,
-            final Map<String, InfectedCow> infectedCows,
-            final Map<String, InfectedBadger> infectedBadgers,
+            final NetworkTopology topology,
             final int numCattleMovements,
             final int numBadgerMovements) {
 
         this.step = step;
         this.settings = settings;
-        this.farmData = CloneUtils.deepClone(farmData);
-        this.reservoirData = CloneUtils.deepClone(reservoirData);
-        this.farmInfections = CloneUtils.deepClone(farmInfections);
-        this.reservoirInfections = CloneUtils.deepClone(reservoirInfections);
-        this.infectedCows = CloneUtils.deepClone(infectedCows);
-        this.infectedBadgers = CloneUtils.deepClone(infectedBadgers);
+        // the topology is shared by all the scenarios, only the state of the farms and reservoirs is our own.
+        this.topology = topology;
         // DB: [numM] set numCattleMovements
         this.numCattleMovements = numCattleMovements;
         this.numBadgerMovements = numBadgerMovements;
+        this.snpAllocator = new SnpAllocator(variates, !settings.isOverlayMutations());
+
+        // the state of the farms and reservoirs, indexed by the farm/reservoir index.
+        final int numFarms = topology.getNumFarms();
+        final int numReservoirs = topology.getNumReservoirs();
+        this.farmOffMovementSizes = new MovementSizes[numFarms];
+        this.reservoirOffMovementSizes = new MovementSizes[numReservoirs];
+        this.herdSizes = new int[numFarms];
+        this.lastClearTestDates = new int[numFarms];
+        this.lastPositiveTestDates = new int[numFarms];
+        this.testScheduler = new TestScheduler(numFarms, settings.getTestIntervalInYears() * 365);
+        int maxFarmMovementSize = 0;
+        int maxReservoirMovementSize = 0;
+        if (settings.isFocusedMovements()) {
+            for (int farm = 0; farm < numFarms; farm++) {
+                maxFarmMovementSize = Math.max(maxFarmMovementSize,
+                                               topology.getFarm(farm).getOffMovementSizes().getMaxSize());
+            }
+            for (int reservoir = 0; reservoir < numReservoirs; reservoir++) {
+                maxReservoirMovementSize = Math.max(maxReservoirMovementSize,
+                                                    topology.getReservoir(reservoir).getOffMovementSizes().getMaxSize());
+            }
+        }
+        this.cattleMovementSampler = new MovementSampler(topology.getCattleMovements(), numFarms,
+                                                         settings.isFocusedMovements(), maxFarmMovementSize);
+        this.badgerMovementSampler = new MovementSampler(topology.getBadgerMovements(), numReservoirs,
+                                                         settings.isFocusedMovements(), maxReservoirMovementSize);
+        this.farmsWithSusceptibles = new DestinationSampler(topology.getConnectedFarms(), numFarms);
+        this.reservoirsWithSusceptibles = new DestinationSampler(topology.getFarmReservoirs(), numReservoirs);
+        this.clearTests = new int[numFarms];
+        this.farmInfectionCounts = new int[numFarms];
+        this.reservoirSizes = new int[numReservoirs];
+        this.reservoirInfectionCounts = new int[numReservoirs];
 
-        this.culledCows = new HashMap();
-        this.expiredBadgers = new HashMap();
         results = new MyMonteCarloScenarioResults(settings.getObservedPairwiseDistanceDistribution());
 
         nextBadgerId = 0;
         nextCowId = 0;
+        kernelCache = new TransitionKernelCache(this);
 
     }
 
@@ -92,80 +112,52 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
             }
         } while (settings.isFilterShortEpidemics() && finishedPrematurely);
 
-        // Now we sample from the transmission tree to generate a (observed transmission) phylogenetic tree.
-        // We do this by copying the transmision tree to the observed transmission tree and selectively removing nodes.
+        // Now we sample from the transmission tree to generate a (observed transmission) phylogenetic tree containing
+        // the root and the sampled nodes. If we only need the likelihood we just keep the sampled nodes, the tree is
+        // built from them if it is ever needed.
         log.debug("Sampling from transmission tree [{}] to generate phylogenetic tree.",
                 results.getTransmissionTree().getVertexCount());
-
-        results.setObservedTransmissionTree(results.getTransmissionTree());
-
-        log.trace("Copied transmission tree has [{}] nodes before sampling.", results.getObservedTransmissionTree().getVertexCount());
-        log.trace("Copied transmission tree has [{}] edges before sampling.", results.getObservedTransmissionTree().getEdges().size());
-
-        for (InfectionNode node : results.getTransmissionTree().getVertices()) {
-            // because we're iterating over the 'wrong' tree we need to get the actual node in this tree.
-            InfectionNode obsNode = results.getObservedTransmissionTree().getVertex(node.getId());
-
-            // remove this node if it is not the root and is not sampled.
-            // If we are using the actual dates of the tests then we should include only those animals whose sampleDate 
-            // is not null otherwise we say that animals are more likely to be detected later in the epidemic.
-            log.trace("Checking node {}", obsNode.getId());
-            if (obsNode.getId().equals(ROOT_ID) || includeNodeInPhylogeneticTree(obsNode)) {
-                log.debug("Adding node {} {} to the phylogenetic tree.", obsNode, obsNode.getDetectionDate());
-            } else {
-                if (obsNode.getDetectionDate() == null) {
-                    log.trace("Removing node {} from the phylogenetic tree. null", obsNode);
-                } else {
-                    log.trace("Removing node {} from the phylogenetic tree. {}", obsNode,
-                            (int) Math.floor((obsNode.getDetectionDate()) / 365.0) + BroadwickConstants.getZERO_DATE().getYear()
-                    );
-                }
-                Collection<Edge<InfectionNode>> inEdges = results.getObservedTransmissionTree().getInEdges(obsNode);
-                Collection<Edge<InfectionNode>> outEdges = results.getObservedTransmissionTree().getOutEdges(obsNode);
-
-                for (Edge<InfectionNode> inEdge : inEdges) {
-                    InfectionNode source = inEdge.getSource();
-                    for (Edge<InfectionNode> outEdge : outEdges) {
-                        InfectionNode destination = outEdge.getDestination();
-                        results.getObservedTransmissionTree().addEdge(new Edge<>(source, destination), source, destination);
-                    }
-                }
-                results.getObservedTransmissionTree().removeVertex(obsNode);
-                obsNode = null;
+        final ObservedTreeBuilder observedTreeBuilder = new ObservedTreeBuilder(settings, generator);
+        final Collection<InfectionNode> sampledNodes;
+        if (settings.isCalibrationOnly()) {
+            final List<InfectionNode> sampled = observedTreeBuilder.sample(results.getTransmissionTree(), ROOT_ID);
+            if (settings.getOutputProfile().isEnabled(OutputProfile.Stream.TREES)) {
+                // the observed tree can only be asked for if the trees are written.
+                results.setSampledNodes(sampled);
             }
+            sampledNodes = sampled;
+        } else {
+            results.setObservedTransmissionTree(observedTreeBuilder.build(results.getTransmissionTree(), ROOT_ID));
+            sampledNodes = results.getObservedTransmissionTree().getVertices();
         }
-        log.trace("Observed transmission tree has [{}] nodes", results.getObservedTransmissionTree().getVertexCount());
 
         // Calculate measureables and update results object
         results.getNumInfectedCowsAtDeath().add(numInfectedCowsAtDeath);
         results.getNumInfectedCowsMoved().add(numInfectedCowsMoved);
         results.getNumInfectedBadgersAtDeath().add(numInfectedBadgersAtDeath);
         results.getNumInfectedBadgersMoved().add(numInfectedBadgersMoved);
-        results.getPairwiseDistancesDistribution().add(calculatePairwiseDistances(results.getObservedTransmissionTree())); //<- this defines likelihood
+        results.getPairwiseDistancesDistribution().add(calculatePairwiseDistances(sampledNodes)); //<- this defines likelihood
         results.getOutbreakSize().add(infectedCows.size());
 
         log.debug("              Finished running scenario in {}", sw);
 
-        results.getInfectedCows().putAll(culledCows);
-        results.getInfectedCows().putAll(infectedCows);
-        results.getInfectedBadgers().putAll(expiredBadgers);
-        results.getInfectedBadgers().putAll(infectedBadgers);
-        
-        results.getCattleTest().addAll(cattleTest);
-        results.getRecordedBadgers().addAll(recordedBadgers);
-        results.getHerdTests().addAll(herdTests);
-        
-        results.getInitialSizes().addAll(initialSizes);
-        results.getInitialInfStates().addAll(initialInfStates);
-        results.getInitialRestrictions().addAll(initialRestrictions);
-        
-        results.getRecordedMovements().addAll(recordedMovements);
-
-        // NOTE: temporary change, uncomment!
-        // results.setScenarioId(this.id);
-
+        // keep the records of the scenario with its results, they are written by the observer of the chain once the
+        // step has finished (in the order the scenarios of the step were created) rather than at the end of the run.
+        results.setScenarioId(id);
+        if (recording) {
+            // the records outlive the scenario (which clears its state when it is finalised) so hand them over.
+            results.getPendingRecords().add(new ScenarioRecords(id, eventLog, initialSizes, initialInfStates,
+                                                                initialRestrictions,
+                                                                new ArrayList<>(culledCows.values()),
+                                                                new ArrayList<>(infectedCows.values()),
+                                                                new ArrayList<>(expiredBadgers.values()),
+                                                                new ArrayList<>(infectedBadgers.values())));
+            eventLog = new EventLog();
+            initialSizes = new ArrayList<>();
+            initialInfStates = new ArrayList<>();
+            initialRestrictions = new ArrayList<>();
+        }
 
-        Runtime.getRuntime().gc();
         return results;
     }
 
@@ -185,47 +177,41 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
             sb.append("found ").append(infectedCows.size()).append(" infected cows ");
             sb.append("(").append(numSamplesTaken).append(" were sampled), ");
             sb.append(infectedBadgers.size()).append(" infected badgers with ");
-            sb.append(restrictedHerds.size()).append(" herds under restriction.");
+            sb.append(numRestrictedHerds).append(" herds under restriction.");
             sb.append("\nResults:\n").append(results.toString());
 
             log.debug("{}", sb.toString());
         }
 
-        farmData.clear();
-        reservoirData.clear();
-        restrictedHerds.clear();
         farmInfections.clear();
         reservoirInfections.clear();
         infectedCows.clear();
         infectedBadgers.clear();
         
-        cattleTest.clear();
-        recordedBadgers.clear();
-        herdTests.clear();
+        eventLog.clear();
         
         initialSizes.clear();
         initialInfStates.clear();
         initialRestrictions.clear();
-        
-        recordedMovements.clear();
 
-        farmData = null;
-        reservoirData = null;
-        restrictedHerds = null;
+        topology = null;
+        farmOffMovementSizes = null;
+        reservoirOffMovementSizes = null;
+        herdSizes = null;
+        lastClearTestDates = null;
+        lastPositiveTestDates = null;
+        clearTests = null;
+        farmInfectionCounts = null;
+        reservoirSizes = null;
+        reservoirInfectionCounts = null;
         farmInfections = null;
         reservoirInfections = null;
         infectedCows = null;
         infectedBadgers = null;
         
-        cattleTest = null;
-        recordedBadgers = null;
-        herdTests = null;
-        
         initialSizes = null;
         initialInfStates = null;
         initialRestrictions = null;
-        
-        recordedMovements = null;
 
         simulator = null;
         results = null;
@@ -235,8 +221,7 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
 
     @Override
     public MonteCarloScenario copyOf() {
-        return new MyMonteCarloScenario(step, settings, farmData, reservoirData, farmInfections, reservoirInfections,
-                infectedCows, infectedBadgers, numCattleMovements, numBadgerMovements);
+        return new MyMonteCarloScenario(step, settings, topology, numCattleMovements, numBadgerMovements);
     }
 
     /**
@@ -252,17 +237,23 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
             // Initialise the amount manager, results object etc
             final MyAmountManager amountManager = new MyAmountManager(this);
             results = new MyMonteCarloScenarioResults(settings.getObservedPairwiseDistanceDistribution());
-            restrictedHerds = new HashMap();
+            initialiseUnitState();
+            snpAllocator.reset();
             
-            this.cattleTest = new ArrayList();
-            this.recordedBadgers = new ArrayList();
-            this.herdTests = new ArrayList();
+            eventLog.clear();
+            eventLog.setRecording(settings.getOutputProfile(), recording);
+            recordingInitialStates = recording
+                                     && settings.getOutputProfile().isEnabled(OutputProfile.Stream.INITIAL_STATES);
+            // the movements off units without infected animals can only be left out if they do not change the size of
+            // the units and are not recorded.
+            focusedCattleMovements = settings.isFocusedMovements() && !settings.isHerdSizeFlex()
+                                     && !eventLog.isRecordingMovements() && !eventLog.isRecordingHerdTests();
+            focusedBadgerMovements = settings.isFocusedMovements() && !settings.isReservoirSizeFlex()
+                                     && !eventLog.isRecordingMovements();
             
             this.initialSizes = new ArrayList();
             this.initialInfStates = new ArrayList();
             this.initialRestrictions = new ArrayList();
-            
-            this.recordedMovements = new ArrayList();
 
             // Set herd adn reservoir sizes,
             // remove movements off each herd that include a greater number of animals than exist in the unit.
@@ -300,6 +291,7 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
             simulator.setController(controller);
 
             // finally create the transition kernel
+            kernelCache.clear();
             updateKernel();
 
         } catch (Exception ex) {
@@ -309,35 +301,58 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
         log.debug("          Finished initialising scenario in {}.", sw);
     }
 
-    
+    /**
+     * Reset the state of the farms and reservoirs; no animals are infected and no herds are under restriction.
+     */
+    private void initialiseUnitState() {
+        farmInfections = new ArrayList<>(topology.getNumFarms());
+        for (int farm = 0; farm < topology.getNumFarms(); farm++) {
+            farmInfections.add(new InfectionBag<>());
+        }
+        reservoirInfections = new ArrayList<>(topology.getNumReservoirs());
+        for (int reservoir = 0; reservoir < topology.getNumReservoirs(); reservoir++) {
+            reservoirInfections.add(new InfectionBag<>());
+        }
+        infectedCows = new HashMap<>();
+        infectedBadgers = new HashMap<>();
+        culledCows = new HashMap<>();
+        expiredBadgers = new HashMap<>();
+
+        Arrays.fill(herdSizes, 0);
+        Arrays.fill(lastClearTestDates, -1);
+        Arrays.fill(lastPositiveTestDates, -1);
+        testScheduler.reset();
+        Arrays.fill(clearTests, -1);
+        cattleMovementSampler.reset();
+        badgerMovementSampler.reset();
+        farmsWithSusceptibles.reset();
+        reservoirsWithSusceptibles.reset();
+        Arrays.fill(farmInfectionCounts, 0);
+        Arrays.fill(reservoirSizes, 0);
+        Arrays.fill(reservoirInfectionCounts, 0);
+        numRestrictedHerds = 0;
+    }
+
     /**
      * Set the initial herd sizes of cattle.
      * 
      */
     private void initialiseHerdSizes() {
-        settings.getHerdSizeDistribution().setGenerator(generator);
-        for (Map.Entry<String, Farm> entry : farmData.entrySet()) {
-            int unitSize = settings.getHerdSizeDistribution().getRandomBin();
-            entry.getValue().setHerdSize(unitSize);
+        for (int farm = 0; farm < topology.getNumFarms(); farm++) {
+            int unitSize = settings.getHerdSizeDistribution().getRandomBin(generator);
+            herdSizes[farm] = unitSize;
+            updateSusceptibleCows(farm);
             
             // DB: [HS] Checking whether a selected move can be realized,
             //     i.e. if the herd size is larger than the move.
             //     If herdSize is constant, do here, otherwise
             //     it will be done on the fly in scenarioObserver.doMovements()
-            if (!settings.isHerdSizeFlex()) {
-                IntegerDistribution offMoveSizes = new IntegerDistribution();
-                for (int offMoveSize : entry.getValue().getOffMovementDistribution().getBins()) {
-                    if (offMoveSize <= unitSize) {
-                        offMoveSizes.setFrequency(offMoveSize,
-                                entry.getValue().getOffMovementDistribution().getFrequency(offMoveSize));
-                    }
-                }
-                entry.getValue().getOffMovementDistribution().clear();
-                entry.getValue().getOffMovementDistribution().add(offMoveSizes);
-            }
+            final MovementSizes offMoveSizes = topology.getFarm(farm).getOffMovementSizes();
+            farmOffMovementSizes[farm] = settings.isHerdSizeFlex() ? offMoveSizes : offMoveSizes.truncate(unitSize);
+            cattleMovementSampler.setSizes(farm, farmOffMovementSizes[farm]);
             
             // TODO: maybe add off movement distribution in the file
-            recordInitialSize("farm", entry.getKey(), unitSize);
+            recordInitialSize("farm", topology.getFarmId(farm), unitSize);
         }
     }
     
@@ -346,32 +361,25 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
      * 
      */
     private void initialiseReservoirSizes() {
-        settings.getReservoirSizeDistribution().setGenerator(generator);
-        for (Map.Entry<String, Reservoir> entry : reservoirData.entrySet()) {
-            int unitSize = settings.getReservoirSizeDistribution().getRandomBin();
-            entry.getValue().setReservoirSize(unitSize);
+        for (int reservoir = 0; reservoir < topology.getNumReservoirs(); reservoir++) {
+            int unitSize = settings.getReservoirSizeDistribution().getRandomBin(generator);
+            reservoirSizes[reservoir] = unitSize;
+            updateSusceptibleBadgers(reservoir);
             
             // DB: [HS] Checking whether a selected move can be realized,
             //     i.e. if the reservoir size is larger than the move.
             //     If reservoirSize is constant, do here, otherwise
             //     it will be done on the fly in scenarioObserver.doMovements()
-            if (!settings.isReservoirSizeFlex()) {
-                IntegerDistribution offMoveSizes = new IntegerDistribution();
-                for (int offMoveSize : entry.getValue().getOffMovementDistribution().getBins()) {
-                    if (offMoveSize <= unitSize) {
-                        offMoveSizes.setFrequency(offMoveSize,
-                                entry.getValue().getOffMovementDistribution().getFrequency(offMoveSize));
-                    }
-                }
-                entry.getValue().getOffMovementDistribution().clear();
-                entry.getValue().getOffMovementDistribution().add(offMoveSizes);
-            }
+            final MovementSizes offMoveSizes = topology.getReservoir(reservoir).getOffMovementSizes();
+            reservoirOffMovementSizes[reservoir] = settings.isReservoirSizeFlex() ? offMoveSizes
+                                                   : offMoveSizes.truncate(unitSize);
+            badgerMovementSampler.setSizes(reservoir, reservoirOffMovementSizes[reservoir]);
             
             // TODO: maybe add off movement distribution in the file
-            recordInitialSize("reservoir", entry.getKey(), unitSize);
+            recordInitialSize("reservoir", topology.getReservoirId(reservoir), unitSize);
         }
     }
-    
+
     /**
      * Set the initial infection states of the cattle and badgers.
      *
@@ -381,8 +389,8 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
         // initialise the infected cows and badgers....
         // int badgerId = 0;
         
-        Map<String, Set<Integer>> snp_init = new HashMap<>();
-        Set<Integer> snps;
+        Map<String, SnpLineage> snp_init = new HashMap<>();
+        SnpLineage snps;
         
         int infectionsAdded = 0;
         while (infectionsAdded == 0) {
@@ -395,7 +403,7 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
                     snps = snp_init.get(clade);
                 } else {
                     //     Pass negative mutation rate as a flag to force 'day' SNPs
-                    snps = ProjectSettings.generateSnp(-1.0, settings.getInitMutClade(), generator, 0);
+                    snps = SnpLineage.EMPTY.add(snpAllocator.generateSnp(-1.0, settings.getInitMutClade(), 0));
                     snp_init.put(clade, snps);
                 }
 
@@ -428,7 +436,7 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
      * @param probs Probabilities of states the cow may be in
      * @return number of seeded infectious animals
      */
-    private int initCow(String id, String unitId, Set<Integer> snps, String probs) {
+    private int initCow(String id, String unitId, SnpLineage snps, String probs) {
         int infectionsAdded = 0;
         final Double[] probsAsCsv = broadwick.utils.ArrayUtils.toDoubleArray(probs);
         
@@ -438,22 +446,24 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
         recordInitialInfState("cow", id, unitId, String.valueOf(initialInfectionState));
         
         if (initialInfectionState != InfectionStateCow.SUSCEPTIBLE) {
-            InfectedCow animal = new InfectedCow(id, unitId, snps,
+            final int farm = unitIndexOf(topology.getFarmIndex(), unitId);
+            InfectedCow animal = new InfectedCow(id, farm, unitId, snps,
                                                  settings.getStartDate(), initialInfectionState);
-            farmInfections.get(unitId).add(animal);
-            infectedCows.put(animal.getId(), animal);
+            addInfectedCow(animal);
             log.debug("{}", String.format("Seeding infected cow %s (%s) on farm %s",
                                           id, initialInfectionState, unitId));
             infectionsAdded++;
 
             if (settings.isIncludeReservoir() && settings.isInitBadgersFromCows()) {
-                Reservoir reservoir = generator.selectOneOf(settings.getFarmReservoirs().get(unitId));
+                final UnitNeighbours reservoirs = topology.getFarmReservoirs();
+                final int reservoir = reservoirs.get(reservoirs.getFirst(farm)
+                                                     + generator.getInteger(0, reservoirs.size(farm) - 1));
 
                 // Add an infected badger to this reservoir.
-                InfectedBadger badger = new InfectedBadger(String.format("Badger_%s", id), reservoir.getId(),
+                InfectedBadger badger = new InfectedBadger(String.format("Badger_%s", id), reservoir,
+                                                           topology.getReservoirId(reservoir),
                                                            snps, settings.getStartDate());
-                reservoirInfections.get(reservoir.getId()).add(badger);
-                infectedBadgers.put(badger.getId(), badger);
+                addInfectedBadger(badger);
                 infectionsAdded++;
             }
         } else {
@@ -471,7 +481,7 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
      * @param probs Probabilities of states the cow may be in
      * @return number of seeded infectious animals
      */
-    private int initBadger(String id, String unitId, Set<Integer> snps, String probs) {
+    private int initBadger(String id, String unitId, SnpLineage snps, String probs) {
         int infectionsAdded = 0;
         final Double[] probsAsCsv = broadwick.utils.ArrayUtils.toDoubleArray(probs);
         
@@ -481,10 +491,9 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
         recordInitialInfState("badger", id, unitId, String.valueOf(initialInfectionState));
         
         if (initialInfectionState != InfectionStateBadger.SUSCEPTIBLE) {
-            InfectedBadger animal = new InfectedBadger(id, unitId, snps,
-                                                    settings.getStartDate());
-            reservoirInfections.get(unitId).add(animal);
-            infectedBadgers.put(animal.getId(), animal);
+            InfectedBadger animal = new InfectedBadger(id, unitIndexOf(topology.getReservoirIndex(), unitId), unitId,
+                                                       snps, settings.getStartDate());
+            addInfectedBadger(animal);
             log.debug("{}", String.format("Seeding infected badger %s (%s) on farm %s",
                                           id, initialInfectionState, unitId));
             infectionsAdded++;
@@ -495,35 +504,49 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
         return (infectionsAdded);
     }
 
-    
+    /**
+     * Get the index of a farm or reservoir that is used to seed the scenario.
+     * @param index the index of the farms or reservoirs.
+     * @param id    the id of the farm or reservoir.
+     * @return the index of the unit.
+     */
+    private int unitIndexOf(final UnitIndex index, final String id) {
+        final int unit = index.indexOf(id);
+        if (unit < 0) {
+            throw new BroadwickException(String.format("Could not seed infection on unknown unit %s", id));
+        }
+        return unit;
+    }
+
     /**
      * Set initially some herds under movement restriction.
      */
     private void initialiseMovementRestrictions() {
-        Set<String> restrictedFarmIds = generator.selectManyOf(farmData.keySet(), settings.getNumInitialRestrictedHerds());
-        for (String id : restrictedFarmIds) {
+        final List<Integer> farms = new ArrayList<>(topology.getNumFarms());
+        for (int farm = 0; farm < topology.getNumFarms(); farm++) {
+            farms.add(farm);
+        }
+        for (int farm : generator.selectManyOf(farms, settings.getNumInitialRestrictedHerds())) {
             int cleartests = generator.getInteger(0, 1);
             int lastTestDate = settings.getStartDate() - generator.getInteger(0, 60);
             if (cleartests == 0) {
-                farmData.get(id).setLastClearTestDate(-1);
-                farmData.get(id).setLastPositiveTestDate(lastTestDate);
+                setTestDates(farm, -1, lastTestDate);
             } else {
-                farmData.get(id).setLastClearTestDate(lastTestDate);
-                farmData.get(id).setLastPositiveTestDate(-1);
+                setTestDates(farm, lastTestDate, -1);
             }
-            restrictedHerds.put(id, cleartests);
+            setClearTests(farm, cleartests);
             
             // TODO: maybe add off movement distribution in the file
-            recordInitialRestriction(id, cleartests, lastTestDate);
+            recordInitialRestriction(topology.getFarmId(farm), cleartests, lastTestDate);
         }
-        log.debug("Seeding scenario with {} restricted herds", restrictedHerds.size());
+        log.debug("Seeding scenario with {} restricted herds", numRestrictedHerds);
     }
     
     /**
      * Create the transmission tree.
      */
     private void createTransmissionTree() {
-        final InfectionNode root = new InfectionNode(ROOT_ID, ROOT_ID, new HashSet<>(), null, null, false);
+        final InfectionNode root = new InfectionNode(ROOT_ID, ROOT_ID, SnpLineage.EMPTY, null, null, false);
             results.getTransmissionTree().addVertex(root);
 
             for (Map.Entry<String, InfectedCow> cow : infectedCows.entrySet()) {
@@ -555,7 +578,7 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
                 settings.getStartDateMovements(),
                 settings.getEndDateMovements(),
                 settings.isIncludeReservoir(),
-                generator);
+                variates);
         simulator.addObserver(observer);
     }
     
@@ -608,107 +631,18 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
     protected final TransitionKernel updateKernel() {
         TransitionKernel transitionKernel = simulator.getTransitionKernel();
 
-        // need to clean up the cloned final states properly here else we get memory leaks.
-        transitionKernel.getTransitionEvents().forEach(new java.util.function.Consumer<SimulationEvent>() {
-
-            @Override
-            public void accept(final SimulationEvent event) {
-                SimulationState finalState = event.getFinalState();
-                finalState = null;
-            }
-        });
         // DB: [DoNotAccumulateRates]
         transitionKernel.clear();
 
         final StopWatch sw = new StopWatch();
         sw.start();
 
-//        for (Map.Entry<String, Collection<InfectedCow>> sourceFarm : farmInfections.entrySet()) {
-//            log.trace("{}", String.format("Updating transition kernel for farm %s (num susceptibles = %d, numInfected = %d)",
-//                                          farmId, numSusInHerd, entry.getValue().size()));
-        for (InfectedCow cow : infectedCows.values()) {
-            String farmId = cow.getFarmId();
-            final int numSusInHerd = farmData.get(farmId).getHerdSize() -
-                    farmInfections.get(farmId).size();
-//            log.trace("{}", String.format("Updating transition kernel for farm %s (num susceptibles = %d, numInfected = %d)",
-//                                          farmId, numSusInHerd, entry.getValue().size()));
-            InfectedCow finalState;
-            switch (cow.getInfectionStatus()) {
-                case EXPOSED:
-                    // Add E->T event
-                    finalState = new InfectedCow(cow.getId(), farmId, cow.getSnps(),
-                                                 cow.getLastSnpGeneration(),
-                                                 InfectionStateCow.TESTSENSITIVE);
-                    transitionKernel.addToKernel(new SimulationEvent(cow, finalState),
-                            // SIGMA
-                            settings.getSigma());
-//                            step.getCoordinates().get("sigma"));
-                    break;
-                case TESTSENSITIVE:
-                    // Add T->I event
-                    finalState = new InfectedCow(cow.getId(), farmId, cow.getSnps(),
-                                                 cow.getLastSnpGeneration(),
-                                                 InfectionStateCow.INFECTIOUS);
-                    transitionKernel.addToKernel(new SimulationEvent(cow, finalState),
-                                                 step.getCoordinates().get("gamma"));
-                    break;
-                case INFECTIOUS:
-                    // Cattle -> Cattle transmission
-                    // Add S->E event, since the newly infected cow does not have an id (we're not tracking 
-                    // susceptible animals) we will give it an empty one and let the event handler deal with it.
-                    finalState = new InfectedCow("", farmId, cow.getSnps(),
-                                                 cow.getLastSnpGeneration(),
-                                                 InfectionStateCow.EXPOSED);
-                    transitionKernel.addToKernel(new SimulationEvent(cow, finalState),
-                                                 numSusInHerd * step.getCoordinates().get("beta_CC"));
-
-                    if (settings.isIncludeReservoir()) {
-                        // Cattle -> Badger transmission
-                        for (Reservoir reservoir : settings.getFarmReservoirs().get(farmId)) {
-                            // since the newly infected badger does not have an id (we're not tracking 
-                            // susceptible animals) we will give it an empty one and let the event handler deal with it.
-                            final String reservoirId = reservoir.getId();
-                            InfectedBadger infectedBadger = new InfectedBadger("", reservoirId, cow.getSnps(),
-                                                                               cow.getLastSnpGeneration());
-                            // NOTE: 'reservoirData.get(reservoirId)' instead of 'reservoir'
-                            // because reservoir.getReservoirSize() = -1 for some reason.
-                            // investigate!
-                            // either make sure it will hold the correct value or get rid of,
-                            // as it seems to not be necessary
-                            final int numSusInReservoir = reservoirData.get(reservoirId).getReservoirSize() - reservoirInfections.get(reservoirId).size();
-                            transitionKernel.addToKernel(new SimulationEvent(cow, infectedBadger),
-                                                         numSusInReservoir * step.getCoordinates().get("beta_CB"));
-                        }
-                    }
-                    break;
-            }
-        }
-
-        if (settings.isIncludeReservoir()) {
-            for (InfectedBadger badger : infectedBadgers.values()) {
-                String reservoirId = badger.getReservoirId();
-                Reservoir reservoir = reservoirData.get(reservoirId);
-
-                final int numSusInReservoir = reservoirData.get(reservoirId).getReservoirSize() -
-                reservoirInfections.get(reservoirId).size();
-
-                // Badger -> Badger transmission
-                InfectedBadger infectedBadger = new InfectedBadger("", reservoirId, badger.getSnps(),
-                                                                    badger.getLastSnpGeneration());
-                transitionKernel.addToKernel(new SimulationEvent(badger, infectedBadger),
-                                             numSusInReservoir * step.getCoordinates().get("beta_BB"));
-                    
-                // Badger -> Cattle transmission
-                for (String farmId : reservoir.getConnectedFarms()) {
-                    InfectedCow infectedCow = new InfectedCow("", farmId, badger.getSnps(),
-                                                               badger.getLastSnpGeneration(),
-                                                                InfectionStateCow.EXPOSED);
-
-                    final int numSusInHerd = farmData.get(farmId).getHerdSize() - farmInfections.get(farmId).size();
-                    transitionKernel.addToKernel(new SimulationEvent(badger, infectedCow),
-                                                    numSusInHerd * step.getCoordinates().get("beta_BC"));
-                }
-            }
+        // In the incremental mode only the rates of the events affected by the farms and reservoirs that changed since
+        // the last update are recalculated, otherwise every event for every infected animal is re-created.
+        if (settings.isIncrementalKernel()) {
+            kernelCache.update(transitionKernel);
+        } else {
+            kernelCache.rebuild(transitionKernel);
         }
         
         sw.stop();
@@ -719,56 +653,323 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
         return transitionKernel;
     }
 
-    public int getNextCowId() {
-        return ++nextCowId;
+    /**
+     * Add an infected cow to the scenario and to the farm it is on.
+     *
+     * @param cow the infected cow.
+     */
+    public void addInfectedCow(final InfectedCow cow) {
+        final int farm = cow.getFarm();
+        infectedCows.put(cow.getId(), cow);
+        farmInfections.get(farm).add(cow);
+        farmInfectionCounts[farm]++;
+        cattleMovementSampler.setInfected(farm, true);
+        updateSusceptibleCows(farm);
+        kernelCache.farmChanged(farm);
     }
 
-    public int getNextBadgerId() {
-        return ++nextBadgerId;
+    /**
+     * Remove an infected cow (that has been culled) from the scenario and from the farm it is on.
+     *
+     * @param cow the infected cow.
+     */
+    public void removeInfectedCow(final InfectedCow cow) {
+        final int farm = cow.getFarm();
+        infectedCows.remove(cow.getId());
+        farmInfections.get(farm).remove(cow);
+        farmInfectionCounts[farm]--;
+        cattleMovementSampler.setInfected(farm, farmInfectionCounts[farm] > 0);
+        updateSusceptibleCows(farm);
+        kernelCache.farmChanged(farm);
     }
 
     /**
-     * Determine whether or not to include a node from the transmission tree in
-     * the phylogenetic tree. Nodes are preferentially picked towards the end of
-     * the outbreak rather than the start.
+     * Move an infected cow to another farm.
      *
-     * @param node the node to be tested.
-     * @return true if the node should be included, false otherwise.
-     */
-    private boolean includeNodeInPhylogeneticTree(final InfectionNode node) {
-        if (node != null) {
-            final Integer detectionDate = node.getDetectionDate();
-            if (detectionDate != null) {
-                Double probabilityOfGettingSample;
-                int detectionYear = (int) Math.floor((detectionDate) / 365.0) + BroadwickConstants.getZERO_DATE().getYear();
-                if (node.isCow()) {
-                    probabilityOfGettingSample = settings.getCattleSamplingRate().get(detectionYear);
-                } else {
-                    probabilityOfGettingSample = settings.getBadgerSamplingRate().get(detectionYear);
-                }
-                
-                if (probabilityOfGettingSample == null) {
-                    probabilityOfGettingSample = 0.0;
-                }
-                log.debug("Including node (year {}) in tree with probability {}", detectionYear, probabilityOfGettingSample);
-                return generator.getDouble() <= probabilityOfGettingSample;
-            }
-            log.trace("Node {} not detected - not being included", node.getId());
-            return false;
+     * @param cow         the infected cow.
+     * @param destination the index of the farm to which the cow is moved.
+     */
+    public void moveInfectedCow(final InfectedCow cow, final int destination) {
+        final int departure = cow.getFarm();
+        farmInfections.get(departure).remove(cow);
+        farmInfectionCounts[departure]--;
+        cattleMovementSampler.setInfected(departure, farmInfectionCounts[departure] > 0);
+        updateSusceptibleCows(departure);
+        kernelCache.farmChanged(departure);
+
+        cow.moveTo(destination, topology.getFarmId(destination));
+        farmInfections.get(destination).add(cow);
+        farmInfectionCounts[destination]++;
+        cattleMovementSampler.setInfected(destination, true);
+        updateSusceptibleCows(destination);
+        kernelCache.farmChanged(destination);
+    }
+
+    /**
+     * Add an infected badger to the scenario and to the reservoir it is in.
+     *
+     * @param badger the infected badger.
+     */
+    public void addInfectedBadger(final InfectedBadger badger) {
+        final int reservoir = badger.getReservoir();
+        infectedBadgers.put(badger.getId(), badger);
+        reservoirInfections.get(reservoir).add(badger);
+        reservoirInfectionCounts[reservoir]++;
+        badgerMovementSampler.setInfected(reservoir, true);
+        updateSusceptibleBadgers(reservoir);
+        kernelCache.reservoirChanged(reservoir);
+    }
+
+    /**
+     * Remove an infected badger (that has died) from the scenario and from the reservoir it is in.
+     *
+     * @param badger the infected badger.
+     */
+    public void removeInfectedBadger(final InfectedBadger badger) {
+        final int reservoir = badger.getReservoir();
+        infectedBadgers.remove(badger.getId());
+        reservoirInfections.get(reservoir).remove(badger);
+        reservoirInfectionCounts[reservoir]--;
+        badgerMovementSampler.setInfected(reservoir, reservoirInfectionCounts[reservoir] > 0);
+        updateSusceptibleBadgers(reservoir);
+        kernelCache.reservoirChanged(reservoir);
+    }
+
+    /**
+     * Move an infected badger to another reservoir.
+     *
+     * @param badger      the infected badger.
+     * @param destination the index of the reservoir to which the badger is moved.
+     */
+    public void moveInfectedBadger(final InfectedBadger badger, final int destination) {
+        final int departure = badger.getReservoir();
+        reservoirInfections.get(departure).remove(badger);
+        reservoirInfectionCounts[departure]--;
+        badgerMovementSampler.setInfected(departure, reservoirInfectionCounts[departure] > 0);
+        updateSusceptibleBadgers(departure);
+        kernelCache.reservoirChanged(departure);
+
+        badger.moveTo(destination, topology.getReservoirId(destination));
+        reservoirInfections.get(destination).add(badger);
+        reservoirInfectionCounts[destination]++;
+        badgerMovementSampler.setInfected(destination, true);
+        updateSusceptibleBadgers(destination);
+        kernelCache.reservoirChanged(destination);
+    }
+
+    /**
+     * Get the distribution of the number of animals moved off a farm in each movement.
+     *
+     * @param farm the index of the farm.
+     * @return the off movement distribution.
+     */
+    public MovementSizes getFarmOffMovementSizes(final int farm) {
+        return farmOffMovementSizes[farm];
+    }
+
+    /**
+     * Get the distribution of the number of animals moved out of a reservoir in each movement.
+     *
+     * @param reservoir the index of the reservoir.
+     * @return the off movement distribution.
+     */
+    public MovementSizes getReservoirOffMovementSizes(final int reservoir) {
+        return reservoirOffMovementSizes[reservoir];
+    }
+
+    /**
+     * Get the number of cattle on a farm.
+     *
+     * @param farm the index of the farm.
+     * @return the herd size.
+     */
+    public int getHerdSize(final int farm) {
+        return herdSizes[farm];
+    }
+
+    /**
+     * Set the number of cattle on a farm.
+     *
+     * @param farm the index of the farm.
+     * @param size the herd size.
+     */
+    public void setHerdSize(final int farm, final int size) {
+        herdSizes[farm] = size;
+        updateSusceptibleCows(farm);
+        kernelCache.farmChanged(farm);
+    }
+
+    /**
+     * Get the number of badgers in a reservoir.
+     *
+     * @param reservoir the index of the reservoir.
+     * @return the reservoir size.
+     */
+    public int getReservoirSize(final int reservoir) {
+        return reservoirSizes[reservoir];
+    }
+
+    /**
+     * Set the number of badgers in a reservoir.
+     *
+     * @param reservoir the index of the reservoir.
+     * @param size      the reservoir size.
+     */
+    public void setReservoirSize(final int reservoir, final int size) {
+        reservoirSizes[reservoir] = size;
+        updateSusceptibleBadgers(reservoir);
+        kernelCache.reservoirChanged(reservoir);
+    }
+
+    /**
+     * Update whether a farm has susceptible cattle, and so can be infected by a badger, after its herd size or number
+     * of infections has changed.
+     *
+     * @param farm the index of the farm.
+     */
+    private void updateSusceptibleCows(final int farm) {
+        farmsWithSusceptibles.setAvailable(farm, farmInfectionCounts[farm] < herdSizes[farm]);
+    }
+
+    /**
+     * Update whether a reservoir has susceptible badgers, and so can be infected by a cow, after its size or number
+     * of infections has changed.
+     *
+     * @param reservoir the index of the reservoir.
+     */
+    private void updateSusceptibleBadgers(final int reservoir) {
+        reservoirsWithSusceptibles.setAvailable(reservoir,
+                                                reservoirInfectionCounts[reservoir] < reservoirSizes[reservoir]);
+    }
+
+    /**
+     * Get the number of infected cattle on a farm.
+     *
+     * @param farm the index of the farm.
+     * @return the number of infected cattle.
+     */
+    public int getNumInfectedCows(final int farm) {
+        return farmInfectionCounts[farm];
+    }
+
+    /**
+     * Get the number of infected badgers in a reservoir.
+     *
+     * @param reservoir the index of the reservoir.
+     * @return the number of infected badgers.
+     */
+    public int getNumInfectedBadgers(final int reservoir) {
+        return reservoirInfectionCounts[reservoir];
+    }
+
+    /**
+     * Get the date of the last clear whole herd test on a farm.
+     *
+     * @param farm the index of the farm.
+     * @return the date of the test, -1 if the last test was positive.
+     */
+    public int getLastClearTestDate(final int farm) {
+        return lastClearTestDates[farm];
+    }
+
+    /**
+     * Get the date of the last positive test on a farm.
+     *
+     * @param farm the index of the farm.
+     * @return the date of the test, -1 if the last test was clear.
+     */
+    public int getLastPositiveTestDate(final int farm) {
+        return lastPositiveTestDates[farm];
+    }
+
+    /**
+     * Set the dates of the last clear and positive tests on a farm.
+     *
+     * @param farm                 the index of the farm.
+     * @param lastClearTestDate    the date of the last clear test (-1 if the last test was positive).
+     * @param lastPositiveTestDate the date of the last positive test (-1 if the last test was clear).
+     */
+    public void setTestDates(final int farm, final int lastClearTestDate, final int lastPositiveTestDate) {
+        lastClearTestDates[farm] = lastClearTestDate;
+        lastPositiveTestDates[farm] = lastPositiveTestDate;
+        testScheduler.schedule(farm, lastClearTestDate, lastPositiveTestDate);
+    }
+
+    /**
+     * Check whether a herd is under movement restriction.
+     *
+     * @param farm the index of the farm.
+     * @return true if the herd is under restriction.
+     */
+    public boolean isRestricted(final int farm) {
+        return clearTests[farm] >= 0;
+    }
+
+    /**
+     * Get the number of clear tests a restricted herd has had since it was put under restriction.
+     *
+     * @param farm the index of the farm.
+     * @return the number of clear tests, -1 if the herd is not under restriction.
+     */
+    public int getClearTests(final int farm) {
+        return clearTests[farm];
+    }
+
+    /**
+     * Put a herd under movement restriction (or keep it there) with a given number of clear tests.
+     *
+     * @param farm     the index of the farm.
+     * @param numTests the number of clear tests the herd has had since it was put under restriction.
+     */
+    public void setClearTests(final int farm, final int numTests) {
+        if (clearTests[farm] < 0) {
+            numRestrictedHerds++;
+            cattleMovementSampler.block(farm);
+        }
+        clearTests[farm] = numTests;
+    }
+
+    /**
+     * Lift the movement restriction on a herd.
+     *
+     * @param farm the index of the farm.
+     */
+    public void liftRestriction(final int farm) {
+        if (clearTests[farm] >= 0) {
+            numRestrictedHerds--;
+            cattleMovementSampler.unblock(farm);
         }
-        return false;
+        clearTests[farm] = -1;
+    }
+
+    /**
+     * Put a herd under movement restriction following a positive test, the number of clear tests is reset to zero.
+     *
+     * @param farm the index of the farm.
+     * @param date the date of the positive test.
+     */
+    public void restrictHerd(final int farm, final int date) {
+        setClearTests(farm, 0);
+        setTestDates(farm, -1, date);
+    }
+
+    public int getNextCowId() {
+        return ++nextCowId;
+    }
+
+    public int getNextBadgerId() {
+        return ++nextBadgerId;
     }
 
     /**
-     * Calculate all the pairwise distances in a phylogenetic tree (i.e. the
+     * Calculate all the pairwise distances between the nodes of a phylogenetic tree (i.e. the
      * nuber of unique SNPs in each pair of samples).
      *
-     * @param phylogeneticTree the tree in which we will obtain our samples.
+     * @param vertices the nodes of the tree (the root and the sampled nodes).
      * @return an IntegerDistribution of the pairwise distances.
      */
-    private IntegerDistribution calculatePairwiseDistances(final DirectedGraph<InfectionNode, Edge<InfectionNode>> phylogeneticTree) {
-        final IntegerDistribution distanceDist = new IntegerDistribution();
-        Collection<InfectionNode> vertices = phylogeneticTree.getVertices();
+    private IntegerDistribution calculatePairwiseDistances(final Collection<InfectionNode> vertices) {
+        final InfectionNode[] samples = vertices.toArray(new InfectionNode[vertices.size()]);
         log.trace("Calculating pairwise snp distances on {} vertices", vertices.size());
 
 //        if (vertices.size() > 1) {
@@ -784,26 +985,23 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
 //                }
 //            }
 //        }
-        if (vertices.size() > 1) {
-            for (InfectionNode nodeA : vertices) {
-                for (InfectionNode nodeB : vertices) {
-                    if (!nodeA.getId().equals(nodeB.getId())) {
-                        int snpDiff = 0;
-                        for (int snpA : nodeA.getSnp()) {
-                            if (!nodeB.getSnp().contains(snpA)) {
-                                snpDiff++;
-                            }
-                        }
-                        for (int snpB : nodeB.getSnp()) {
-                            if (!nodeA.getSnp().contains(snpB)) {
-                                snpDiff++;
-                            }
-                        }
-                        distanceDist.setFrequency(snpDiff);
+        // the SNPs of each node are only stored as a lineage, collect them once for each node.
+        final SnpSet[] snps = new SnpSet[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            snps[i] = samples[i].getSnp().toSnpSet();
+        }
 
-                    }
-                }
-            }
+        final IntegerDistribution distanceDist;
+        if (settings.isOverlayMutations()) {
+            // the nodes only carry the SNPs of their initial clade, the mutations since are drawn on the full
+            // transmission tree.
+            final MutationOverlay overlay = new MutationOverlay(results.getTransmissionTree(), ROOT_ID,
+                                                                settings.getStartDate(),
+                                                                step.getCoordinates().get("mutationRate"),
+                                                                variates);
+            distanceDist = PairwiseDistances.calculate(snps, overlay.between(samples));
+        } else {
+            distanceDist = PairwiseDistances.calculate(snps);
         }
         log.debug("Pairwise snp distances for {} vertices = {}", vertices.size(), distanceDist);
         return distanceDist;
@@ -815,27 +1013,36 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
      * @param startDate the simulation start date (the earliest test possible).
      */
     private void setFarmLastTestDate(final int startDate) {
-        for (Map.Entry<String, Farm> entry : farmData.entrySet()) {
+        for (int farm = 0; farm < topology.getNumFarms(); farm++) {
             // pick a random number between 1 and TstIntervalInYears*365 and subtract that from startDate, this will be the date
             // the farm last had a clear test and will be used to schedule the next test.
-            if (!restrictedHerds.containsKey(entry.getKey())) {
+            if (!isRestricted(farm)) {
                 int lastTestDate = generator.getInteger(0, ((int) Math.round((settings.getTestIntervalInYears() * 365) - 1)));
-                entry.getValue().setLastClearTestDate(startDate - lastTestDate);
+                setTestDates(farm, startDate - lastTestDate, lastPositiveTestDates[farm]);
             }
         }
     }
 
     private void recordInitialSize(final String species, final String unitId, final int size) {
+        if (!recordingInitialStates) {
+            return;
+        }
         final RecordInitialSize initialSize = new RecordInitialSize(species, unitId, size);
         this.initialSizes.add(initialSize);
     }
     
     private void recordInitialInfState(final String species, final String animalId, final String unitId, final String state) {
+        if (!recordingInitialStates) {
+            return;
+        }
         final RecordInitialInfState initialInfState = new RecordInitialInfState(species, animalId, unitId, state);
         this.initialInfStates.add(initialInfState);
     }
     
     private void recordInitialRestriction(final String unitId, final int cleartest, final int lastTestDate) {
+        if (!recordingInitialStates) {
+            return;
+        }
         final RecordInitialRestrictions initialRestriction = new RecordInitialRestrictions(unitId, cleartest, lastTestDate);
         this.initialRestrictions.add(initialRestriction);
     }
@@ -861,26 +1068,51 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
 //    private final MonteCarloStep step;
     @Getter
     private final ProjectSettings settings;
+    // The state of each farm and reservoir, indexed by the index of the farm/reservoir.
+    private MovementSizes[] farmOffMovementSizes;
+    private MovementSizes[] reservoirOffMovementSizes;
+    private int[] herdSizes;
+    private int[] lastClearTestDates;
+    private int[] lastPositiveTestDates;
+    // the next whole herd test of each farm, updated whenever the test dates of a farm change.
     @Getter
-    private Map<String, Integer> restrictedHerds;     // farm id and the number of clear tests.
+    private final TestScheduler testScheduler;
+    // the cattle movements between herds that are not under restriction.
     @Getter
-    private Map<String, Collection<InfectedCow>> farmInfections;
+    private final MovementSampler cattleMovementSampler;
+    // the badger movements, only used to skip the movements that carry no infection.
     @Getter
-    private Map<String, Collection<InfectedBadger>> reservoirInfections;
+    private final MovementSampler badgerMovementSampler;
+    // the farms within range of each reservoir, and the reservoirs of each farm, that have susceptible animals.
     @Getter
-    private Map<String, InfectedCow> infectedCows;
+    private final DestinationSampler farmsWithSusceptibles;
     @Getter
-    private final Map<String, InfectedCow> culledCows;
+    private final DestinationSampler reservoirsWithSusceptibles;
+    // true if only the movements off units holding infected animals are simulated.
     @Getter
-    private Map<String, InfectedBadger> infectedBadgers;
+    private boolean focusedCattleMovements;
+    @Getter
+    private boolean focusedBadgerMovements;
+    private int[] clearTests;                   // the number of clear tests of a restricted herd, -1 if not restricted.
+    private int[] farmInfectionCounts;
+    private int[] reservoirSizes;
+    private int[] reservoirInfectionCounts;
     @Getter
-    private final Map<String, InfectedBadger> expiredBadgers;
+    private int numRestrictedHerds;
     @Getter
-    private Collection<CattleTest> cattleTest;
+    private List<InfectionBag<InfectedCow>> farmInfections;
     @Getter
-    private Collection<RecordBadger> recordedBadgers;
+    private List<InfectionBag<InfectedBadger>> reservoirInfections;
     @Getter
-    private Collection<HerdTest> herdTests;
+    private Map<String, InfectedCow> infectedCows;
+    @Getter
+    private Map<String, InfectedCow> culledCows;
+    @Getter
+    private Map<String, InfectedBadger> infectedBadgers;
+    @Getter
+    private Map<String, InfectedBadger> expiredBadgers;
+    @Getter
+    private EventLog eventLog = new EventLog();
     @Getter
     private Collection<RecordInitialSize> initialSizes;
     @Getter
@@ -888,18 +1120,28 @@ public class MyMonteCarloScenario extends MonteCarloScenario {
     @Getter
     private Collection<RecordInitialRestrictions> initialRestrictions;
     @Getter
-    private Collection<RecordMovement> recordedMovements;
-    @Getter
     private final RNG generator = new RNG(RNG.Generator.Well19937c);
+    // the hypergeometric, Poisson and subset draws of the scenario, taken from its generator.
+    @Getter
+    private final RandomVariates variates = new RandomVariates(generator);
+    @Getter
+    @Setter
+    private int id;
+    // true if the records of this scenario are collected (it may not be among the fraction of scenarios recorded).
+    @Setter
+    private boolean recording;
+    private boolean recordingInitialStates;
+    // the SNPs of this scenario, the ids are drawn afresh each time the scenario is initialised.
+    @Getter
+    private final SnpAllocator snpAllocator;
     private boolean finishedPrematurely;
     @Getter
     private StochasticSimulator simulator;
     @Getter
     private MyMonteCarloScenarioResults results;
     @Getter
-    private Map<String, Farm> farmData;
-    @Getter
-    private Map<String, Reservoir> reservoirData;
+    private NetworkTopology topology;
+    private final TransitionKernelCache kernelCache;
     private int nextBadgerId;
     private int nextCowId;
     private static final String ROOT_ID = "ROOT";
@@ -0,0 +1,111 @@
+package btbcluster;
+
+import broadwick.BroadwickException;
+import broadwick.montecarlo.MonteCarloResults;
+import broadwick.montecarlo.MonteCarloScenario;
+import broadwick.montecarlo.MonteCarloStep;
+import broadwick.rng.RNG;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Run the replicates of a Monte Carlo step, i.e. several independent scenarios with the same parameters, on a thread
+ * pool. Each replicate is given its own seed drawn from the seed of the batch and the results of the replicates are
+ * joined in the order the replicates were created, so that the results of a batch (including the records of the
+ * scenarios, which are written in that order by the observer of the chain) depend on its seed but not on the number of
+ * threads used to run it.
+ */
+@Slf4j
+public class MyMonteCarloScenarioBatch extends MonteCarloScenario {
+
+    /**
+     * Create the batch of scenarios.
+     * @param step               the step of the Markov chain (the parameters of the scenarios).
+     * @param settings           the project settings.
+     * @param topology           the network the scenarios are run on.
+     * @param numCattleMovements the number of cattle movements.
+     * @param numBadgerMovements the number of badger movements.
+     * @param numReplicates      the number of scenarios to run.
+     * @param executor           the thread pool on which the scenarios are run.
+     * @param scenarioIds        the next id to give a scenario, shared by all the batches of the run.
+     */
+    public MyMonteCarloScenarioBatch(final MonteCarloStep step, final ProjectSettings settings,
+                                     final NetworkTopology topology,
+                                     final int numCattleMovements, final int numBadgerMovements,
+                                     final int numReplicates, final ExecutorService executor,
+                                     final AtomicInteger scenarioIds) {
+        this.step = step;
+        this.settings = settings;
+        this.topology = topology;
+        this.numCattleMovements = numCattleMovements;
+        this.numBadgerMovements = numBadgerMovements;
+        this.numReplicates = numReplicates;
+        this.executor = executor;
+        this.scenarioIds = scenarioIds;
+    }
+
+    @Override
+    public MonteCarloResults run(final int seed) {
+        final RNG seedGenerator = new RNG(RNG.Generator.Well19937c);
+        seedGenerator.seed(seed);
+
+        // the seeds (and scenarios) are created on this thread so they do not depend on the order the scenarios run.
+        final List<Future<MonteCarloResults>> replicates = new ArrayList<>(numReplicates);
+        final int firstScenarioId = scenarioIds.getAndAdd(numReplicates);
+        // the scenarios whose records are collected are chosen with a separate generator so the seeds of the
+        // replicates do not depend on the output profile.
+        final double recordFraction = settings.getOutputProfile().getRecordFraction();
+        final RNG recordGenerator = new RNG(RNG.Generator.Well19937c);
+        recordGenerator.seed(seed + 1);
+        for (int i = 0; i < numReplicates; i++) {
+            final int replicateSeed = seedGenerator.getInteger(0, Integer.MAX_VALUE - 1);
+            final MyMonteCarloScenario scenario = new MyMonteCarloScenario(step, settings, topology,
+                                                                           numCattleMovements, numBadgerMovements);
+            scenario.setId(firstScenarioId + i);
+            scenario.setRecording(recordFraction >= 1.0 || recordGenerator.getDouble() < recordFraction);
+            replicates.add(executor.submit(() -> scenario.run(replicateSeed)));
+        }
+
+        final MyMonteCarloScenarioResults results = new MyMonteCarloScenarioResults(settings.getObservedPairwiseDistanceDistribution());
+        try {
+            for (int i = 0; i < numReplicates; i++) {
+                final MyMonteCarloScenarioResults replicateResults = (MyMonteCarloScenarioResults) replicates.get(i).get();
+                // joining the replicates in order also keeps the records of their scenarios in that order.
+                results.join(replicateResults);
+                // the replicate results are not needed once joined, let them be collected.
+                replicates.set(i, null);
+            }
+        } catch (InterruptedException ex) {
+            replicates.stream().filter(replicate -> replicate != null).forEach(replicate -> replicate.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new BroadwickException(ex);
+        } catch (ExecutionException ex) {
+            replicates.stream().filter(replicate -> replicate != null).forEach(replicate -> replicate.cancel(true));
+            throw new BroadwickException(ex.getCause());
+        }
+        log.debug("Joined results of {} scenarios", numReplicates);
+
+        return results;
+    }
+
+    @Override
+    public MonteCarloScenario copyOf() {
+        return new MyMonteCarloScenarioBatch(step, settings, topology, numCattleMovements, numBadgerMovements,
+                                             numReplicates, executor, scenarioIds);
+    }
+
+    private final ProjectSettings settings;
+    private final NetworkTopology topology;
+    private final int numCattleMovements;
+    private final int numBadgerMovements;
+    @Getter
+    private final int numReplicates;
+    private final ExecutorService executor;
+    private final AtomicInteger scenarioIds;
+}
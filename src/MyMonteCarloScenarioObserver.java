@@ -3,21 +3,13 @@ package btbcluster;
 import broadwick.BroadwickException;
 import broadwick.data.Test;
 import broadwick.rng.RNG;
-import broadwick.statistics.distributions.HypergeometricDistribution;
-import broadwick.statistics.distributions.IntegerDistribution;
 import broadwick.stochastic.Observer;
 import broadwick.stochastic.SimulationEvent;
 import broadwick.stochastic.StochasticSimulator;
-import broadwick.utils.Pair;
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 //import java.util.Set;
-import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.time.StopWatch;
 
@@ -28,7 +20,7 @@ public class MyMonteCarloScenarioObserver extends Observer {
                                         MyMonteCarloScenario scenario,
                                         int startDate, int endDate,
                                         boolean includeReservoir,
-                                        final RNG rng) {
+                                        final RandomVariates variates) {
         super(simulator);
         this.scenario = scenario;
         // DB_comment: this is not used anywhere, even though passed through arguments
@@ -38,7 +30,11 @@ public class MyMonteCarloScenarioObserver extends Observer {
         this.numBadgerMovementsForPeriod = (scenario.getNumBadgerMovements() * scenario.getSettings().getStepSize())
                 / (endDate - startDate);
         
-        this.generator = rng;
+        this.variates = variates;
+        this.selectedCows = new ArrayList<>();
+        this.selectedBadgers = new ArrayList<>();
+        this.dueFarms = new int[2 * scenario.getTopology().getNumFarms()];
+        this.dueDates = new int[2 * scenario.getTopology().getNumFarms()];
     }
 
     @Override
@@ -64,22 +60,20 @@ public class MyMonteCarloScenarioObserver extends Observer {
         scenario.updateKernel();
 
         // Update some measureables in the results
-        int infectedHerds = Iterables.size(Iterables.filter(scenario.getFarmInfections().entrySet(), new Predicate<Map.Entry<String, Collection<InfectedCow>>>() {
-
-            @Override
-            public boolean apply(Map.Entry<String, Collection<InfectedCow>> input) {
-                return input.getValue().size() > 0;
+        int infectedHerds = 0;
+        for (int farm = 0; farm < scenario.getTopology().getNumFarms(); farm++) {
+            if (scenario.getNumInfectedCows(farm) > 0) {
+                infectedHerds++;
             }
-        }));
-        int infectedReservoirs = Iterables.size(Iterables.filter(scenario.getReservoirInfections().entrySet(), new Predicate<Map.Entry<String, Collection<InfectedBadger>>>() {
-
-            @Override
-            public boolean apply(Map.Entry<String, Collection<InfectedBadger>> input) {
-                return input.getValue().size() > 0;
+        }
+        int infectedReservoirs = 0;
+        for (int reservoir = 0; reservoir < scenario.getTopology().getNumReservoirs(); reservoir++) {
+            if (scenario.getNumInfectedBadgers(reservoir) > 0) {
+                infectedReservoirs++;
             }
-        }));
+        }
         this.scenario.getResults().getInfectedHerdsTimeSeries().append(infectedHerds).append(",");
-        this.scenario.getResults().getHerdsUnderRestrictionTimeSeries().append(scenario.getRestrictedHerds().size()).append(",");
+        this.scenario.getResults().getHerdsUnderRestrictionTimeSeries().append(scenario.getNumRestrictedHerds()).append(",");
         this.scenario.getResults().getInfectedCowsTimeSeries().append(scenario.getInfectedCows().size()).append(",");
         this.scenario.getResults().getInfectedReservoirsTimeSeries().append(infectedReservoirs).append(",");
         this.scenario.getResults().getInfectedBadgersTimeSeries().append(scenario.getInfectedBadgers().size()).append(",");
@@ -101,39 +95,36 @@ public class MyMonteCarloScenarioObserver extends Observer {
                 
                 final Test testEvent = (Test) event;
                 final String herdId = testEvent.getGroup();
+                final int herd = scenario.getTopology().getFarmIndex().indexOf(herdId);
                 log.trace(String.format("Processing %s event on %s at %d", testEvent.getId(), testEvent.getLocation(), testEvent.getTestDate()));
-                final int reactors = performWHT(testEvent.getTestDate(), herdId);
+                final int reactors = performWHT(testEvent.getTestDate(), herd);
                 if (reactors > 0) {
                     log.debug("WHT resulted in {} breakdowns at {}", reactors, testEvent.getTestDate());
-                    log.debug("WHT resulted in {} infected animals left on farm {}", scenario.getFarmInfections().get(herdId).size(), herdId);
+                    log.debug("WHT resulted in {} infected animals left on farm {}", scenario.getNumInfectedCows(herd), herdId);
 
                     scenario.getResults().getReactorsAtBreakdownDistribution().setFrequency(reactors);
                     needToUpdateKernel = true;
 
                     // Either place the herd under movement restriction or reset the number of clear tests to zero
                     // and create a theta event for 60 days in the future.
-                    scenario.getRestrictedHerds().put(herdId, 0);
-                    scenario.getFarmData().get(testEvent.getLocation()).setLastClearTestDate(-1);
-                    scenario.getFarmData().get(testEvent.getLocation()).setLastPositiveTestDate(((int) time));
+                    scenario.restrictHerd(herd, (int) time);
 
-                } else if (scenario.getRestrictedHerds().containsKey(herdId)) {
+                } else if (scenario.isRestricted(herd)) {
                     // if it was clear and is a restricted Herd, set another test.
-                    Integer clearTests = scenario.getRestrictedHerds().get(herdId) + 1;
+                    int clearTests = scenario.getClearTests(herd) + 1;
                     log.trace("Herd {} has had {} clear tests", herdId, clearTests);
                     if (clearTests >= 2) {
                         log.debug("WHT clear: restriction lifted on {} at {}", herdId, testEvent.getTestDate());
                         // herd is clear to trade - remove from restrictedHerds list and schedule another test
-                        scenario.getRestrictedHerds().remove(herdId);
+                        scenario.liftRestriction(herd);
                     } else {
                         log.debug("WHT clear: {} passed {} follow-up tests", herdId, clearTests);
-                        scenario.getRestrictedHerds().put(herdId, clearTests);
+                        scenario.setClearTests(herd, clearTests);
                     }
-                    scenario.getFarmData().get(testEvent.getLocation()).setLastClearTestDate(-1);
-                    scenario.getFarmData().get(testEvent.getLocation()).setLastPositiveTestDate(((int) time));
+                    scenario.setTestDates(herd, -1, (int) time);
                 } else {
                     log.debug("WHT clear: herd {} remains free at {}", herdId, testEvent.getTestDate());
-                    scenario.getFarmData().get(testEvent.getLocation()).setLastClearTestDate(((int) time));
-                    scenario.getFarmData().get(testEvent.getLocation()).setLastPositiveTestDate(-1);
+                    scenario.setTestDates(herd, (int) time, -1);
                 }
             }
         }
@@ -149,26 +140,17 @@ public class MyMonteCarloScenarioObserver extends Observer {
     }
 
     private void registerThetaEvents(final double time) {
-        // Register theta events for the coming step.
-        double testIntervalInDays = scenario.getSettings().getTestIntervalInYears() * 365;
-        for (Map.Entry<String, Farm> entry : scenario.getFarmData().entrySet()) {
-
-            if (entry.getValue().getLastPositiveTestDate() == -1) {
-                // the herd is clear to trade (initially all herds are clear to trade so we check this first)
-                int nextTestDate = (int) Math.round(entry.getValue().getLastClearTestDate() + testIntervalInDays);
-                if ((nextTestDate >= time) && (nextTestDate < (time + scenario.getSettings().getStepSize()))) {
-                    getProcess().registerNewTheta(this, nextTestDate, new Test("", entry.getKey(), entry.getKey(),
-                                                                               nextTestDate, null, null));
-                }
-            }
-            if (entry.getValue().getLastClearTestDate() == -1) {
-                // the herd is under restriction, 
-                int nextTestDate = entry.getValue().getLastPositiveTestDate() + 60;
-                if ((nextTestDate >= time) && (nextTestDate < (time + scenario.getSettings().getStepSize()))) {
-                    getProcess().registerNewTheta(this, nextTestDate, new Test("", entry.getKey(), entry.getKey(),
-                                                                               nextTestDate, null, null));
-                }
-            }
+        // Register theta events for the coming step, the scheduler keeps the next test of each farm (after a clear
+        // test for a herd that is clear to trade, after a positive test for a herd under restriction) so only the
+        // farms whose tests are due in this step are visited.
+        final int from = (int) Math.ceil(time);
+        final int to = (int) Math.ceil(time + scenario.getSettings().getStepSize());
+        final int numDue = scenario.getTestScheduler().pollDue(from, to, dueFarms, dueDates);
+        for (int i = 0; i < numDue; i++) {
+            final String farmId = scenario.getTopology().getFarmId(dueFarms[i]);
+            final int nextTestDate = dueDates[i];
+            getProcess().registerNewTheta(this, nextTestDate, new Test("", farmId, farmId,
+                                                                       nextTestDate, null, null));
         }
     }
     
@@ -190,33 +172,47 @@ public class MyMonteCarloScenarioObserver extends Observer {
         // moved to that farm, then premeovement test each animal and deal with the consequences of a positive test.
         int numMovedSoFar = 0;
         int infectedAnimalsMoved = 0;
-        final int numKnownMoves = scenario.getSettings().getCattleMovementFrequencies().size();
+        // the movements off farms without infected animals are not simulated in the focused mode, we only draw the
+        // number of animals they move.
+        final boolean focused = scenario.isFocusedCattleMovements();
+        final MovementSampler sampler = scenario.getCattleMovementSampler();
+        int numUninfectedMoved = 0;
         while (numMovedSoFar < numCattleMovementsForPeriod) {
 
             // Find a movement at random between 2 farms, according to the known farm-farm movement distribution.
-            int rnd = scenario.getGenerator().getInteger(0, numKnownMoves - 1);
-            Pair<String, String> movementData = scenario.getSettings().getCattleMovementFrequencies().get(rnd);
-
             // set up the movement if (and only if) neither farm is under movement restriction and there are infected
-            // animals on the first (departing) farm [we don't track non-infecteds]
-            String departureUnitId = movementData.getFirst();
-            String destinationUnitId = movementData.getSecond();
-            
-            // apply if there are restriction rules on this species
-            if (scenario.getRestrictedHerds().containsKey(departureUnitId)
-                || scenario.getRestrictedHerds().containsKey(destinationUnitId))
-                continue;
+            // animals on the first (departing) farm [we don't track non-infecteds], the sampler only draws the
+            // movements between herds that are not restricted.
+            final MovementEdges movements = scenario.getTopology().getCattleMovements();
+            if (focused) {
+                final int numMoved = moveUninfectedAnimals(sampler, numCattleMovementsForPeriod - numMovedSoFar);
+                numMovedSoFar += numMoved;
+                numUninfectedMoved += numMoved;
+                if (numMovedSoFar >= numCattleMovementsForPeriod) {
+                    break;
+                }
+            }
+            final int rnd = focused ? sampler.sampleInfected(scenario.getGenerator())
+                            : sampler.sample(scenario.getGenerator());
+            if (rnd < 0) {
+                log.debug("Cattle: every movement is blocked by movement restrictions");
+                break;
+            }
+            final int departure = movements.getDeparture(rnd);
+            final int destination = movements.getDestination(rnd);
                 
             int numAnimalsToBeMoved = 0;
-            Farm departureUnit = scenario.getFarmData().get(departureUnitId);
-            if (departureUnit.getOffMovementDistribution().getNumBins() > 0) {
-                numAnimalsToBeMoved = departureUnit.getOffMovementDistribution().getRandomBin(scenario.getGenerator());
+            final MovementSizes offMovementDistribution = scenario.getFarmOffMovementSizes(departure);
+            final String departureUnitId = scenario.getTopology().getFarmId(departure);
+            final String destinationUnitId = scenario.getTopology().getFarmId(destination);
+            if (!offMovementDistribution.isEmpty()) {
+                numAnimalsToBeMoved = offMovementDistribution.sample(scenario.getGenerator());
                 // before we move animals make sure there are enough animals on the departure farm
                 // if (numAnimalsToBeMoved > departureUnit.getHerdSize()) numAnimalsToBeMoved = 0;
                 // but we are keeping the herd size (approximately) constant and so are not really interested in
                 // tracking the movement of animals unless they are infected.
             }
-            int population = departureUnit.getHerdSize();
+            int population = scenario.getHerdSize(departure);
 
             // There is '<' instead of '<=' in the last condition, so at least one animal stays in the unit.
             if (numAnimalsToBeMoved > 0 && (!scenario.getSettings().isHerdSizeFlex() || numAnimalsToBeMoved < population)) {
@@ -224,8 +220,8 @@ public class MyMonteCarloScenarioObserver extends Observer {
                 // We assume that the animals to be moved are totally random and follows a hypergeometric distribution.
                 // If any fail the test, we cull them and put the herd under restriction, else we move
                 // animals.
-                Collection<InfectedCow> infectedAnimalsInUnit = scenario.getFarmInfections().get(departureUnitId);
-                log.debug("Cattle off movement dist = {}", departureUnit.getOffMovementDistribution().toCsv());
+                Collection<InfectedCow> infectedAnimalsInUnit = scenario.getFarmInfections().get(departure);
+                log.debug("Cattle off movement dist = {}", offMovementDistribution.toCsv());
 
                 int numInfectedAnimalsInUnit = infectedAnimalsInUnit.size();
                 log.debug("{}", String.format("Cattle: Moving %d animals from farm %s (N=%d, Infections=%d) to farm %s",
@@ -245,11 +241,7 @@ public class MyMonteCarloScenarioObserver extends Observer {
                 
                 // generator.getInteger(0, Integer.MAX_VALUE)
 
-                final HypergeometricDistribution hyperDist = new HypergeometricDistribution(population,
-                                                                                       numAnimalsToBeMoved,
-                                                                                       numInfectedAnimalsInUnit);
-                hyperDist.reseed(generator.getInteger(0, Integer.MAX_VALUE));
-                final int numInfectedAnimalsToBeMoved = hyperDist.sample();
+                final int numInfectedAnimalsToBeMoved = variates.hypergeometric(population, numAnimalsToBeMoved, numInfectedAnimalsInUnit);
                 
                 log.debug("Cattle: numInfectedAnimalsToBeMoved = {}", numInfectedAnimalsToBeMoved);
                 
@@ -262,12 +254,13 @@ public class MyMonteCarloScenarioObserver extends Observer {
                 
                 // [DB:modif_1.1] The following code needs to be executed only if there are animals to be moved
                 if (numInfectedAnimalsToBeMoved > 0) {
-                    List<InfectedCow> infectedAnimalsToBeMoved = scenario.getGenerator().selectManyOf(infectedAnimalsInUnit,
-                                                                                                      numInfectedAnimalsToBeMoved);
+                    List<InfectedCow> infectedAnimalsToBeMoved = variates.selectManyOf(infectedAnimalsInUnit,
+                                                                                       numInfectedAnimalsToBeMoved,
+                                                                                       selectedCows);
                     // only if there is surveilance of the species
                     for (InfectedCow cow : infectedAnimalsToBeMoved) {
                         // [DB:modif_3.2] 'departureUnitId'
-                        if (testAndRemoveIfInfected(cow.getId(), time, departureUnitId, reasonOfTest)) {
+                        if (testAndRemoveIfInfected(cow.getId(), time, departure, reasonOfTest)) {
                             ++numDetectedPreMoves;
                         }
                     }
@@ -279,9 +272,7 @@ public class MyMonteCarloScenarioObserver extends Observer {
                     // only if there is surveilance of the species
                     if (numDetectedPreMoves > 0) {
                         // If I detected any cow they are culled and now put the herd under restriction.
-                        scenario.getRestrictedHerds().put(departureUnitId, 0);
-                        scenario.getFarmData().get(departureUnitId).setLastClearTestDate(-1);
-                        scenario.getFarmData().get(departureUnitId).setLastPositiveTestDate(time);
+                        scenario.restrictHerd(departure, time);
                         log.trace("{}", String.format("Cattle: Moving %d animals from %s to %s (%d of whom were infected)",
                                                       numAnimalsToBeMoved, departureUnitId, destinationUnitId,
                                                       numInfectedAnimalsToBeMoved));
@@ -297,26 +288,23 @@ public class MyMonteCarloScenarioObserver extends Observer {
                         log.trace("{}", String.format("Cattle: Moving %d (%d undetected) infection from %s to %s",
                                                       numAnimalsToBeMoved, numInfectedAnimalsToBeMoved, departureUnitId, destinationUnitId));
                         for (InfectedCow cow : infectedAnimalsToBeMoved) {
-                            scenario.getFarmInfections().get(departureUnitId).remove(cow);
-                            scenario.getFarmInfections().get(destinationUnitId).add(cow);
-                            cow.setFarmId(destinationUnitId);
-                            // DB: [RememberFarmIDs]
-                            cow.getAllFarmIds().add(destinationUnitId);
+                            // DB: [RememberFarmIDs] the cow remembers the farms it has been on.
+                            scenario.moveInfectedCow(cow, destination);
                         }
 
-                        final int destinationUnitSize = scenario.getFarmData().get(destinationUnitId).getHerdSize();
+                        final int destinationUnitSize = scenario.getHerdSize(destination);
 
                         // we have moved unobserved infections - we may need to update the herd size (in case it
                         // causes an exception in HypergeometricDistribution.sample()
                         // [DB:modif_6] change condition '>=' to '>'
                         if (scenario.getSettings().isHerdSizeFlex()) {
-                            scenario.getFarmData().get(departureUnitId).changeSize(-numAnimalsToBeMoved);
-                            scenario.getFarmData().get(destinationUnitId).changeSize(numAnimalsToBeMoved);
-                        } else if (scenario.getFarmInfections().get(destinationUnitId).size() > destinationUnitSize) {
-                                final int newSize = scenario.getFarmInfections().get(destinationUnitId).size();
+                            scenario.setHerdSize(departure, population - numAnimalsToBeMoved);
+                            scenario.setHerdSize(destination, destinationUnitSize + numAnimalsToBeMoved);
+                        } else if (scenario.getNumInfectedCows(destination) > destinationUnitSize) {
+                                final int newSize = scenario.getNumInfectedCows(destination);
                                 log.trace("{}", String.format("Cattle: We have moved %d undetected animals: updating farm %s size to %d",
                                                               numInfectedAnimalsToBeMoved, destinationUnitId, newSize));
-                                scenario.getFarmData().get(destinationUnitId).setHerdSize(newSize);
+                                scenario.setHerdSize(destination, newSize);
                         }
 //                            }
 
@@ -336,7 +324,8 @@ public class MyMonteCarloScenarioObserver extends Observer {
         
         }
         
-        log.debug("Cattle: Moved {} animals in period (time taken = {})", numMovedSoFar, sw);
+        log.debug("Cattle: Moved {} animals in period, {} without simulating the movement (time taken = {})",
+                  numMovedSoFar, numUninfectedMoved, sw);
         log.debug("Cattle: Moved {}/{} infected animals in period", infectedAnimalsMoved, scenario.getInfectedCows().size());
         
         scenario.setNumInfectedCowsMoved(scenario.getNumInfectedCowsMoved() + infectedAnimalsMoved);
@@ -359,31 +348,50 @@ public class MyMonteCarloScenarioObserver extends Observer {
 
         int numMovedSoFar = 0;
         int infectedAnimalsMoved = 0;
-        final int numKnownMoves = scenario.getSettings().getBadgerMovementFrequencies().size();
+        // the movements out of reservoirs without infected animals are not simulated in the focused mode.
+        final boolean focused = scenario.isFocusedBadgerMovements();
+        final MovementSampler sampler = scenario.getBadgerMovementSampler();
+        int numUninfectedMoved = 0;
         
         while (numMovedSoFar < numBadgerMovementsForPeriod) {
             // Find a movement at random between 2 farms, according to the known farm-farm movement distribution.
-            int rnd = scenario.getGenerator().getInteger(0, numKnownMoves - 1);
-            Pair<String, String> movementData = scenario.getSettings().getBadgerMovementFrequencies().get(rnd);
+            final MovementEdges movements = scenario.getTopology().getBadgerMovements();
+            final int rnd;
+            if (focused) {
+                final int numMoved = moveUninfectedAnimals(sampler, numBadgerMovementsForPeriod - numMovedSoFar);
+                numMovedSoFar += numMoved;
+                numUninfectedMoved += numMoved;
+                if (numMovedSoFar >= numBadgerMovementsForPeriod) {
+                    break;
+                }
+                rnd = sampler.sampleInfected(scenario.getGenerator());
+                if (rnd < 0) {
+                    break;
+                }
+            } else {
+                rnd = movements.sample(scenario.getGenerator());
+            }
 
-            String departureUnitId = movementData.getFirst();
-            String destinationUnitId = movementData.getSecond();
+            final int departure = movements.getDeparture(rnd);
+            final int destination = movements.getDestination(rnd);
             
             int numAnimalsToBeMoved = 0;
-            Reservoir departureUnit = scenario.getReservoirData().get(departureUnitId);
-            if (departureUnit.getOffMovementDistribution().getNumBins() > 0) {
-                numAnimalsToBeMoved = departureUnit.getOffMovementDistribution().getRandomBin(scenario.getGenerator());
+            final MovementSizes offMovementDistribution = scenario.getReservoirOffMovementSizes(departure);
+            final String departureUnitId = scenario.getTopology().getReservoirId(departure);
+            final String destinationUnitId = scenario.getTopology().getReservoirId(destination);
+            if (!offMovementDistribution.isEmpty()) {
+                numAnimalsToBeMoved = offMovementDistribution.sample(scenario.getGenerator());
                 // before we move animals make sure there are enough animals on the departure farm
                 // if (numAnimalsToBeMoved > departureUnit.getHerdSize()) numAnimalsToBeMoved = 0;
                 // but we are keeping the herd size (approximately) constant and so are not really interested in
                 // tracking the movement of animals unless they are infected.
             }
-            int population = departureUnit.getReservoirSize();
+            int population = scenario.getReservoirSize(departure);
 
             // There is '<' instead of '<=' in the last condition, so at least one animal stays in the unit.
             if (numAnimalsToBeMoved > 0 && (!scenario.getSettings().isReservoirSizeFlex() || numAnimalsToBeMoved < population)) {
-                Collection<InfectedBadger> infectedAnimalsInUnit = scenario.getReservoirInfections().get(departureUnitId);
-                log.debug("Badgers off movement dist = {}", departureUnit.getOffMovementDistribution().toCsv());
+                Collection<InfectedBadger> infectedAnimalsInUnit = scenario.getReservoirInfections().get(departure);
+                log.debug("Badgers off movement dist = {}", offMovementDistribution.toCsv());
 
                 int numInfectedAnimalsInUnit = infectedAnimalsInUnit.size();
                 log.debug("{}", String.format("Badgers: Moving %d animals from farm %s (N=%d, Infections=%d) to farm %s",
@@ -394,11 +402,7 @@ public class MyMonteCarloScenarioObserver extends Observer {
                 // Controlling if there are susceptible badgers in the reservoir should be handled in
                 // MyAmountManager.performEvent()
                 
-                final HypergeometricDistribution hyperDist = new HypergeometricDistribution(population,
-                                                                                       numAnimalsToBeMoved,
-                                                                                       numInfectedAnimalsInUnit);
-                hyperDist.reseed(generator.getInteger(0, Integer.MAX_VALUE));
-                final int numInfectedAnimalsToBeMoved = hyperDist.sample();
+                final int numInfectedAnimalsToBeMoved = variates.hypergeometric(population, numAnimalsToBeMoved, numInfectedAnimalsInUnit);
                 
                 log.debug("Badgers: numInfectedAnimalsToBeMoved = {}", numInfectedAnimalsToBeMoved);
                 
@@ -407,32 +411,30 @@ public class MyMonteCarloScenarioObserver extends Observer {
                                rnd, -1);
                 
                 if (numInfectedAnimalsToBeMoved > 0) {
-                    List<InfectedBadger> infectedAnimalsToBeMoved = scenario.getGenerator().selectManyOf(infectedAnimalsInUnit,
-                                                                                                         numInfectedAnimalsToBeMoved);
+                    List<InfectedBadger> infectedAnimalsToBeMoved = variates.selectManyOf(infectedAnimalsInUnit,
+                                                                                          numInfectedAnimalsToBeMoved,
+                                                                                          selectedBadgers);
                     log.trace("{}", String.format("Badgers: Moving %d (%d undetected) infection from %s to %s",
                                                       numAnimalsToBeMoved, numInfectedAnimalsToBeMoved, departureUnitId, destinationUnitId));
                         for (InfectedBadger animal : infectedAnimalsToBeMoved) {
-                            scenario.getReservoirInfections().get(departureUnitId).remove(animal);
-                            scenario.getReservoirInfections().get(destinationUnitId).add(animal);
-                            animal.setReservoirId(destinationUnitId);
-                            // DB: [RememberReservoieIDs]
-                            animal.getAllReservoirIds().add(destinationUnitId);
+                            // DB: [RememberReservoieIDs] the badger remembers the reservoirs it has been in.
+                            scenario.moveInfectedBadger(animal, destination);
                             
                             testBadger(animal.getId(), departureUnitId, destinationUnitId, false, "movement");
                         }
 
-                        final int destinationUnitSize = scenario.getReservoirData().get(destinationUnitId).getReservoirSize();
+                        final int destinationUnitSize = scenario.getReservoirSize(destination);
                         
                         // we have moved unobserved infections - we may need to update the unit size (in case it
                         // causes an exception in HypergeometricDistribution.sample()
                         if (scenario.getSettings().isReservoirSizeFlex()) {
-                            scenario.getReservoirData().get(departureUnitId).changeSize(-numAnimalsToBeMoved);
-                            scenario.getReservoirData().get(destinationUnitId).changeSize(numAnimalsToBeMoved);
-                        } else if (scenario.getReservoirInfections().get(destinationUnitId).size() > destinationUnitSize) {
-                                final int newSize = scenario.getReservoirInfections().get(destinationUnitId).size();
+                            scenario.setReservoirSize(departure, population - numAnimalsToBeMoved);
+                            scenario.setReservoirSize(destination, destinationUnitSize + numAnimalsToBeMoved);
+                        } else if (scenario.getNumInfectedBadgers(destination) > destinationUnitSize) {
+                                final int newSize = scenario.getNumInfectedBadgers(destination);
                                 log.trace("{}", String.format("Badgers: We have moved %d undetected animals: updating farm %s size to %d",
                                                               numInfectedAnimalsToBeMoved, destinationUnitId, newSize));
-                                scenario.getReservoirData().get(destinationUnitId).setReservoirSize(newSize);
+                                scenario.setReservoirSize(destination, newSize);
                         }
 
                         log.trace("{}", String.format("Badgers: Moving %d animals from %s to %s",
@@ -445,7 +447,8 @@ public class MyMonteCarloScenarioObserver extends Observer {
                 numMovedSoFar += numAnimalsToBeMoved;
             }
         }
-        log.debug("Badgers: Moved {} animals in period (time taken = {})", numMovedSoFar, sw);
+        log.debug("Badgers: Moved {} animals in period, {} without simulating the movement (time taken = {})",
+                  numMovedSoFar, numUninfectedMoved, sw);
         log.debug("Badgers: Moved {}/{} infected animals in period", infectedAnimalsMoved, scenario.getInfectedCows().size());
         
         scenario.setNumInfectedBadgersMoved(scenario.getNumInfectedBadgersMoved() + infectedAnimalsMoved);
@@ -453,6 +456,43 @@ public class MyMonteCarloScenarioObserver extends Observer {
         doBadgerDeaths();
     }
         
+    /**
+     * Move the animals of the movements, drawn before the next movement off a unit holding infected animals, that
+     * carry no infection. Each movement drawn is off an infected unit with probability p = (weight of the movements
+     * off infected units) / (total weight), so the number of movements before the next one that carries infection is
+     * geometrically distributed. These movements are not drawn, only the number of animals each of them moves is, from
+     * the mixture of the off movement distributions of the units without infected animals (see MovementSampler); so
+     * the number of animals moved, and the movements that carry infection, have the same distribution as in the full
+     * simulation. The movements are not recorded, the focused mode is not used if they would be.
+     * @param sampler   the (focused) sampler of the movements.
+     * @param numToMove the number of animals left to move in the period, no movement is drawn once it is reached.
+     * @return the number of animals moved.
+     */
+    private int moveUninfectedAnimals(final MovementSampler sampler, final int numToMove) {
+        final RNG generator = scenario.getGenerator();
+        final long totalWeight = sampler.getTotalWeight();
+        final long infectedWeight = sampler.getInfectedWeight();
+        if (infectedWeight >= totalWeight) {
+            return 0;
+        }
+        // if no movement carries infection the rest of the period is made of uninfected movements.
+        double numMovements = Double.POSITIVE_INFINITY;
+        if (infectedWeight > 0) {
+            final double p = (double) infectedWeight / totalWeight;
+            numMovements = Math.floor(Math.log(1.0 - generator.getDouble()) / Math.log(1.0 - p));
+        }
+
+        int numMoved = 0;
+        for (long i = 0; i < numMovements && numMoved < numToMove; i++) {
+            final int numAnimalsToBeMoved = sampler.sampleUninfectedSize(generator);
+            if (numAnimalsToBeMoved < 0) {
+                break;
+            }
+            numMoved += numAnimalsToBeMoved;
+        }
+        return numMoved;
+    }
+
     /**
      * Perform slaughterhouse movements from the distribution of moves to slaughter.
      */
@@ -469,26 +509,25 @@ public class MyMonteCarloScenarioObserver extends Observer {
         final StopWatch sw = new StopWatch();
         sw.start();
 
-        // this is a list of farm ids that have a move to slaughter
-        List<String> movesForPeriod = scenario.getSettings().getCattleDeathDistribution().entrySet().stream()
-                .filter(e -> e.getKey() >= currentTime && e.getKey() <= (currentTime + scenario.getSettings().getStepSize()))
-                .map(map -> map.getValue())
-                .flatMap(c -> c.stream())
-                .collect(Collectors.toList());
-
-        List<String> distinctFarmsMovingAnimals = movesForPeriod.stream().distinct().collect(Collectors.toList());
+        // the farms that have moves to slaughter in this step, and the number of animals moved off each, were
+        // bucketed when the moves were read.
+        final SlaughterSchedule schedule = scenario.getSettings().getSlaughterSchedule();
+        final int step = schedule.getStep(time);
+        final int firstMove = step < 0 ? 0 : schedule.getFirstMove(step);
+        final int endMove = step < 0 ? 0 : schedule.getEndMove(step);
 
         // TODO: Perhaps we may be better off removing animals from random farms rather than replaying exact
         // slaughterhouse moves...
         int numReactorsRemoved = 0;
-        for (final String farmId : distinctFarmsMovingAnimals) {
-            final Farm farm = scenario.getFarmData().get(farmId);
-            final int numInfectedAnimalsInUnit = scenario.getFarmInfections().get(farmId).size();
+        for (int move = firstMove; move < endMove; move++) {
+            final int farm = schedule.getFarm(move);
+            final String farmId = scenario.getTopology().getFarmId(farm);
+            final int numInfectedAnimalsInUnit = scenario.getNumInfectedCows(farm);
 
             // how many moves do we need off this farm?
-            int numAnimalsToBeRemoved = (int) movesForPeriod.stream().filter(e -> farmId.equals(e)).count();
+            int numAnimalsToBeRemoved = schedule.getNumAnimals(move);
             
-            int population = farm.getHerdSize();
+            int population = scenario.getHerdSize(farm);
             
             // NOTE: if the number of animals to be put ot death is higher than the number of animals on the farm,
             // only send the amount that there are.
@@ -503,31 +542,25 @@ public class MyMonteCarloScenarioObserver extends Observer {
 //            }
             
             // Select the number of infected animals from the farm to move to slaughter.
-            final HypergeometricDistribution hyperDist = new HypergeometricDistribution(population,
-                                                                                        numAnimalsToBeRemoved,
-                                                                                        numInfectedAnimalsInUnit);
-            hyperDist.reseed(generator.getInteger(0, Integer.MAX_VALUE));
-            final int numInfectedAnimalsForRemoval = hyperDist.sample();
+            final int numInfectedAnimalsForRemoval = variates.hypergeometric(population, numAnimalsToBeRemoved, numInfectedAnimalsInUnit);
             
             recordMovement(time, "cows", farmId, "",
                            population, numAnimalsToBeRemoved, numInfectedAnimalsInUnit, numInfectedAnimalsForRemoval,
                            -1, -1);
 
             // select these animals from the farm
-            List<InfectedCow> animalsForSlaughter = scenario.getGenerator().selectManyOf(scenario.getFarmInfections().get(farmId),
-                                                                                         numInfectedAnimalsForRemoval);
+            List<InfectedCow> animalsForSlaughter = variates.selectManyOf(scenario.getFarmInfections().get(farm),
+                                                                          numInfectedAnimalsForRemoval, selectedCows);
             
             int numReactorsOnFarm = 0;
             // test every animal as they are all tested at slaughter
             for (InfectedCow cow : animalsForSlaughter) {
-                if (testAndRemoveIfInfected(cow.getId(), time, farmId, reasonOfTest)) {
+                if (testAndRemoveIfInfected(cow.getId(), time, farm, reasonOfTest)) {
                     numReactorsOnFarm++;
 
                     // Either place the herd under movement restriction or reset the number of clear tests to zero
                     // and create a theta event for 60 days in the future.
-                    scenario.getRestrictedHerds().put(farmId, 0);
-                    scenario.getFarmData().get(farmId).setLastClearTestDate(-1);
-                    scenario.getFarmData().get(farmId).setLastPositiveTestDate(time);
+                    scenario.restrictHerd(farm, time);
                     // We need to create a theta event to retest in 2 months; this will be done in 
                     // the registerNewTheta method (theta events are only registered for each period.
                 }
@@ -542,12 +575,6 @@ public class MyMonteCarloScenarioObserver extends Observer {
             numReactorsRemoved += numReactorsOnFarm;
         }
 
-        // NOTE: What does this do?
-        IntegerDistribution movementSizeDist = new IntegerDistribution();
-        distinctFarmsMovingAnimals.forEach((farmId) -> {
-            movementSizeDist.setFrequency(Collections.frequency(distinctFarmsMovingAnimals, farmId));
-        });
-
         log.debug("{}", String.format("Removed %d reactors, time taken=%s", numReactorsRemoved, sw));
         scenario.setNumInfectedCowsAtDeath(scenario.getNumInfectedCowsAtDeath() + numReactorsRemoved);
     }
@@ -567,21 +594,20 @@ public class MyMonteCarloScenarioObserver extends Observer {
                 dead = 0;
             }
             recordMovement(date, "badgers", animal.getReservoirId(), "",
-                           scenario.getReservoirData().get(animal.getReservoirId()).getReservoirSize(),
+                           scenario.getReservoirSize(animal.getReservoir()),
                            dead, 1, dead,
                            -1, rnd);
         }
         
         for (final InfectedBadger animal : animalsToDie) {
             final String animalId = animal.getId();
-            final String unitId = scenario.getInfectedBadgers().get(animalId).getReservoirId();
+            final String unitId = animal.getReservoirId();
             
             // TODO: parameter 'capture' should indicate if the dead badger was found or not
             testBadger(animal.getId(), unitId, "", false, "death");
             
-            animal.getSnps().addAll(ProjectSettings.generateSnp(scenario.getStep().getCoordinates().get("mutationRate"),
-                                                date, scenario.getGenerator(),
-                                                animal.getLastSnpGeneration()));
+            animal.addSnps(scenario.getSnpAllocator().generateSnp(scenario.getStep().getCoordinates().get("mutationRate"),
+                                                date, animal.getLastSnpGeneration()));
             animal.setLastSnpGeneration(date);
             animal.setDateSampleTaken(date);
             
@@ -591,8 +617,7 @@ public class MyMonteCarloScenarioObserver extends Observer {
             // record the dead animal
             scenario.getExpiredBadgers().put(animalId, animal);
 
-            scenario.getReservoirInfections().get(unitId).remove(animal);
-            scenario.getInfectedBadgers().remove(animalId);
+            scenario.removeInfectedBadger(animal);
         }
         
         scenario.setNumInfectedBadgersAtDeath(scenario.getNumInfectedBadgersAtDeath() + animalsToDie.size());
@@ -601,31 +626,31 @@ public class MyMonteCarloScenarioObserver extends Observer {
     /**
      * Perform a whole herd test WHT at a given time date on a given herd.
      * @param daysFromStart the number of days from the start date to perform the WHT.
-     * @param farmId        The id of the herd
+     * @param farm          The index of the herd
      * @return the number of reactors found in the test.
      */
-    private synchronized int performWHT(final int daysFromStart, final String farmId) {
+    private synchronized int performWHT(final int daysFromStart, final int farm) {
 //        final int time = ((int) getProcess().getCurrentTime());
         final String reasonOfTest = "WHT";
-        final Collection<InfectedCow> infections = scenario.getFarmInfections().get(farmId);
+        final Collection<InfectedCow> infections = scenario.getFarmInfections().get(farm);
         final int numInfections = infections.size();
 
         List<String> infectedCattleIds = new ArrayList<>();
-        for (InfectedCow cow : scenario.getFarmInfections().get(farmId)) {
+        for (InfectedCow cow : infections) {
             infectedCattleIds.add(cow.getId());
         }
 
         int breakdowns = 0;
         if (!infectedCattleIds.isEmpty()) {
             log.debug(String.format("Performing WHT on herd %s (infected animals=%d) at day %d",
-                                    farmId, infections.size(), daysFromStart));
+                                    scenario.getTopology().getFarmId(farm), infections.size(), daysFromStart));
 
             for (final String cowId : infectedCattleIds) {
                 if (log.isTraceEnabled()) {
                     log.trace("Checking animal {}", cowId);
                 }
 
-                if (testAndRemoveIfInfected(cowId, daysFromStart, farmId, reasonOfTest)) {
+                if (testAndRemoveIfInfected(cowId, daysFromStart, farm, reasonOfTest)) {
                     breakdowns++;
                 }
             }
@@ -635,7 +660,7 @@ public class MyMonteCarloScenarioObserver extends Observer {
             throw new BroadwickException("ERROR: There never should be more 'detected' than 'infected' animals.");
         }
         
-        recordHerdTest(daysFromStart, farmId, numInfections, breakdowns, reasonOfTest);
+        recordHerdTest(daysFromStart, scenario.getTopology().getFarmId(farm), numInfections, breakdowns, reasonOfTest);
         
         // Add the number of breakdowns to the breakdown size distribution.
         scenario.getResults().getReactorsAtBreakdownDistribution().setFrequency(breakdowns);
@@ -664,7 +689,7 @@ public class MyMonteCarloScenarioObserver extends Observer {
 //        }
 //    }
     
-    private boolean testAndRemoveIfInfected(final String cowId, final int date, final String farmId, final String event) {
+    private boolean testAndRemoveIfInfected(final String cowId, final int date, final int farm, final String event) {
         final InfectedCow cow = scenario.getInfectedCows().get(cowId);
         final InfectionStateCow status = cow.getInfectionStatus();
         boolean testPositive = false;
@@ -680,10 +705,9 @@ public class MyMonteCarloScenarioObserver extends Observer {
                 log.trace("{} tested positive at {}", cowId, date);
 
                 // We sample the animal so update the SNPs and set the sampleTaken date for the cow.
-                cow.getSnps().addAll(
-                        ProjectSettings.generateSnp(scenario.getStep().getCoordinates().get("mutationRate"),
-                                                    date, scenario.getGenerator(),
-                                                    cow.getLastSnpGeneration()));
+                cow.addSnps(
+                        scenario.getSnpAllocator().generateSnp(scenario.getStep().getCoordinates().get("mutationRate"),
+                                                    date, cow.getLastSnpGeneration()));
                 cow.setLastSnpGeneration(date);
                 cow.setDateSampleTaken(date);
 
@@ -698,11 +722,7 @@ public class MyMonteCarloScenarioObserver extends Observer {
                 // replace the next with the following
     //            scenario.getFarmInfections().get(farmId).remove(cow);
 
-                Collection<InfectedCow> infectedAnimalsOnFarm = scenario.getFarmInfections().get(farmId);
-                infectedAnimalsOnFarm.remove(cow);
-                scenario.getFarmInfections().put(farmId, infectedAnimalsOnFarm);
-
-                scenario.getInfectedCows().remove(cowId);
+                scenario.removeInfectedCow(cow);
                 // DB: [HS] DO NOT change the herd size when a cow is removed due to a positive test result
                 //     because, since the herd size is not adjusted after scheduled death,
                 //     this introduces inconsistencies
@@ -710,8 +730,7 @@ public class MyMonteCarloScenarioObserver extends Observer {
             }
         }
         
-        final CattleTest cattleTest = new CattleTest(date, farmId, cowId, testPositive, status, event);
-        scenario.getCattleTest().add(cattleTest);
+        scenario.getEventLog().recordCattleTest(date, scenario.getTopology().getFarmId(farm), cowId, testPositive, status, event);
         
         return testPositive;
     }
@@ -731,10 +750,9 @@ public class MyMonteCarloScenarioObserver extends Observer {
             // TODO: REPLACE mutation rate with relevant value for badgers
             //       - not for now, not enough info to infer anyway
             // We sample the animal, so update the SNPs and set the sampleTaken date.
-            badger.getSnps().addAll(
-                    ProjectSettings.generateSnp(scenario.getStep().getCoordinates().get("mutationRate"),
-                                                date, scenario.getGenerator(),
-                                                badger.getLastSnpGeneration()));
+            badger.addSnps(
+                    scenario.getSnpAllocator().generateSnp(scenario.getStep().getCoordinates().get("mutationRate"),
+                                                date, badger.getLastSnpGeneration()));
             badger.setLastSnpGeneration(date);
             badger.setDateSampleTaken(date);
 
@@ -743,26 +761,28 @@ public class MyMonteCarloScenarioObserver extends Observer {
             
         }
         
-        final RecordBadger recordBadger = new RecordBadger(date, badgerId, departureUnitId, destinationUnitId, capture, testPositive, status, event);
-        scenario.getRecordedBadgers().add(recordBadger);
+        scenario.getEventLog().recordBadgerTest(date, badgerId, departureUnitId, destinationUnitId, capture, testPositive, status, event);
     }
     
     private void recordHerdTest(final int date, final String unitId, final int infected, final int reactors, final String event) {
-        final HerdTest herdTest = new HerdTest(date, unitId, infected, reactors, event);
-        scenario.getHerdTests().add(herdTest);
+        scenario.getEventLog().recordHerdTest(date, unitId, infected, reactors, event);
     }
     
     private void recordMovement(final int date, final String species, final String unitID_from, final String unitID_to,
                                 final int unit_size, final int anim_move, final int inf_anim, final int inf_move,
                                 final int rnd_choice, final double rnd_num) {
-        final RecordMovement recordMovement = new RecordMovement(date, species, unitID_from, unitID_to,
-                                                                 unit_size, anim_move, inf_anim, inf_move, rnd_choice, rnd_num);
-        scenario.getRecordedMovements().add(recordMovement);
+        scenario.getEventLog().recordMovement(date, species, unitID_from, unitID_to,
+                                              unit_size, anim_move, inf_anim, inf_move, rnd_choice, rnd_num);
     }
     
     private final int numCattleMovementsForPeriod;
     private final int numBadgerMovementsForPeriod;
     private final MyMonteCarloScenario scenario;
     
-    private final RNG generator;
+    private final RandomVariates variates;
+    // scratch space for the infected animals selected to be moved.
+    private final List<InfectedCow> selectedCows;
+    private final List<InfectedBadger> selectedBadgers;
+    private final int[] dueFarms;               // scratch space for the farms with a test due in the step.
+    private final int[] dueDates;
 }
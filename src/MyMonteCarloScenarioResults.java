@@ -9,8 +9,7 @@ import broadwick.graph.DirectedGraph;
 import broadwick.utils.CloneUtils;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
@@ -72,6 +71,9 @@ public class MyMonteCarloScenarioResults implements MonteCarloResults {
         this.sampledLikelihoods = new ArrayList();
         this.transmissionTree = new DirectedGraph<>();
         this.observedTransmissionTree = new DirectedGraph<>();
+        this.sampledNodes = null;
+        this.unbuiltTrees = new ArrayList<>();
+        this.pendingRecords = new ArrayList<>();
 
         this.herdsUnderRestrictionTimeSeries = new StringBuilder();
         this.infectedHerdsTimeSeries = new StringBuilder();
@@ -80,33 +82,6 @@ public class MyMonteCarloScenarioResults implements MonteCarloResults {
         
         this.infectedReservoirsTimeSeries = new StringBuilder();
         this.infectedBadgersTimeSeries = new StringBuilder();
-        
-        // DB: [OutInf]
-        this.infectedCows = new HashMap();
-        this.infectedBadgers = new HashMap();
-        this.allInfectedCows = new HashMap();
-        this.allInfectedBadgers = new HashMap();
-        
-        this.cattleTest = new ArrayList();
-        this.allCattleTests = new HashMap();
-        
-        this.recordedBadgers = new ArrayList();
-        this.allRecordedBadgers = new HashMap();
-        
-        this.herdTests = new ArrayList();
-        this.allHerdTests = new HashMap();
-        
-        this.initialSizes = new ArrayList();
-        this.allInitialSizes = new HashMap();
-        
-        this.initialInfStates = new ArrayList();
-        this.allInitialInfStates = new HashMap();
-        
-        this.initialRestrictions = new ArrayList();
-        this.allInitialRestrictions = new HashMap();
-        
-        this.recordedMovements = new ArrayList();
-        this.allRecordedMovements = new HashMap();
     }
 
     /**
@@ -184,6 +159,10 @@ public class MyMonteCarloScenarioResults implements MonteCarloResults {
         // this is used to join all the 'expectedValues' of each simulation so we add it to the Samples object we've 
         // created
         final MyMonteCarloScenarioResults mcResults = (MyMonteCarloScenarioResults) results;
+        if (mcResults.scenarioCount > 0) {
+            // these are the joined results of a batch of scenarios.
+            return joinScenarios(mcResults);
+        }
 
         double likelihood = mcResults.getScore();
         if (likelihood != MIN_VALUE) {
@@ -210,54 +189,21 @@ public class MyMonteCarloScenarioResults implements MonteCarloResults {
         this.reactorsAtBreakdownDistribution.add(mcResults.getReactorsAtBreakdownDistribution());
 
         // need to join the transmission tree.....
-        for (InfectionNode node : mcResults.transmissionTree.getVertices()) {
-            if (!this.transmissionTree.getVertices().contains(node)) {
-                this.transmissionTree.addVertex(node);
-            }
-        }
-        for (final Edge<InfectionNode> edge : mcResults.transmissionTree.getEdges()) {
-            Edge<InfectionNode> e2 = this.transmissionTree.getEdge(edge.getId());
-            if (e2 != null) {
-                e2.setWeight(e2.getWeight() + 1.0);
-            } else {
-                InfectionNode source = (InfectionNode) CloneUtils.deepClone(edge.getSource());
-                InfectionNode dest = (InfectionNode) CloneUtils.deepClone(edge.getDestination());
-                this.transmissionTree.addEdge(new Edge(source, dest, 1.0), source, dest);
-            }
-        }
+        joinTree(this.transmissionTree, mcResults.transmissionTree, false);
         log.debug("mean transmission tree has {} nodes", this.transmissionTree.getVertexCount());
 
-        // DB: [OutInf]
-        this.allInfectedCows.put(mcResults.getScenarioId(), mcResults.getInfectedCows().values());
-        this.allInfectedBadgers.put(mcResults.getScenarioId(), mcResults.getInfectedBadgers().values());
-        
-        this.allCattleTests.put(mcResults.getScenarioId(), mcResults.getCattleTest());
-        this.allRecordedBadgers.put(mcResults.getScenarioId(), mcResults.getRecordedBadgers());
-        
-        this.allHerdTests.put(mcResults.getScenarioId(), mcResults.getHerdTests());
-        
-        this.allInitialSizes.put(mcResults.getScenarioId(), mcResults.getInitialSizes());
-        this.allInitialInfStates.put(mcResults.getScenarioId(), mcResults.getInitialInfStates());
-        this.allInitialRestrictions.put(mcResults.getScenarioId(), mcResults.getInitialRestrictions());
-        
-        this.allRecordedMovements.put(mcResults.getScenarioId(), mcResults.getRecordedMovements());
-        
-        // join the observed transmission tree
-        for (InfectionNode node : mcResults.observedTransmissionTree.getVertices()) {
-            if (!this.observedTransmissionTree.getVertices().contains(node)) {
-                this.observedTransmissionTree.addVertex(node);
-            }
-        }
-        for (final Edge<InfectionNode> edge : mcResults.observedTransmissionTree.getEdges()) {
-            Edge<InfectionNode> e2 = this.observedTransmissionTree.getEdge(edge.getId());
-            if (e2 != null) {
-                e2.setWeight(e2.getWeight() + 1.0);
-            } else {
-                InfectionNode source = (InfectionNode) CloneUtils.deepClone(edge.getSource());
-                InfectionNode dest = (InfectionNode) CloneUtils.deepClone(edge.getDestination());
-                this.observedTransmissionTree.addEdge(new Edge(source, dest, 1.0), source, dest);
-            }
+        // join the observed transmission tree, if it has not been built yet we only keep what is needed to build it
+        // and join it when it is asked for. The transmission tree is handed over as the scenario's results clear
+        // their tree when they are finalised.
+        if (mcResults.observedTransmissionTree == null) {
+            this.unbuiltTrees.add(new UnbuiltTree(mcResults.transmissionTree, mcResults.sampledNodes));
+            mcResults.transmissionTree = new DirectedGraph<>();
+            mcResults.sampledNodes = null;
+            mcResults.observedTransmissionTree = new DirectedGraph<>();
+        } else {
+            joinTree(this.observedTransmissionTree, mcResults.observedTransmissionTree, false);
         }
+        this.pendingRecords.addAll(mcResults.pendingRecords);
         log.trace("mean observedTransmissionTree tree has {} nodes", this.observedTransmissionTree.getVertexCount());
 
         this.herdsUnderRestrictionTimeSeries.append(mcResults.herdsUnderRestrictionTimeSeries).append("\n");
@@ -274,6 +220,80 @@ public class MyMonteCarloScenarioResults implements MonteCarloResults {
         return this;
     }
 
+    /**
+     * Join the results of a batch of scenarios, i.e. results that have themselves been created by joining the results
+     * of individual scenarios. The statistics of each scenario in the batch are added as if each scenario had been
+     * joined to this object.
+     * @param mcResults the joined results of the batch.
+     * @return this object.
+     */
+    private MonteCarloResults joinScenarios(final MyMonteCarloScenarioResults mcResults) {
+        this.expectedValue.add(mcResults.expectedValue);
+        this.sampledLikelihoods.addAll(mcResults.sampledLikelihoods);
+        this.rejectedScenarioCount += mcResults.rejectedScenarioCount;
+        this.scenarioCount += mcResults.scenarioCount;
+        this.outbreakContainedCount += mcResults.outbreakContainedCount;
+
+        this.numInfectedCowsAtDeath.add(mcResults.getNumInfectedCowsAtDeath());
+        this.numInfectedCowsMoved.add(mcResults.getNumInfectedCowsMoved());
+        this.numInfectedBadgersAtDeath.add(mcResults.getNumInfectedBadgersAtDeath());
+        this.numInfectedBadgersMoved.add(mcResults.getNumInfectedBadgersMoved());
+        this.outbreakSize.add(mcResults.getOutbreakSize());
+
+        this.badgerCowTransmissions.add(mcResults.getBadgerCowTransmissions());
+        this.cowCowTransmissions.add(mcResults.getCowCowTransmissions());
+        this.cowBadgerTransmissions.add(mcResults.getCowBadgerTransmissions());
+        this.badgerBadgerTransmissions.add(mcResults.getBadgerBadgerTransmissions());
+
+        this.pairwiseDistancesDistribution.add(mcResults.getPairwiseDistancesDistribution());
+        this.reactorsAtBreakdownDistribution.add(mcResults.getReactorsAtBreakdownDistribution());
+
+        joinTree(this.transmissionTree, mcResults.transmissionTree, true);
+        joinTree(this.observedTransmissionTree, mcResults.observedTransmissionTree, true);
+        this.unbuiltTrees.addAll(mcResults.unbuiltTrees);
+        this.pendingRecords.addAll(mcResults.pendingRecords);
+
+        // the time series of the batch already have one line per scenario.
+        this.herdsUnderRestrictionTimeSeries.append(mcResults.herdsUnderRestrictionTimeSeries);
+        this.infectedHerdsTimeSeries.append(mcResults.infectedHerdsTimeSeries);
+        this.infectedCowsTimeSeries.append(mcResults.infectedCowsTimeSeries);
+        this.sampledCowsTimeSeries.append(mcResults.sampledCowsTimeSeries);
+
+        this.infectedReservoirsTimeSeries.append(mcResults.infectedReservoirsTimeSeries);
+        this.infectedBadgersTimeSeries.append(mcResults.infectedBadgersTimeSeries);
+
+        return this;
+    }
+
+    /**
+     * Add the nodes and edges of a tree to a joined tree, the weight of each edge in the joined tree is the number of
+     * scenarios in which the edge appeared.
+     * @param joinedTree the tree to which the nodes and edges are added.
+     * @param tree       the tree to add.
+     * @param isJoined   true if tree is itself a joined tree whose weights are counts, false if it is the tree of a
+     *                   single scenario.
+     */
+    private static void joinTree(final DirectedGraph<InfectionNode, Edge<InfectionNode>> joinedTree,
+                                 final DirectedGraph<InfectionNode, Edge<InfectionNode>> tree,
+                                 final boolean isJoined) {
+        for (InfectionNode node : tree.getVertices()) {
+            if (!joinedTree.getVertices().contains(node)) {
+                joinedTree.addVertex(node);
+            }
+        }
+        for (final Edge<InfectionNode> edge : tree.getEdges()) {
+            final double weight = isJoined ? edge.getWeight() : 1.0;
+            Edge<InfectionNode> e2 = joinedTree.getEdge(edge.getId());
+            if (e2 != null) {
+                e2.setWeight(e2.getWeight() + weight);
+            } else {
+                InfectionNode source = (InfectionNode) CloneUtils.deepClone(edge.getSource());
+                InfectionNode dest = (InfectionNode) CloneUtils.deepClone(edge.getDestination());
+                joinedTree.addEdge(new Edge(source, dest, weight), source, dest);
+            }
+        }
+    }
+
     /**
      * Update the count of rejected scenarios. The counter only gets updated if the argument is true.
      * @param isScenarioRejected if true update the internal count else ignore.
@@ -363,8 +383,10 @@ public class MyMonteCarloScenarioResults implements MonteCarloResults {
         
         transmissionTree.getVertices().clear();
         transmissionTree.getEdges().clear();
-        observedTransmissionTree.getVertices().clear();
-        observedTransmissionTree.getEdges().clear();
+        if (observedTransmissionTree != null) {
+            observedTransmissionTree.getVertices().clear();
+            observedTransmissionTree.getEdges().clear();
+        }
 
         sampledLikelihoods = null;
         numInfectedCowsAtDeath = null;
@@ -382,39 +404,64 @@ public class MyMonteCarloScenarioResults implements MonteCarloResults {
 
         transmissionTree = null;
         observedTransmissionTree = null;
-        
-        // DB [OutInf]
-        infectedCows = null;
-        infectedBadgers = null;
-        allInfectedCows = null;
-        allInfectedBadgers = null;
-        
-        cattleTest = null;
-        allCattleTests = null;
-        
-        recordedBadgers = null;
-        allRecordedBadgers = null;
-        
-        herdTests = null;
-        allHerdTests = null;
-        
-        initialSizes = null;
-        allInitialSizes = null;
-        
-        initialInfStates = null;
-        allInitialInfStates = null;
-        
-        initialRestrictions = null;
-        allInitialRestrictions = null;
-        
-        recordedMovements = null;
-        allRecordedMovements = null;
+        sampledNodes = null;
+        unbuiltTrees = null;
+        pendingRecords = null;
         
         super.finalize();
     }
 
+    /**
+     * Get the observed (phylogenetic) tree. If the tree of a scenario was not built when the scenario was run (only its
+     * sampled nodes were kept) it is built, and joined, now.
+     * @return the observed tree.
+     */
+    public DirectedGraph<InfectionNode, Edge<InfectionNode>> getObservedTransmissionTree() {
+        if (observedTransmissionTree == null) {
+            observedTransmissionTree = ObservedTreeBuilder.build(transmissionTree, sampledNodes);
+        }
+        if (!unbuiltTrees.isEmpty()) {
+            for (UnbuiltTree unbuilt : unbuiltTrees) {
+                joinTree(this.observedTransmissionTree,
+                         ObservedTreeBuilder.build(unbuilt.transmissionTree, unbuilt.sampledNodes), false);
+            }
+            unbuiltTrees.clear();
+        }
+        return observedTransmissionTree;
+    }
+
+    /**
+     * Set the nodes sampled in the scenario without building the observed tree, the tree will be built from these
+     * nodes and the transmission tree if it is asked for. If the nodes are not set (and the tree not built) the
+     * observed tree of the scenario is empty.
+     * @param sampled the root of the transmission tree followed by the sampled nodes.
+     */
+    public void setSampledNodes(final List<InfectionNode> sampled) {
+        this.sampledNodes = sampled;
+        this.observedTransmissionTree = null;
+    }
+
+    /**
+     * Set the observed (phylogenetic) tree of the scenario, the tree is not copied.
+     * @param tree the observed tree.
+     */
     public void setObservedTransmissionTree(final DirectedGraph<InfectionNode, Edge<InfectionNode>> tree) {
-        this.observedTransmissionTree = (DirectedGraph<InfectionNode, Edge<InfectionNode>>) CloneUtils.deepClone(tree);
+        this.observedTransmissionTree = tree;
+    }
+
+    /**
+     * The transmission tree and sampled nodes of a scenario whose observed tree has not been built.
+     */
+    private static final class UnbuiltTree {
+
+        UnbuiltTree(final DirectedGraph<InfectionNode, Edge<InfectionNode>> transmissionTree,
+                    final List<InfectionNode> sampledNodes) {
+            this.transmissionTree = transmissionTree;
+            this.sampledNodes = sampledNodes;
+        }
+
+        private final DirectedGraph<InfectionNode, Edge<InfectionNode>> transmissionTree;
+        private final List<InfectionNode> sampledNodes;
     }
 
     private int outbreakContainedCount;
@@ -446,55 +493,15 @@ public class MyMonteCarloScenarioResults implements MonteCarloResults {
     private final IntegerDistribution observedPairwiseDistancesDistribution;
     @Getter
     private DirectedGraph<InfectionNode, Edge<InfectionNode>> transmissionTree;
-    @Getter
     private DirectedGraph<InfectionNode, Edge<InfectionNode>> observedTransmissionTree;
-    
-    // record test data
-    @Getter
-    private Collection<CattleTest> cattleTest;
-    @Getter
-    private Map<Integer, Collection<CattleTest>> allCattleTests;
-    
-    @Getter
-    private Collection<RecordBadger> recordedBadgers;
-    @Getter
-    private Map<Integer, Collection<RecordBadger>> allRecordedBadgers;
-    
-    @Getter
-    private Collection<HerdTest> herdTests;
-    @Getter
-    private Map<Integer, Collection<HerdTest>> allHerdTests;
-    
+    // the sampled nodes of a scenario whose observed tree has not been built
+    private List<InfectionNode> sampledNodes;
+    // the scenarios whose observed trees have not been built (and joined to this one)
+    private List<UnbuiltTree> unbuiltTrees;
+    // the records of the scenarios of the step, written by the observer of the chain when the step has finished.
     @Getter
-    private Collection<RecordInitialSize> initialSizes;
-    @Getter
-    private Map<Integer, Collection<RecordInitialSize>> allInitialSizes;
-    
-    @Getter
-    private Collection<RecordInitialInfState> initialInfStates;
-    @Getter
-    private Map<Integer, Collection<RecordInitialInfState>> allInitialInfStates;
+    private List<ScenarioRecords> pendingRecords;
     
-    @Getter
-    private Collection<RecordInitialRestrictions> initialRestrictions;
-    @Getter
-    private Map<Integer, Collection<RecordInitialRestrictions>> allInitialRestrictions;
-    
-    @Getter
-    private Collection<RecordMovement> recordedMovements;
-    @Getter
-    private Map<Integer, Collection<RecordMovement>> allRecordedMovements;
-    
-    // DB: [OutInf]
-    @Getter
-    private Map<String, InfectedCow> infectedCows; // all infected and culled cows in that scenario are in this list
-    @Getter
-    private Map<String, InfectedBadger> infectedBadgers;
-    @Getter
-    private Map<Integer, Collection<InfectedCow>> allInfectedCows;
-    @Getter
-    private Map<Integer, Collection<InfectedBadger>> allInfectedBadgers;
-
     // Some time series plots of various measureables that are updated in the observer.step() method.
     @Getter
     private StringBuilder herdsUnderRestrictionTimeSeries;
@@ -0,0 +1,187 @@
+package btbcluster;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import lombok.Getter;
+
+/**
+ * The (static) network on which the scenarios are run: the farms and reservoirs, the connections between them and
+ * the movements of animals between them. The topology is created once when the model is initialised and is shared,
+ * read-only, by every scenario; the state of the farms and reservoirs that changes during a scenario is kept in the
+ * scenario itself.
+ */
+public class NetworkTopology {
+
+    public NetworkTopology() {
+        this.farmIndex = new UnitIndex();
+        this.reservoirIndex = new UnitIndex();
+        this.farms = new ArrayList<>();
+        this.reservoirs = new ArrayList<>();
+        this.linkReservoirs = new int[INITIAL_CAPACITY];
+        this.linkFarms = new int[INITIAL_CAPACITY];
+        this.numLinks = 0;
+        this.farmReservoirs = new UnitNeighbours(0, linkFarms, linkReservoirs, 0);
+        this.connectedFarms = new UnitNeighbours(0, linkReservoirs, linkFarms, 0);
+        this.cattleMovements = new MovementEdges();
+        this.badgerMovements = new MovementEdges();
+    }
+
+    /**
+     * Add a farm to the network if it is not already known.
+     * @param id the id of the farm.
+     * @return the farm.
+     */
+    Farm addFarm(final String id) {
+        final int index = farmIndex.add(id);
+        if (index == farms.size()) {
+            farms.add(new Farm(id));
+        }
+        return farms.get(index);
+    }
+
+    /**
+     * Add a reservoir to the network if it is not already known.
+     * @param id the id of the reservoir.
+     * @return the reservoir.
+     */
+    Reservoir addReservoir(final String id) {
+        final int index = reservoirIndex.add(id);
+        if (index == reservoirs.size()) {
+            reservoirs.add(new Reservoir(id));
+        }
+        return reservoirs.get(index);
+    }
+
+    /**
+     * Connect a reservoir to the farms that are within its range. The connections can only be walked once the contact
+     * network has been created.
+     * @param reservoir the index of the reservoir.
+     * @param farms     the indices of the farms.
+     */
+    void connect(final int reservoir, final int[] farms) {
+        if (numLinks + farms.length > linkFarms.length) {
+            final int capacity = Math.max(2 * linkFarms.length, numLinks + farms.length);
+            linkReservoirs = Arrays.copyOf(linkReservoirs, capacity);
+            linkFarms = Arrays.copyOf(linkFarms, capacity);
+        }
+        for (int farm : farms) {
+            linkReservoirs[numLinks] = reservoir;
+            linkFarms[numLinks] = farm;
+            numLinks++;
+        }
+    }
+
+    /**
+     * Create the (compressed) farm-reservoir contact network in both directions, this is done once all the
+     * connections have been read.
+     */
+    void createContactNetwork() {
+        farmReservoirs = new UnitNeighbours(farms.size(), linkFarms, linkReservoirs, numLinks);
+        connectedFarms = new UnitNeighbours(reservoirs.size(), linkReservoirs, linkFarms, numLinks);
+        // the links are no longer needed.
+        linkReservoirs = NO_UNITS;
+        linkFarms = NO_UNITS;
+        numLinks = 0;
+    }
+
+    /**
+     * Create the samplers of the movements between the units and of the number of animals in each movement, this is
+     * done once all the movements have been read.
+     */
+    void createMovementSamplers() {
+        cattleMovements.createSampler();
+        badgerMovements.createSampler();
+        for (Farm farm : farms) {
+            farm.createOffMovementSizes();
+        }
+        for (Reservoir reservoir : reservoirs) {
+            reservoir.createOffMovementSizes();
+        }
+    }
+
+    /**
+     * Get the number of farms in the network.
+     * @return the number of farms.
+     */
+    public int getNumFarms() {
+        return farms.size();
+    }
+
+    /**
+     * Get the number of reservoirs in the network.
+     * @return the number of reservoirs.
+     */
+    public int getNumReservoirs() {
+        return reservoirs.size();
+    }
+
+    /**
+     * Get a farm.
+     * @param farm the index of the farm.
+     * @return the farm.
+     */
+    public Farm getFarm(final int farm) {
+        return farms.get(farm);
+    }
+
+    /**
+     * Get a reservoir.
+     * @param reservoir the index of the reservoir.
+     * @return the reservoir.
+     */
+    public Reservoir getReservoir(final int reservoir) {
+        return reservoirs.get(reservoir);
+    }
+
+    /**
+     * Get the id of a farm.
+     * @param farm the index of the farm.
+     * @return the id of the farm.
+     */
+    public String getFarmId(final int farm) {
+        return farmIndex.getId(farm);
+    }
+
+    /**
+     * Get the id of a reservoir.
+     * @param reservoir the index of the reservoir.
+     * @return the id of the reservoir.
+     */
+    public String getReservoirId(final int reservoir) {
+        return reservoirIndex.getId(reservoir);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d farms, %d reservoirs, %d farm-reservoir connections, "
+                             + "%d cattle movements (%d distinct), %d badger movements (%d distinct)",
+                             farms.size(), reservoirs.size(), connectedFarms.getNumLinks(),
+                             cattleMovements.getNumMovements(), cattleMovements.size(),
+                             badgerMovements.getNumMovements(), badgerMovements.size());
+    }
+
+    @Getter
+    private final UnitIndex farmIndex;
+    @Getter
+    private final UnitIndex reservoirIndex;
+    private final List<Farm> farms;
+    private final List<Reservoir> reservoirs;
+    // the farm-reservoir connections as they are read, until the contact network is created.
+    private int[] linkReservoirs;
+    private int[] linkFarms;
+    private int numLinks;
+    // the reservoirs each farm is attached to and the farms that are within range of each reservoir.
+    @Getter
+    private UnitNeighbours farmReservoirs;
+    @Getter
+    private UnitNeighbours connectedFarms;
+    // All the movements stored in a farm-farm format, each distinct movement is weighted by the number of times it
+    // was observed so that a movement picked at random respects the distribution of actual movements.
+    @Getter
+    private final MovementEdges cattleMovements;
+    @Getter
+    private final MovementEdges badgerMovements;
+    private static final int[] NO_UNITS = new int[0];
+    private static final int INITIAL_CAPACITY = 1024;
+}
@@ -0,0 +1,157 @@
+package btbcluster;
+
+import broadwick.BroadwickConstants;
+import broadwick.graph.DirectedGraph;
+import broadwick.graph.Edge;
+import broadwick.rng.RNG;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Build the observed (phylogenetic) tree from a transmission tree. Each detected node is sampled with the sampling
+ * rate of the year in which it was detected and the observed tree contains the root and the sampled nodes, each
+ * attached to its nearest sampled ancestor (or the root). The tree is built in a single traversal from the root.
+ * <p>
+ * When only the pairwise distances of the sampled nodes are needed the nodes can be sampled without building the tree,
+ * the tree can then be built later from those nodes.
+ */
+@Slf4j
+class ObservedTreeBuilder {
+
+    /**
+     * Create the builder.
+     * @param settings  the project settings, containing the sampling rates of cattle and badgers.
+     * @param generator the RNG used to decide whether a node is sampled.
+     */
+    ObservedTreeBuilder(final ProjectSettings settings, final RNG generator) {
+        this.cattleSamplingRate = settings.getCattleSamplingRate();
+        this.badgerSamplingRate = settings.getBadgerSamplingRate();
+        this.generator = generator;
+        this.zeroYear = BroadwickConstants.getZERO_DATE().getYear();
+    }
+
+    /**
+     * Build the observed tree.
+     * @param tree   the transmission tree.
+     * @param rootId the id of the root of the transmission tree.
+     * @return the observed tree, its nodes are copies of the nodes in the transmission tree.
+     */
+    DirectedGraph<InfectionNode, Edge<InfectionNode>> build(final DirectedGraph<InfectionNode, Edge<InfectionNode>> tree,
+                                                            final String rootId) {
+        return build(tree, tree.getVertex(rootId), this::isSampled);
+    }
+
+    /**
+     * Sample the nodes of a transmission tree without building the observed tree.
+     * @param tree   the transmission tree.
+     * @param rootId the id of the root of the transmission tree.
+     * @return the root followed by the sampled nodes, these are the nodes of the transmission tree (not copies).
+     */
+    List<InfectionNode> sample(final DirectedGraph<InfectionNode, Edge<InfectionNode>> tree, final String rootId) {
+        final List<InfectionNode> sampled = new ArrayList<>();
+        final InfectionNode root = tree.getVertex(rootId);
+        sampled.add(root);
+
+        // visit the nodes in the same order as build() so the same nodes are sampled for the same seed.
+        final Deque<InfectionNode> nodes = new ArrayDeque<>();
+        for (Edge<InfectionNode> edge : tree.getOutEdges(root)) {
+            nodes.push(edge.getDestination());
+        }
+        while (!nodes.isEmpty()) {
+            final InfectionNode node = nodes.pop();
+            if (isSampled(node)) {
+                sampled.add(node);
+            }
+            for (Edge<InfectionNode> edge : tree.getOutEdges(node)) {
+                nodes.push(edge.getDestination());
+            }
+        }
+        return sampled;
+    }
+
+    /**
+     * Build the observed tree from nodes that have already been sampled.
+     * @param tree    the transmission tree.
+     * @param sampled the root of the transmission tree followed by the sampled nodes (as returned by sample()).
+     * @return the observed tree, its nodes are copies of the nodes in the transmission tree.
+     */
+    static DirectedGraph<InfectionNode, Edge<InfectionNode>> build(final DirectedGraph<InfectionNode, Edge<InfectionNode>> tree,
+                                                                   final List<InfectionNode> sampled) {
+        final Set<String> sampledIds = new HashSet<>(sampled.size());
+        for (InfectionNode node : sampled) {
+            sampledIds.add(node.getId());
+        }
+        return build(tree, sampled.get(0), node -> sampledIds.contains(node.getId()));
+    }
+
+    /**
+     * Build the observed tree.
+     * @param tree       the transmission tree.
+     * @param root       the root of the transmission tree.
+     * @param isObserved the test of whether a node (other than the root) is in the observed tree.
+     * @return the observed tree.
+     */
+    private static DirectedGraph<InfectionNode, Edge<InfectionNode>> build(final DirectedGraph<InfectionNode, Edge<InfectionNode>> tree,
+                                                                           final InfectionNode root,
+                                                                           final Predicate<InfectionNode> isObserved) {
+        final DirectedGraph<InfectionNode, Edge<InfectionNode>> observedTree = new DirectedGraph<>();
+        final InfectionNode observedRoot = new InfectionNode(root);
+        observedTree.addVertex(observedRoot);
+
+        // each node is visited with its nearest ancestor in the observed tree.
+        final Deque<InfectionNode> nodes = new ArrayDeque<>();
+        final Deque<InfectionNode> observedAncestors = new ArrayDeque<>();
+        for (Edge<InfectionNode> edge : tree.getOutEdges(root)) {
+            nodes.push(edge.getDestination());
+            observedAncestors.push(observedRoot);
+        }
+        while (!nodes.isEmpty()) {
+            final InfectionNode node = nodes.pop();
+            InfectionNode observedAncestor = observedAncestors.pop();
+
+            if (isObserved.test(node)) {
+                log.debug("Adding node {} {} to the phylogenetic tree.", node, node.getDetectionDate());
+                final InfectionNode observedNode = new InfectionNode(node);
+                observedTree.addVertex(observedNode);
+                observedTree.addEdge(new Edge<>(observedAncestor, observedNode), observedAncestor, observedNode);
+                observedAncestor = observedNode;
+            }
+            for (Edge<InfectionNode> edge : tree.getOutEdges(node)) {
+                nodes.push(edge.getDestination());
+                observedAncestors.push(observedAncestor);
+            }
+        }
+        log.trace("Observed transmission tree has [{}] nodes", observedTree.getVertexCount());
+        return observedTree;
+    }
+
+    /**
+     * Decide if a node is sampled, only detected nodes can be sampled and they are sampled with the sampling rate of
+     * the year they were detected.
+     * @param node the node.
+     * @return true if the node is sampled.
+     */
+    boolean isSampled(final InfectionNode node) {
+        final Integer detectionDate = node.getDetectionDate();
+        if (detectionDate != null) {
+            final int detectionYear = (int) Math.floor((detectionDate) / 365.0) + zeroYear;
+            final double probabilityOfGettingSample = node.isCow() ? cattleSamplingRate.getRate(detectionYear)
+                                                      : badgerSamplingRate.getRate(detectionYear);
+            log.trace("Including node (year {}) in tree with probability {}", detectionYear, probabilityOfGettingSample);
+            return generator.getDouble() <= probabilityOfGettingSample;
+        }
+        log.trace("Node {} not detected - not being included", node.getId());
+        return false;
+    }
+
+    private final SamplingRates cattleSamplingRate;
+    private final SamplingRates badgerSamplingRate;
+    private final RNG generator;
+    private final int zeroYear;
+}
@@ -0,0 +1,152 @@
+package btbcluster;
+
+import broadwick.BroadwickException;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+import lombok.Getter;
+
+/**
+ * The outputs that are collected and written during a run. The level of the profile selects a default set of output
+ * streams:
+ * <ul>
+ * <li>summary: only the likelihoods and the time series,</li>
+ * <li>calibration: the summary plus the SNP distance distribution and the transmission trees,</li>
+ * <li>full: every output, including the records of each scenario (tests, movements, initial states and infected
+ * animals).</li>
+ * </ul>
+ * Each stream can then be switched on or off, e.g. "movements,-cattleTestResults" adds the movements and removes the
+ * cattle tests. A stream that is off is not collected at all during the simulation. The records of the scenarios can
+ * also be limited to a random fraction of the scenarios and/or to the steps of the chain that are accepted.
+ */
+public class OutputProfile {
+
+    /**
+     * The level of the profile.
+     */
+    public enum Level {
+        SUMMARY, CALIBRATION, FULL
+    }
+
+    /**
+     * The output streams that can be switched on or off, the names are those of the output files.
+     */
+    public enum Stream {
+        CATTLE_TESTS("cattleTestResults", true),
+        BADGER_TESTS("recordedBadgers", true),
+        HERD_TESTS("herdTestResults", true),
+        INITIAL_STATES("initialStates", true),
+        MOVEMENTS("movements", true),
+        SEQUENCES("AllSequences", true),
+        NODE_SEQUENCES("NodeSequences", false),
+        SNP_DISTANCES("snpDistances", false),
+        TREES("trees", false);
+
+        Stream(final String name, final boolean scenarioRecord) {
+            this.name = name;
+            this.scenarioRecord = scenarioRecord;
+        }
+
+        @Getter
+        private final String name;
+        // true if the stream holds records of each scenario (rather than the results of a step).
+        @Getter
+        private final boolean scenarioRecord;
+    }
+
+    /**
+     * Create the profile.
+     * @param level                   the level of the profile (summary, calibration or full).
+     * @param streams                 a comma separated list of the streams to switch on, or off if the name is
+     *                                preceded by '-', may be empty.
+     * @param recordFraction          the fraction of scenarios whose records are collected.
+     * @param recordAcceptedStepsOnly true if the records of the scenarios are only written for accepted steps.
+     */
+    public OutputProfile(final String level, final String streams, final double recordFraction,
+                         final boolean recordAcceptedStepsOnly) {
+        try {
+            this.level = Level.valueOf(level.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BroadwickException(String.format("Unknown output profile %s, expected summary, calibration or full",
+                                                       level));
+        }
+        if (recordFraction < 0.0 || recordFraction > 1.0) {
+            throw new BroadwickException(String.format("The fraction of scenarios recorded (%g) must be in [0,1]",
+                                                       recordFraction));
+        }
+        this.recordFraction = recordFraction;
+        this.recordAcceptedStepsOnly = recordAcceptedStepsOnly;
+
+        switch (this.level) {
+            case SUMMARY:
+                this.enabled = EnumSet.noneOf(Stream.class);
+                break;
+            case CALIBRATION:
+                this.enabled = EnumSet.of(Stream.SNP_DISTANCES, Stream.TREES);
+                break;
+            default:
+                this.enabled = EnumSet.allOf(Stream.class);
+                break;
+        }
+        for (String item : streams.split(",")) {
+            final String name = item.trim();
+            if (!name.isEmpty()) {
+                final boolean off = name.startsWith("-");
+                final Stream stream = findStream(off ? name.substring(1) : name);
+                if (off) {
+                    enabled.remove(stream);
+                } else {
+                    enabled.add(stream);
+                }
+            }
+        }
+    }
+
+    /**
+     * Create the profile that collects every output, as has always been done.
+     * @return the full profile.
+     */
+    public static OutputProfile full() {
+        return new OutputProfile("full", "", 1.0, false);
+    }
+
+    /**
+     * Check if a stream is collected.
+     * @param stream the stream.
+     * @return true if the stream is collected.
+     */
+    public boolean isEnabled(final Stream stream) {
+        return enabled.contains(stream);
+    }
+
+    /**
+     * Check if any of the streams holding the records of each scenario are collected.
+     * @return true if some records of the scenarios are collected.
+     */
+    public boolean hasScenarioRecords() {
+        return recordFraction > 0.0 && enabled.stream().anyMatch(Stream::isScenarioRecord);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s (records of %g of scenarios%s)", level, enabled, recordFraction,
+                             recordAcceptedStepsOnly ? ", accepted steps only" : "");
+    }
+
+    private static Stream findStream(final String name) {
+        for (Stream stream : Stream.values()) {
+            if (stream.getName().equalsIgnoreCase(name)) {
+                return stream;
+            }
+        }
+        throw new BroadwickException(String.format("Unknown output stream %s", name));
+    }
+
+    @Getter
+    private final Level level;
+    private final Set<Stream> enabled;
+    @Getter
+    private final double recordFraction;
+    @Getter
+    private final boolean recordAcceptedStepsOnly;
+}
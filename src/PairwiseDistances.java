@@ -0,0 +1,195 @@
+package btbcluster;
+
+import broadwick.statistics.distributions.IntegerDistribution;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Calculate the distribution of pairwise SNP distances between a collection of samples. The SNPs of the samples are
+ * mapped to a dense bit index so that the distance between two samples is the number of bits set in the XOR of their
+ * bitsets; each unordered pair is visited once and, for large numbers of samples, the pairs are split between the
+ * available processors.
+ */
+final class PairwiseDistances {
+
+    private PairwiseDistances() {
+        // utility class
+    }
+
+    /**
+     * Calculate the distribution of the distances between every pair of samples. Each pair is counted in both orders
+     * (A,B and B,A) as it has always been.
+     * @param samples the SNPs of each sample.
+     * @return the distribution of the pairwise distances.
+     */
+    static IntegerDistribution calculate(final SnpSet[] samples) {
+        return calculate(samples, null);
+    }
+
+    /**
+     * Calculate the distribution of the distances between every pair of samples where the distance between two
+     * samples is the number of SNPs that differ plus a distance that is not stored as SNPs (e.g. the mutations
+     * overlaid on the transmission tree). Each pair is counted in both orders.
+     * @param samples the SNPs of each sample.
+     * @param extra   the additional distance between each pair of samples, or null if there is none.
+     * @return the distribution of the pairwise distances.
+     */
+    static IntegerDistribution calculate(final SnpSet[] samples, final PairDistance extra) {
+        final IntegerDistribution distanceDist = new IntegerDistribution();
+        if (samples.length < 2) {
+            return distanceDist;
+        }
+
+        final int[] snpIndex = createSnpIndex(samples);
+        final long[][] bitsets = new long[samples.length][];
+        for (int i = 0; i < samples.length; i++) {
+            bitsets[i] = toBitset(samples[i], snpIndex);
+        }
+
+        // the distance between two samples cannot exceed the number of distinct SNPs (plus the extra distance).
+        final int numBins = snpIndex.length + 1 + (extra == null ? 0 : extra.getMaxDistance());
+        final int[] counts;
+        if (samples.length < PARALLEL_THRESHOLD) {
+            counts = new int[numBins];
+            countDistances(bitsets, extra, 0, samples.length, counts);
+        } else {
+            counts = splitRows(samples.length).parallelStream()
+                    .map(rows -> {
+                        final int[] rowCounts = new int[numBins];
+                        countDistances(bitsets, extra, rows[0], rows[1], rowCounts);
+                        return rowCounts;
+                    })
+                    .reduce(new int[numBins], PairwiseDistances::sum);
+        }
+
+        for (int distance = 0; distance < numBins; distance++) {
+            if (counts[distance] > 0) {
+                distanceDist.setFrequency(distance, 2 * counts[distance]);
+            }
+        }
+        return distanceDist;
+    }
+
+    /**
+     * Create a sorted array of all the distinct SNPs in the samples, the position of a SNP in the array is its bit
+     * index.
+     * @param samples the SNPs of each sample.
+     * @return the distinct SNPs.
+     */
+    private static int[] createSnpIndex(final SnpSet[] samples) {
+        int total = 0;
+        for (SnpSet sample : samples) {
+            total += sample.size();
+        }
+        final int[] snps = new int[total];
+        int n = 0;
+        for (SnpSet sample : samples) {
+            for (int i = 0; i < sample.size(); i++) {
+                snps[n++] = sample.get(i);
+            }
+        }
+        Arrays.sort(snps);
+
+        int numDistinct = 0;
+        for (int i = 0; i < total; i++) {
+            if (i == 0 || snps[i] != snps[i - 1]) {
+                snps[numDistinct++] = snps[i];
+            }
+        }
+        return Arrays.copyOf(snps, numDistinct);
+    }
+
+    private static long[] toBitset(final SnpSet sample, final int[] snpIndex) {
+        final long[] bits = new long[(snpIndex.length + 63) >>> 6];
+        for (int i = 0; i < sample.size(); i++) {
+            final int bit = Arrays.binarySearch(snpIndex, sample.get(i));
+            bits[bit >>> 6] |= 1L << bit;
+        }
+        return bits;
+    }
+
+    /**
+     * Count the distances between each sample in a range of rows and every sample after it.
+     * @param bitsets the bitset of each sample.
+     * @param extra   the additional distance between each pair of samples, or null if there is none.
+     * @param from    the first row.
+     * @param to      the row after the last row.
+     * @param counts  the number of pairs found at each distance, updated by this method.
+     */
+    private static void countDistances(final long[][] bitsets, final PairDistance extra,
+                                       final int from, final int to, final int[] counts) {
+        for (int i = from; i < to; i++) {
+            final long[] a = bitsets[i];
+            for (int j = i + 1; j < bitsets.length; j++) {
+                final long[] b = bitsets[j];
+                int distance = 0;
+                for (int w = 0; w < a.length; w++) {
+                    distance += Long.bitCount(a[w] ^ b[w]);
+                }
+                if (extra != null) {
+                    distance += extra.distance(i, j);
+                }
+                counts[distance]++;
+            }
+        }
+    }
+
+    /**
+     * Split the rows of the (upper triangular) matrix of pairs into ranges with roughly the same number of pairs.
+     * @param numSamples the number of samples.
+     * @return the ranges of rows, each as {from, to}.
+     */
+    private static List<int[]> splitRows(final int numSamples) {
+        final long numPairs = ((long) numSamples * (numSamples - 1)) / 2;
+        final int numRanges = 4 * Runtime.getRuntime().availableProcessors();
+        final long pairsPerRange = Math.max(1, numPairs / numRanges);
+
+        final List<int[]> ranges = new ArrayList<>(numRanges + 1);
+        int from = 0;
+        long pairs = 0;
+        for (int row = 0; row < numSamples; row++) {
+            pairs += numSamples - 1 - row;
+            if (pairs >= pairsPerRange) {
+                ranges.add(new int[]{from, row + 1});
+                from = row + 1;
+                pairs = 0;
+            }
+        }
+        if (from < numSamples) {
+            ranges.add(new int[]{from, numSamples});
+        }
+        return ranges;
+    }
+
+    private static int[] sum(final int[] a, final int[] b) {
+        final int[] total = new int[a.length];
+        for (int i = 0; i < a.length; i++) {
+            total[i] = a[i] + b[i];
+        }
+        return total;
+    }
+
+    /**
+     * A distance between two samples that is not stored in their SNPs.
+     */
+    interface PairDistance {
+
+        /**
+         * Get the distance between two samples.
+         * @param i the index of the first sample.
+         * @param j the index of the second sample.
+         * @return the distance.
+         */
+        int distance(int i, int j);
+
+        /**
+         * Get the largest distance between any two samples.
+         * @return the largest distance.
+         */
+        int getMaxDistance();
+    }
+
+    // below this number of samples the pairs are not worth splitting between threads.
+    private static final int PARALLEL_THRESHOLD = 1024;
+}
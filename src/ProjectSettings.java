@@ -1,15 +1,8 @@
 package btbcluster;
 
 import broadwick.BroadwickException;
-import broadwick.rng.RNG;
 import broadwick.statistics.distributions.IntegerDistribution;
-import broadwick.utils.Pair;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import lombok.Getter;
 
 /**
@@ -24,45 +17,6 @@ public class ProjectSettings {
         this.initStepSize = false;
     }
 
-    /**
-     * Determine the SNP that is to be applied to a [mutated] strain. The algorithm is very simplistic as we do not need
-     * to record where the SNP occurred in the genome so we have a static value that is incremented when we introduce a
-     * new SNP.
-     * @param mutationRate      the transmissionWeight SNPs appear in the genome per day.
-     * @param day               the number of days over which SNPs are accumulated, if negative then there will be at
-     *                          least one SNP generated.
-     * @param lastSnpGeneration the day the last snp was generated.
-     * @param generator         the RNG to use
-     * @return a collection (HashSet) of snps that appeared since lastSnpGeneration
-     */
-    public static Set<Integer> generateSnp(final double mutationRate, final long day,
-            final RNG generator, Integer lastSnpGeneration) {
-
-        final long numSNPs;
-        Set<Integer> snps = new HashSet<>();
-
-        // DB: [Mut]
-        if (mutationRate < 0) {
-            // numSNPs must be at least 1.
-            numSNPs = Math.max(day, 1);
-        } else {
-            // DB: [Mut]
-            final long days = day - lastSnpGeneration;
-            if (days < 0) {
-                throw new BroadwickException("Day of the simulation should never be less than the last SNP generation.");
-            } else if (days == 0) {
-                numSNPs = 0;
-            } else {
-                numSNPs = generator.getPoisson(mutationRate * days);
-            }
-        }
-
-        for (int i = 0; i < numSNPs; i++) {
-            snps.add(++lastSnp);
-        }
-        return snps;
-    }
-
     public ProjectSettings setInitMutationsPerClade(final int initMutClade) {
         this.initMutClade = initMutClade;
         return this;
@@ -282,6 +236,93 @@ public class ProjectSettings {
 //        return this;
 //    }
     
+    /**
+     * Say whether the transition kernel is updated incrementally, i.e. only the rates of events involving farms and
+     * reservoirs that changed since the last update are recalculated rather than rebuilding the whole kernel.
+     *
+     * @param incremental true if the kernel should be updated incrementally.
+     * @return this object.
+     */
+    public ProjectSettings setIncrementalKernel(final boolean incremental) {
+        this.incrementalKernel = incremental;
+        return this;
+    }
+
+    /**
+     * Say whether every incremental kernel update should be checked against a full rebuild of the kernel (this is
+     * slow and only intended for debugging).
+     *
+     * @param check true if the incremental kernel should be checked.
+     * @return this object.
+     */
+    public ProjectSettings setCheckIncrementalKernel(final boolean check) {
+        this.checkIncrementalKernel = check;
+        return this;
+    }
+
+    /**
+     * Say whether the mutations are overlaid on the transmission tree once a scenario has finished rather than
+     * generated as the infection spreads. In this mode the animals only carry the SNPs of their initial clade and the
+     * pairwise distances are calculated from the mutations drawn on the branches of the tree.
+     *
+     * @param overlay true if the mutations should be overlaid on the transmission tree.
+     * @return this object.
+     */
+    public ProjectSettings setOverlayMutations(final boolean overlay) {
+        this.overlayMutations = overlay;
+        return this;
+    }
+
+    /**
+     * Say whether the scenarios are only run to calculate the likelihood (e.g. while calibrating). In this case the
+     * observed (phylogenetic) tree of a scenario is only built if it is written to file, the likelihood is calculated
+     * directly from the sampled nodes.
+     *
+     * @param calibrationOnly true if the observed tree should only be built on demand.
+     * @return this object.
+     */
+    public ProjectSettings setCalibrationOnly(final boolean calibrationOnly) {
+        this.calibrationOnly = calibrationOnly;
+        return this;
+    }
+
+    /**
+     * Set whether the records of the scenarios (tests, movements, infected animals...) are written to compact
+     * columnar files, that can be converted to the usual csv files with ColumnarToCsv, rather than to csv files.
+     *
+     * @param columnarOutput true if the records should be written to columnar files.
+     * @return this object.
+     */
+    public ProjectSettings setColumnarOutput(final boolean columnarOutput) {
+        this.columnarOutput = columnarOutput;
+        return this;
+    }
+
+    /**
+     * Set the output profile, i.e. the outputs that are collected and written and the scenarios whose records are
+     * kept.
+     *
+     * @param outputProfile the output profile.
+     * @return this object.
+     */
+    public ProjectSettings setOutputProfile(final OutputProfile outputProfile) {
+        this.outputProfile = outputProfile;
+        return this;
+    }
+
+    /**
+     * Set whether only the movements off units holding infected animals are simulated, for the other movements (that
+     * cannot spread infection) only the number of animals moved is drawn. This is only done if the unit sizes are not
+     * flexible and the movements (and herd tests) are not recorded.
+     *
+     * @param focusedMovements true if only the movements off infected units are simulated.
+     * @return this object.
+     */
+    public ProjectSettings setFocusedMovements(final boolean focusedMovements) {
+        this.focusedMovements = focusedMovements;
+        return this;
+    }
+
     /**
      * Set the observed pairwise distance distribution.
      *
@@ -316,13 +357,13 @@ public class ProjectSettings {
     }
 
     /**
-     * Set the distribution of cattle deaths.
+     * Set the schedule of cattle deaths, i.e. the farms from which animals are removed, and how many, in each step.
      *
-     * @param dist the distribution.
+     * @param schedule the schedule.
      * @return this object.
      */
-    public ProjectSettings setCattleDeathDistribution(final Map<Integer, Collection<String>> dist) {
-        this.cattleDeathDistribution = dist;
+    public ProjectSettings setSlaughterSchedule(final SlaughterSchedule schedule) {
+        this.slaughterSchedule = schedule;
         return this;
     }
 
@@ -333,7 +374,7 @@ public class ProjectSettings {
      * @return this object.
      */
     public ProjectSettings setCattleSamplingRate(final Map<Integer, Double> rate) {
-        this.cattleSamplingRate = rate;
+        this.cattleSamplingRate = new SamplingRates(rate);
         return this;
     }
 
@@ -344,7 +385,7 @@ public class ProjectSettings {
      * @return this object.
      */
     public ProjectSettings setBadgerSamplingRate(final Map<Integer, Double> rate) {
-        this.badgerSamplingRate = rate;
+        this.badgerSamplingRate = new SamplingRates(rate);
         return this;
     }
 
@@ -360,18 +401,6 @@ public class ProjectSettings {
 //        return this;
 //    }
 
-    /**
-     * Set the details of all the reservoirs in this simulation. The map is a
-     * cache of farm id and a collection of reservoirs to which it is attached.
-     *
-     * @param reservoirs the reservoirs data.
-     * @return this object.
-     */
-    public ProjectSettings setFarmReservoirs(final Map<String, Collection<Reservoir>> reservoirs) {
-        this.farmReservoirs = reservoirs;
-        return this;
-    }
-
     /**
      * Set maximum size of btb outbreak in cattle.
      *
@@ -396,7 +425,6 @@ public class ProjectSettings {
 
     @Getter
     private int seed;
-    private static int lastSnp = 0;
     @Getter
     private int startDate;
     @Getter
@@ -436,27 +464,33 @@ public class ProjectSettings {
     @Getter
     private boolean reservoirSizeFlex;
     @Getter
+    private boolean incrementalKernel;
+    @Getter
+    private boolean checkIncrementalKernel;
+    @Getter
+    private boolean overlayMutations;
+    @Getter
+    private boolean calibrationOnly;
+    @Getter
+    private boolean columnarOutput;
+    @Getter
+    private OutputProfile outputProfile = OutputProfile.full();
+    @Getter
+    private boolean focusedMovements;
+    @Getter
     private IntegerDistribution observedPairwiseDistanceDistribution;
     @Getter
     private IntegerDistribution herdSizeDistribution;
     @Getter
     private IntegerDistribution reservoirSizeDistribution;
     @Getter
-    private Map<Integer, Collection<String>> cattleDeathDistribution;
-    @Getter
-    private Map<Integer, Double> cattleSamplingRate;
+    private SlaughterSchedule slaughterSchedule;
     @Getter
-    private Map<Integer, Double> badgerSamplingRate;
+    private SamplingRates cattleSamplingRate;
     @Getter
-    Map<String, Collection<Reservoir>> farmReservoirs;
+    private SamplingRates badgerSamplingRate;
     @Getter
     private int maxInfectedCows;
     @Getter
     private int maxInfectedBadgers;
-    // A list of all the movements stored in a farmId-farmId format. We will stored many duplicates so to pick a random 
-    // movement we can select a movement at random from this list and it will respect the distribution of actual movements.
-    @Getter
-    private final List<Pair<String, String>> cattleMovementFrequencies = new ArrayList<>();
-    @Getter
-    private final List<Pair<String, String>> badgerMovementFrequencies = new ArrayList<>();
 }
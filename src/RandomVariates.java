@@ -0,0 +1,341 @@
+package btbcluster;
+
+import broadwick.BroadwickException;
+import broadwick.rng.RNG;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Random variates (hypergeometric, Poisson, binomial and random subsets) drawn from the generator of a scenario.
+ * Unlike creating a distribution object for each draw, and seeding it from the generator, nothing is allocated or
+ * reseeded; the draws depend only on the generator so a scenario stays reproducible from its seed.
+ * <p>
+ * A RandomVariates object holds scratch space and so, like the generator, must only be used by one thread.
+ */
+public class RandomVariates {
+
+    /**
+     * Create the random variates.
+     * @param generator the generator from which the variates are drawn.
+     */
+    public RandomVariates(final RNG generator) {
+        this.generator = generator;
+        this.indices = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Draw the number of successes in a sample, taken without replacement, from a population.
+     * @param populationSize   the size of the population.
+     * @param sampleSize       the number of individuals drawn from the population.
+     * @param numberOfSuccesses the number of successes (e.g. infected animals) in the population.
+     * @return the number of successes in the sample.
+     */
+    public int hypergeometric(final int populationSize, final int sampleSize, final int numberOfSuccesses) {
+        if (numberOfSuccesses > populationSize || sampleSize > populationSize
+            || numberOfSuccesses < 0 || sampleSize < 0) {
+            throw new BroadwickException(String.format("Invalid hypergeometric distribution: population %d, sample %d, successes %d",
+                                                       populationSize, sampleSize, numberOfSuccesses));
+        }
+        if (sampleSize == 0 || numberOfSuccesses == 0) {
+            return 0;
+        }
+        if (numberOfSuccesses == populationSize) {
+            return sampleSize;
+        }
+        if (sampleSize == populationSize) {
+            return numberOfSuccesses;
+        }
+
+        // the distribution is symmetric in the sample size and the number of successes, we draw the smaller one.
+        final int drawn = Math.min(sampleSize, numberOfSuccesses);
+        final int marked = Math.max(sampleSize, numberOfSuccesses);
+        if (drawn <= SMALL_COUNT) {
+            // draw the individuals one at a time, counting those that are marked.
+            int successes = 0;
+            int remainingMarked = marked;
+            int remaining = populationSize;
+            for (int i = 0; i < drawn && remainingMarked > 0; i++) {
+                if (generator.getDouble() * remaining < remainingMarked) {
+                    successes++;
+                    remainingMarked--;
+                }
+                remaining--;
+            }
+            return successes;
+        }
+
+        // search outwards from the mode, the probabilities of the neighbouring values follow from each other.
+        final int n = populationSize;
+        final int lower = Math.max(0, sampleSize + numberOfSuccesses - populationSize);
+        final int upper = drawn;
+        final int mode = Math.max(lower, Math.min(upper, (int) (((long) sampleSize + 1) * (numberOfSuccesses + 1) / (n + 2))));
+        final double pMode = Math.exp(logChoose(numberOfSuccesses, mode)
+                                      + logChoose(n - numberOfSuccesses, sampleSize - mode)
+                                      - logChoose(n, sampleSize));
+        double u = generator.getDouble() - pMode;
+        if (u <= 0.0) {
+            return mode;
+        }
+        int lo = mode;
+        int hi = mode;
+        double pLo = pMode;
+        double pHi = pMode;
+        while (lo > lower || hi < upper) {
+            if (hi < upper) {
+                pHi *= ((double) (numberOfSuccesses - hi) * (sampleSize - hi))
+                       / ((double) (hi + 1) * (n - numberOfSuccesses - sampleSize + hi + 1));
+                hi++;
+                u -= pHi;
+                if (u <= 0.0) {
+                    return hi;
+                }
+            }
+            if (lo > lower) {
+                pLo *= ((double) lo * (n - numberOfSuccesses - sampleSize + lo))
+                       / ((double) (numberOfSuccesses - lo + 1) * (sampleSize - lo + 1));
+                lo--;
+                u -= pLo;
+                if (u <= 0.0) {
+                    return lo;
+                }
+            }
+        }
+        // only reached through rounding errors.
+        return mode;
+    }
+
+    /**
+     * Draw a value from a Poisson distribution.
+     * @param mean the mean of the distribution.
+     * @return the value.
+     */
+    public int poisson(final double mean) {
+        if (mean <= 0.0) {
+            return 0;
+        }
+        if (mean < POISSON_INVERSION_LIMIT) {
+            // inversion by sequential search.
+            final double u = generator.getDouble();
+            int k = 0;
+            double p = Math.exp(-mean);
+            double cumulative = p;
+            while (u > cumulative && p > 0.0) {
+                k++;
+                p *= mean / k;
+                cumulative += p;
+            }
+            return k;
+        }
+
+        // transformed rejection with squeeze (Hormann's PTRS).
+        final double sqrtMean = Math.sqrt(mean);
+        final double logMean = Math.log(mean);
+        final double b = 0.931 + 2.53 * sqrtMean;
+        final double a = -0.059 + 0.02483 * b;
+        final double invAlpha = 1.1239 + 1.1328 / (b - 3.4);
+        final double vr = 0.9277 - 3.6224 / (b - 2);
+        while (true) {
+            final double u = generator.getDouble() - 0.5;
+            final double v = generator.getDouble();
+            final double us = 0.5 - Math.abs(u);
+            final long k = (long) Math.floor((2 * a / us + b) * u + mean + 0.43);
+            if (us >= 0.07 && v <= vr) {
+                return (int) k;
+            }
+            if (k < 0 || (us < 0.013 && v > us)) {
+                continue;
+            }
+            if (Math.log(v) + Math.log(invAlpha) - Math.log(a / (us * us) + b)
+                <= -mean + k * logMean - logFactorial((int) k)) {
+                return (int) k;
+            }
+        }
+    }
+
+    /**
+     * Draw a value from a binomial distribution.
+     * @param numTrials   the number of trials.
+     * @param probability the probability of success of each trial.
+     * @return the number of successes.
+     */
+    public int binomial(final int numTrials, final double probability) {
+        if (numTrials <= 0 || probability <= 0.0) {
+            return 0;
+        }
+        if (probability >= 1.0) {
+            return numTrials;
+        }
+        // draw the number of failures if they are the less likely outcome.
+        if (probability > 0.5) {
+            return numTrials - binomial(numTrials, 1.0 - probability);
+        }
+
+        final double q = 1.0 - probability;
+        if (numTrials * probability < BINOMIAL_INVERSION_LIMIT) {
+            // inversion by sequential search from zero.
+            final double s = probability / q;
+            final double a = (numTrials + 1) * s;
+            double p = Math.pow(q, numTrials);
+            double u = generator.getDouble();
+            int k = 0;
+            while (u > p && k < numTrials) {
+                u -= p;
+                k++;
+                p *= a / k - s;
+            }
+            return k;
+        }
+
+        // search outwards from the mode.
+        final int mode = (int) Math.min(numTrials, Math.floor((numTrials + 1) * probability));
+        final double pMode = Math.exp(logChoose(numTrials, mode) + mode * Math.log(probability)
+                                      + (numTrials - mode) * Math.log(q));
+        final double ratio = probability / q;
+        double u = generator.getDouble() - pMode;
+        if (u <= 0.0) {
+            return mode;
+        }
+        int lo = mode;
+        int hi = mode;
+        double pLo = pMode;
+        double pHi = pMode;
+        while (lo > 0 || hi < numTrials) {
+            if (hi < numTrials) {
+                pHi *= ratio * (numTrials - hi) / (hi + 1);
+                hi++;
+                u -= pHi;
+                if (u <= 0.0) {
+                    return hi;
+                }
+            }
+            if (lo > 0) {
+                pLo *= lo / (ratio * (numTrials - lo + 1));
+                lo--;
+                u -= pLo;
+                if (u <= 0.0) {
+                    return lo;
+                }
+            }
+        }
+        return mode;
+    }
+
+    /**
+     * Select a number of distinct items, at random, from a collection. The items are added to the selection in the
+     * order they appear in the collection, except for an InfectionBag whose selected items are moved to its front.
+     * @param <T>       the type of the items.
+     * @param items     the items from which the selection is made.
+     * @param k         the number of items to select.
+     * @param selection the list to which the selected items are added, it is cleared first.
+     * @return the selection.
+     */
+    public <T> List<T> selectManyOf(final Collection<T> items, final int k, final List<T> selection) {
+        selection.clear();
+        final int n = items.size();
+        if (k <= 0) {
+            return selection;
+        }
+        if (k >= n) {
+            selection.addAll(items);
+            return selection;
+        }
+
+        if (items instanceof InfectionBag) {
+            // the infections of a unit are selected by swapping them to the front of the bag.
+            ((InfectionBag<? extends T>) items).select(generator, k, selection);
+            return selection;
+        }
+        if (items instanceof List && items instanceof RandomAccess && (long) k * k <= n) {
+            // few items from a long list, pick k distinct indices (Floyd's algorithm).
+            final List<T> list = (List<T>) items;
+            if (indices.length < k) {
+                indices = new int[Math.max(k, 2 * indices.length)];
+            }
+            int numSelected = 0;
+            for (int j = n - k; j < n; j++) {
+                final int t = generator.getInteger(0, j);
+                indices[numSelected++] = contains(indices, numSelected - 1, t) ? j : t;
+            }
+            sort(indices, numSelected);
+            for (int i = 0; i < numSelected; i++) {
+                selection.add(list.get(indices[i]));
+            }
+            return selection;
+        }
+
+        // selection sampling, each item is selected with probability (still needed) / (still to visit).
+        int needed = k;
+        int remaining = n;
+        final Iterator<T> iterator = items.iterator();
+        while (needed > 0) {
+            final T item = iterator.next();
+            if (generator.getDouble() * remaining < needed) {
+                selection.add(item);
+                needed--;
+            }
+            remaining--;
+        }
+        return selection;
+    }
+
+    /**
+     * Calculate the logarithm of n!.
+     * @param n the value.
+     * @return log(n!).
+     */
+    static double logFactorial(final int n) {
+        if (n < LOG_FACTORIALS.length) {
+            return LOG_FACTORIALS[n];
+        }
+        // Stirling's series.
+        final double x = n + 1.0;
+        final double inverse = 1.0 / x;
+        final double inverse2 = inverse * inverse;
+        return (x - 0.5) * Math.log(x) - x + HALF_LOG_2PI
+               + inverse * (1.0 / 12 - inverse2 * (1.0 / 360 - inverse2 / 1260));
+    }
+
+    private static double logChoose(final int n, final int k) {
+        return logFactorial(n) - logFactorial(k) - logFactorial(n - k);
+    }
+
+    private static boolean contains(final int[] values, final int size, final int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void sort(final int[] values, final int size) {
+        // the selections are small, an insertion sort is enough.
+        for (int i = 1; i < size; i++) {
+            final int value = values[i];
+            int j = i - 1;
+            while (j >= 0 && values[j] > value) {
+                values[j + 1] = values[j];
+                j--;
+            }
+            values[j + 1] = value;
+        }
+    }
+
+    private final RNG generator;
+    private int[] indices;                      // scratch space for the indices of a selection.
+    private static final int INITIAL_CAPACITY = 64;
+    // below this number of draws the hypergeometric distribution is sampled one individual at a time.
+    private static final int SMALL_COUNT = 16;
+    private static final double POISSON_INVERSION_LIMIT = 10.0;
+    private static final double BINOMIAL_INVERSION_LIMIT = 10.0;
+    private static final double HALF_LOG_2PI = 0.5 * Math.log(2 * Math.PI);
+    private static final double[] LOG_FACTORIALS = new double[256];
+
+    static {
+        for (int i = 1; i < LOG_FACTORIALS.length; i++) {
+            LOG_FACTORIALS[i] = LOG_FACTORIALS[i - 1] + Math.log(i);
+        }
+    }
+}
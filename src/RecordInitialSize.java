@@ -1,30 +1,39 @@
-package btbcluster;
-import java.io.Serializable;
-import lombok.Data;
-
-@Data
-public class RecordInitialSize implements Serializable {
-    public RecordInitialSize(final String species, final String unitId, final int size) {
-        this.species = species;
-        this.unitId = unitId;
-        this.size = size;
-    }
-    
-    @Override
-    public final String toString() {
-        final StringBuilder sb = new StringBuilder();
-        sb.append(species).append(",");
-        sb.append(unitId).append(",");
-        sb.append(size);
-        return sb.toString();
-    }
-    
-    public static final String Header() {
-        return "species,unitID,size\n";
-    }
-
-    
-    private final String species;
-    private final String unitId;
-    private final int size;
-}
+package btbcluster;
+import java.io.Serializable;
+import lombok.Data;
+
+@Data
+public class RecordInitialSize implements Serializable {
+    public RecordInitialSize(final String species, final String unitId, final int size) {
+        this.species = species;
+        this.unitId = unitId;
+        this.size = size;
+    }
+    
+    @Override
+    public final String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(species).append(",");
+        sb.append(unitId).append(",");
+        sb.append(size);
+        return sb.toString();
+    }
+    
+    public static final String Header() {
+        return "species,unitID,size\n";
+    }
+
+    
+    private final String species;
+    private final String unitId;
+    private final int size;
+    public static final RecordLayout<RecordInitialSize> LAYOUT = new RecordLayout<>(
+            Header(),
+            new ColumnType[]{ColumnType.STRING, ColumnType.STRING, ColumnType.INT},
+            RecordInitialSize::toString,
+            (initialSize, out) -> {
+                out.writeString(initialSize.species);
+                out.writeString(initialSize.unitId);
+                out.writeInt(initialSize.size);
+            });
+}
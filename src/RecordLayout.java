@@ -0,0 +1,47 @@
+package btbcluster;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * The layout of a type of record object in the output files; the csv row of a record and the columns in which it is
+ * written in a columnar file.
+ * @param <T> the type of the records.
+ */
+public final class RecordLayout<T> extends ColumnLayout {
+
+    /**
+     * Create the layout.
+     * @param header    the csv header of the records, ending with a newline.
+     * @param types     the type of each column in the header.
+     * @param csvFormat the function that formats a record as a csv row (without the newline).
+     * @param columns   the function that writes the columns of a record, in order, to a columnar file.
+     */
+    public RecordLayout(final String header, final ColumnType[] types, final Function<? super T, String> csvFormat,
+                        final BiConsumer<? super T, ColumnarWriter> columns) {
+        super(header, types);
+        this.csvFormat = csvFormat;
+        this.columns = columns;
+    }
+
+    /**
+     * Format a record as a csv row.
+     * @param record the record.
+     * @return the row, without the newline.
+     */
+    public String format(final T record) {
+        return csvFormat.apply(record);
+    }
+
+    /**
+     * Write the columns of a record to a columnar file, the caller ends the row.
+     * @param record the record.
+     * @param writer the writer of the columnar file.
+     */
+    public void write(final T record, final ColumnarWriter writer) {
+        columns.accept(record, writer);
+    }
+
+    private final Function<? super T, String> csvFormat;
+    private final BiConsumer<? super T, ColumnarWriter> columns;
+}
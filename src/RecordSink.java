@@ -0,0 +1,47 @@
+package btbcluster;
+
+import java.util.Collection;
+
+/**
+ * A file to which the records of each scenario are written when the step of the scenario finishes, rather than
+ * keeping the records of every scenario until the end of the run. Each row is prefixed with the id of the scenario and the rows of
+ * a scenario are written together. Scenarios may write to the same sink concurrently.
+ */
+public interface RecordSink extends AutoCloseable {
+
+    /**
+     * Open a sink for a type of record, either a csv file or a (much smaller) columnar file.
+     * @param baseName the name of the file without its extension.
+     * @param layout   the layout of the records (a RecordLayout or TableLayout).
+     * @param columnar true to write a columnar file (baseName.bin), false to write a csv file (baseName.csv).
+     * @return the sink.
+     */
+    static RecordSink open(final String baseName, final ColumnLayout layout, final boolean columnar) {
+        if (columnar) {
+            return new ColumnarRecordSink(baseName + ".bin", layout);
+        }
+        return new CsvRecordSink(baseName + ".csv", layout);
+    }
+
+    /**
+     * Write the records of a scenario.
+     * @param <T>        the type of the records.
+     * @param scenarioId the id of the scenario.
+     * @param records    the records.
+     * @param layout     the layout of the records, which must have the same columns as the layout of the sink.
+     */
+    <T> void write(int scenarioId, Collection<T> records, RecordLayout<? super T> layout);
+
+    /**
+     * Write the rows of a table of records of a scenario.
+     * @param <T>        the type of the table.
+     * @param scenarioId the id of the scenario.
+     * @param table      the table.
+     * @param numRows    the number of rows in the table.
+     * @param layout     the layout of the table, which must have the same columns as the layout of the sink.
+     */
+    <T> void write(int scenarioId, T table, int numRows, TableLayout<? super T> layout);
+
+    @Override
+    void close();
+}
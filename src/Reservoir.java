@@ -1,26 +1,18 @@
 package btbcluster;
 
 import broadwick.statistics.distributions.IntegerDistribution;
-import java.util.ArrayList;
-import java.util.Collection;
 import lombok.Getter;
-import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * Encompass a wildlife reservoir for bovine TB. The reservoir contains infected badgers.
+ * Encompass a wildlife reservoir for bovine TB. The reservoir contains infected badgers, the size of each reservoir
+ * changes during a scenario and is kept in the scenario indexed by the reservoir's index.
  */
 @Slf4j
 public class Reservoir {
 
     public Reservoir(final String id) {
-        this(id, -1);
-    }
-    
-    public Reservoir(final String id, final int size) {
         this.id = id;
-        this.reservoirSize = size;
-        this.connectedFarms = new ArrayList<>();
         this.offMovementDistribution = new IntegerDistribution();
     }
 
@@ -44,15 +36,12 @@ public class Reservoir {
 //        return (Badger) generator.selectOneOf(infectedBadgers);
 //    }
     
-    @Override
-    public void finalize() throws Throwable {
-        super.finalize();
-        connectedFarms.clear();
-        connectedFarms = null;
-    }
-    
-    public void changeSize(final int change) {
-        this.reservoirSize += change;
+    /**
+     * Create the (constant time) sampler of the number of animals moved out of the reservoir, once all the movements
+     * out of the reservoir have been added to its off movement distribution.
+     */
+    void createOffMovementSizes() {
+        this.offMovementSizes = MovementSizes.of(offMovementDistribution);
     }
 
     @Override
@@ -63,10 +52,7 @@ public class Reservoir {
     @Getter
     private final String id;
     @Getter
-    @Setter
-    private int reservoirSize;
-    @Getter
-    private Collection<String> connectedFarms;
-    @Getter
     private final IntegerDistribution offMovementDistribution;
+    @Getter
+    private MovementSizes offMovementSizes = MovementSizes.EMPTY;
 }
@@ -0,0 +1,63 @@
+package btbcluster;
+
+import java.util.Map;
+
+/**
+ * The probability of a detected animal being sampled (i.e. its sample being grown and sequenced) in each year, stored
+ * in an array indexed by year so that looking up the probability for a node is cheap. Years for which no rate is given
+ * have a probability of 0.
+ */
+public class SamplingRates {
+
+    /**
+     * Create the sampling rates.
+     * @param rates the probability of an animal being sampled in each year.
+     */
+    public SamplingRates(final Map<Integer, Double> rates) {
+        int first = Integer.MAX_VALUE;
+        int last = Integer.MIN_VALUE;
+        for (int year : rates.keySet()) {
+            first = Math.min(first, year);
+            last = Math.max(last, year);
+        }
+
+        if (rates.isEmpty()) {
+            this.firstYear = 0;
+            this.rates = new double[0];
+        } else {
+            this.firstYear = first;
+            this.rates = new double[last - first + 1];
+            for (Map.Entry<Integer, Double> entry : rates.entrySet()) {
+                this.rates[entry.getKey() - first] = entry.getValue() == null ? 0.0 : entry.getValue();
+            }
+        }
+    }
+
+    /**
+     * Get the probability of an animal detected in a given year being sampled.
+     * @param year the year.
+     * @return the probability.
+     */
+    public double getRate(final int year) {
+        final int i = year - firstYear;
+        return i >= 0 && i < rates.length ? rates[i] : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("{");
+        for (int i = 0; i < rates.length; i++) {
+            if (rates[i] > 0.0) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(firstYear + i).append("=").append(rates[i]);
+            }
+        }
+        return sb.append("}").toString();
+    }
+
+    private final int firstYear;
+    private final double[] rates;
+}
@@ -0,0 +1,110 @@
+package btbcluster;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The files to which the records of the scenarios (tests, movements, initial states and infected animals) of a Markov
+ * chain are written as each step of the chain finishes. Each chain has its own files, e.g. movements.[chain id].csv,
+ * and each scenario has a unique id that is written with each of its records. Only the streams enabled in the output
+ * profile are opened.
+ */
+@Slf4j
+public class ScenarioRecordSinks implements AutoCloseable {
+
+    /**
+     * Create the sinks.
+     * @param profile  the output profile, giving the streams that are written.
+     * @param columnar true to write the records to compact columnar files (see ColumnarWriter) rather than csv files.
+     * @param chainId  the id of the chain whose records are written.
+     */
+    public ScenarioRecordSinks(final OutputProfile profile, final boolean columnar, final int chainId) {
+        // DB: [testData]
+        this.cattleTests = open(profile, chainId, OutputProfile.Stream.CATTLE_TESTS, "cattleTestResults",
+                                EventLog.CATTLE_TESTS, columnar);
+        this.recordedBadgers = open(profile, chainId, OutputProfile.Stream.BADGER_TESTS, "recordedBadgers",
+                                    EventLog.BADGER_TESTS, columnar);
+        this.herdTests = open(profile, chainId, OutputProfile.Stream.HERD_TESTS, "herdTestResults",
+                              EventLog.HERD_TESTS, columnar);
+
+        // stochastic events
+        this.initialSizes = open(profile, chainId, OutputProfile.Stream.INITIAL_STATES, "initialSizes",
+                                 RecordInitialSize.LAYOUT, columnar);
+        this.initialInfStates = open(profile, chainId, OutputProfile.Stream.INITIAL_STATES, "initialInfectionStates",
+                                     RecordInitialInfState.LAYOUT, columnar);
+        this.initialRestrictions = open(profile, chainId, OutputProfile.Stream.INITIAL_STATES, "initialRestrictions",
+                                        RecordInitialRestrictions.LAYOUT, columnar);
+        this.movements = open(profile, chainId, OutputProfile.Stream.MOVEMENTS, "movements",
+                              EventLog.MOVEMENTS, columnar);
+
+        // DB: [OutInf]
+        this.sequences = open(profile, chainId, OutputProfile.Stream.SEQUENCES, "AllSequences",
+                              InfectedCow.LAYOUT, columnar);
+    }
+
+    /**
+     * Write the records of a scenario that has finished.
+     * @param records the records of the scenario.
+     */
+    public void write(final ScenarioRecords records) {
+        final int scenarioId = records.getScenarioId();
+        final EventLog eventLog = records.getEventLog();
+        if (cattleTests != null) {
+            cattleTests.write(scenarioId, eventLog.getCattleTests(), eventLog.getCattleTests().getSize(),
+                              EventLog.CATTLE_TESTS);
+        }
+        if (recordedBadgers != null) {
+            recordedBadgers.write(scenarioId, eventLog.getBadgerTests(), eventLog.getBadgerTests().getSize(),
+                                  EventLog.BADGER_TESTS);
+        }
+        if (herdTests != null) {
+            herdTests.write(scenarioId, eventLog.getHerdTests(), eventLog.getHerdTests().getSize(),
+                            EventLog.HERD_TESTS);
+        }
+
+        if (initialSizes != null) {
+            initialSizes.write(scenarioId, records.getInitialSizes(), RecordInitialSize.LAYOUT);
+            initialInfStates.write(scenarioId, records.getInitialInfStates(), RecordInitialInfState.LAYOUT);
+            initialRestrictions.write(scenarioId, records.getInitialRestrictions(), RecordInitialRestrictions.LAYOUT);
+        }
+        if (movements != null) {
+            movements.write(scenarioId, eventLog.getMovements(), eventLog.getMovements().getSize(),
+                            EventLog.MOVEMENTS);
+        }
+
+        // all the infected and culled cows and badgers, keep the rows of a scenario together.
+        if (sequences != null) {
+            synchronized (sequences) {
+                sequences.write(scenarioId, records.getCulledCows(), InfectedCow.LAYOUT);
+                sequences.write(scenarioId, records.getInfectedCows(), InfectedCow.LAYOUT);
+                sequences.write(scenarioId, records.getExpiredBadgers(), InfectedBadger.LAYOUT);
+                sequences.write(scenarioId, records.getInfectedBadgers(), InfectedBadger.LAYOUT);
+            }
+        }
+        log.trace("Written records of scenario {}", scenarioId);
+    }
+
+    @Override
+    public void close() {
+        for (RecordSink sink : new RecordSink[]{cattleTests, recordedBadgers, herdTests, initialSizes,
+                                                initialInfStates, initialRestrictions, movements, sequences}) {
+            if (sink != null) {
+                sink.close();
+            }
+        }
+    }
+
+    private static RecordSink open(final OutputProfile profile, final int chainId, final OutputProfile.Stream stream,
+                                   final String baseName, final ColumnLayout layout, final boolean columnar) {
+        return profile.isEnabled(stream) ? RecordSink.open(String.format("%s.%d", baseName, chainId), layout, columnar)
+               : null;
+    }
+
+    private final RecordSink cattleTests;
+    private final RecordSink recordedBadgers;
+    private final RecordSink herdTests;
+    private final RecordSink initialSizes;
+    private final RecordSink initialInfStates;
+    private final RecordSink initialRestrictions;
+    private final RecordSink movements;
+    private final RecordSink sequences;
+}
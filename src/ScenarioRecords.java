@@ -0,0 +1,60 @@
+package btbcluster;
+
+import java.util.Collection;
+import lombok.Getter;
+
+/**
+ * The records of a scenario that has finished, kept (without the rest of the scenario) until they are written to the
+ * record sinks.
+ */
+public class ScenarioRecords {
+
+    /**
+     * Collect the records of a scenario.
+     * @param scenarioId          the id of the scenario.
+     * @param eventLog            the tests and movements of the scenario.
+     * @param initialSizes        the initial sizes of the units.
+     * @param initialInfStates    the initial infection states of the animals.
+     * @param initialRestrictions the initial restrictions of the herds.
+     * @param culledCows          the cows culled during the scenario.
+     * @param infectedCows        the cows infected at the end of the scenario.
+     * @param expiredBadgers      the badgers that died during the scenario.
+     * @param infectedBadgers     the badgers infected at the end of the scenario.
+     */
+    public ScenarioRecords(final int scenarioId, final EventLog eventLog,
+                           final Collection<RecordInitialSize> initialSizes,
+                           final Collection<RecordInitialInfState> initialInfStates,
+                           final Collection<RecordInitialRestrictions> initialRestrictions,
+                           final Collection<InfectedCow> culledCows, final Collection<InfectedCow> infectedCows,
+                           final Collection<InfectedBadger> expiredBadgers,
+                           final Collection<InfectedBadger> infectedBadgers) {
+        this.scenarioId = scenarioId;
+        this.eventLog = eventLog;
+        this.initialSizes = initialSizes;
+        this.initialInfStates = initialInfStates;
+        this.initialRestrictions = initialRestrictions;
+        this.culledCows = culledCows;
+        this.infectedCows = infectedCows;
+        this.expiredBadgers = expiredBadgers;
+        this.infectedBadgers = infectedBadgers;
+    }
+
+    @Getter
+    private final int scenarioId;
+    @Getter
+    private final EventLog eventLog;
+    @Getter
+    private final Collection<RecordInitialSize> initialSizes;
+    @Getter
+    private final Collection<RecordInitialInfState> initialInfStates;
+    @Getter
+    private final Collection<RecordInitialRestrictions> initialRestrictions;
+    @Getter
+    private final Collection<InfectedCow> culledCows;
+    @Getter
+    private final Collection<InfectedCow> infectedCows;
+    @Getter
+    private final Collection<InfectedBadger> expiredBadgers;
+    @Getter
+    private final Collection<InfectedBadger> infectedBadgers;
+}
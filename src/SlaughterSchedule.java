@@ -0,0 +1,133 @@
+package btbcluster;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The moves to slaughter of each step of the simulation. The moves read from the data (the date of each move and the
+ * farm from which an animal was taken) are bucketed once, when they are read, into the steps of the simulation so that
+ * each step only has to walk its own list of farms and the number of animals to take off each.
+ * <p>
+ * The simulation steps from the start date by a fixed step size; the moves of the step starting at time t are those
+ * made on the dates t to t + stepSize inclusive (so a move on the last day of a step is also taken in the next step,
+ * as it has always been).
+ */
+public class SlaughterSchedule {
+
+    /**
+     * Create the schedule.
+     * @param movesByDate the indices of the farms from which an animal was taken on each date, a farm appears once
+     *                    for each animal taken.
+     * @param startDate   the start date of the simulation.
+     * @param endDate     the end date of the simulation.
+     * @param stepSize    the size of the steps of the simulation.
+     * @param numFarms    the number of farms.
+     */
+    public SlaughterSchedule(final Map<Integer, int[]> movesByDate, final int startDate, final int endDate,
+                             final int stepSize, final int numFarms) {
+        this.startDate = startDate;
+        this.stepSize = stepSize;
+        final int numSteps = (endDate - startDate) / stepSize + 1;
+        this.offsets = new int[numSteps + 1];
+
+        int[] stepFarms = new int[INITIAL_CAPACITY];
+        int[] stepCounts = new int[INITIAL_CAPACITY];
+        int size = 0;
+        final int[] counts = new int[numFarms];
+        final int[] farmsMoving = new int[numFarms];
+        for (int step = 0; step < numSteps; step++) {
+            // count the moves off each farm, keeping the farms in the order of their first move.
+            final int time = startDate + step * stepSize;
+            int numFarmsMoving = 0;
+            for (int date = time; date <= time + stepSize; date++) {
+                final int[] farms = movesByDate.get(date);
+                if (farms != null) {
+                    for (int farm : farms) {
+                        if (counts[farm]++ == 0) {
+                            farmsMoving[numFarmsMoving++] = farm;
+                        }
+                    }
+                }
+            }
+
+            if (size + numFarmsMoving > stepFarms.length) {
+                final int capacity = Math.max(2 * stepFarms.length, size + numFarmsMoving);
+                stepFarms = Arrays.copyOf(stepFarms, capacity);
+                stepCounts = Arrays.copyOf(stepCounts, capacity);
+            }
+            for (int i = 0; i < numFarmsMoving; i++) {
+                final int farm = farmsMoving[i];
+                stepFarms[size] = farm;
+                stepCounts[size] = counts[farm];
+                counts[farm] = 0;
+                size++;
+            }
+            offsets[step + 1] = size;
+        }
+        this.farms = Arrays.copyOf(stepFarms, size);
+        this.numAnimals = Arrays.copyOf(stepCounts, size);
+    }
+
+    /**
+     * Get the step of the simulation that starts at a given time.
+     * @param time the start time of the step.
+     * @return the index of the step, or -1 if the time is outside the simulation.
+     */
+    public int getStep(final int time) {
+        final int step = Math.floorDiv(time - startDate, stepSize);
+        return step >= 0 && step < offsets.length - 1 ? step : -1;
+    }
+
+    /**
+     * Get the position of the first move of a step, the moves of the step are those from getFirstMove(step) to
+     * getEndMove(step) - 1.
+     * @param step the index of the step.
+     * @return the position of the first move.
+     */
+    public int getFirstMove(final int step) {
+        return offsets[step];
+    }
+
+    /**
+     * Get the position after the last move of a step.
+     * @param step the index of the step.
+     * @return the position after the last move.
+     */
+    public int getEndMove(final int step) {
+        return offsets[step + 1];
+    }
+
+    /**
+     * Get the farm of a move.
+     * @param move the position of the move.
+     * @return the index of the farm from which the animals are taken.
+     */
+    public int getFarm(final int move) {
+        return farms[move];
+    }
+
+    /**
+     * Get the number of animals of a move.
+     * @param move the position of the move.
+     * @return the number of animals taken off the farm.
+     */
+    public int getNumAnimals(final int move) {
+        return numAnimals[move];
+    }
+
+    /**
+     * Get the total number of moves (farm and step pairs) in the schedule.
+     * @return the number of moves.
+     */
+    public int size() {
+        return farms.length;
+    }
+
+    private final int startDate;
+    private final int stepSize;
+    // the moves of step s are at positions offsets[s] to offsets[s + 1] - 1 of farms and numAnimals.
+    private final int[] offsets;
+    private final int[] farms;
+    private final int[] numAnimals;
+    private static final int INITIAL_CAPACITY = 1024;
+}
@@ -0,0 +1,72 @@
+package btbcluster;
+
+import broadwick.BroadwickException;
+import lombok.Getter;
+
+/**
+ * Allocate the SNPs that appear in the strains of a scenario. We do not need to record where the SNP occurred in the
+ * genome so each new SNP is simply given the next id; each scenario has its own allocator so the ids depend only on
+ * the scenario (and its seed) and not on any other scenario that is, or has been, run.
+ */
+public class SnpAllocator {
+
+    /**
+     * Create the allocator.
+     * @param variates  the random variates of the scenario, used to draw the number of SNPs that appear.
+     * @param mutate    true if SNPs appear as the infection spreads, false if only the SNPs of the initial clades are
+     *                  generated (the mutations are then overlaid on the transmission tree after the scenario).
+     */
+    public SnpAllocator(final RandomVariates variates, final boolean mutate) {
+        this.variates = variates;
+        this.mutate = mutate;
+        this.lastSnp = 0;
+    }
+
+    /**
+     * Start allocating ids from the beginning again, used when a scenario is (re)initialised.
+     */
+    public void reset() {
+        lastSnp = 0;
+    }
+
+    /**
+     * Determine the SNPs that are to be applied to a [mutated] strain.
+     * @param mutationRate      the rate SNPs appear in the genome per day, if negative then day SNPs (at least one) are
+     *                          generated.
+     * @param day               the day on which the SNPs are generated.
+     * @param lastSnpGeneration the day the last snp was generated.
+     * @return the snps that appeared since lastSnpGeneration
+     */
+    public SnpSet generateSnp(final double mutationRate, final long day, final int lastSnpGeneration) {
+
+        final long numSNPs;
+
+        // DB: [Mut]
+        if (mutationRate < 0) {
+            // numSNPs must be at least 1.
+            numSNPs = Math.max(day, 1);
+        } else if (!mutate) {
+            return SnpSet.EMPTY;
+        } else {
+            // DB: [Mut]
+            final long days = day - lastSnpGeneration;
+            if (days < 0) {
+                throw new BroadwickException("Day of the simulation should never be less than the last SNP generation.");
+            } else if (days == 0) {
+                numSNPs = 0;
+            } else {
+                numSNPs = variates.poisson(mutationRate * days);
+            }
+        }
+
+        // the new SNPs are simply the next numSNPs ids.
+        final int first = lastSnp + 1;
+        lastSnp += (int) numSNPs;
+        return SnpSet.range(first, (int) numSNPs);
+    }
+
+    private final RandomVariates variates;
+    private final boolean mutate;
+    @Getter
+    private int lastSnp;
+}
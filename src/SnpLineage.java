@@ -0,0 +1,79 @@
+package btbcluster;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The SNPs of a strain stored as a lineage; each lineage keeps only the SNPs that appeared since its parent lineage
+ * and a reference to that parent, so the animals and tree nodes that descend from a common source share the SNPs of
+ * that source rather than copying them. A lineage is immutable, adding SNPs creates a child lineage.
+ * <p>
+ * SNPs ids are never reused (see SnpAllocator) so the SNPs of a lineage are exactly the union of the SNPs of it and
+ * its ancestors, with no SNP appearing twice.
+ */
+public final class SnpLineage implements Serializable {
+
+    private SnpLineage(final SnpLineage parent, final SnpSet snps) {
+        this.parent = parent;
+        this.snps = snps;
+        this.size = (parent == null ? 0 : parent.size) + snps.size();
+        this.depth = parent == null ? 0 : parent.depth + 1;
+    }
+
+    /**
+     * Create the lineage containing the SNPs that have appeared since this lineage.
+     * @param newSnps the SNPs that have appeared.
+     * @return the new lineage (or this object if there are no new SNPs).
+     */
+    public SnpLineage add(final SnpSet newSnps) {
+        if (newSnps.isEmpty()) {
+            return this;
+        }
+        if (depth >= MAX_DEPTH) {
+            // keep the chains short, so that materialising (and serialising) a lineage stays cheap, by starting
+            // a new root.
+            return new SnpLineage(null, toSnpSet().union(newSnps));
+        }
+        return new SnpLineage(this, newSnps);
+    }
+
+    /**
+     * Get the number of SNPs in the lineage (including the ancestral SNPs).
+     * @return the number of SNPs.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Create the set of all the SNPs in this lineage.
+     * @return the SNPs.
+     */
+    public SnpSet toSnpSet() {
+        if (parent == null) {
+            return snps;
+        }
+        final int[] all = new int[size];
+        int n = 0;
+        for (SnpLineage lineage = this; lineage != null; lineage = lineage.parent) {
+            for (int i = 0; i < lineage.snps.size(); i++) {
+                all[n++] = lineage.snps.get(i);
+            }
+        }
+        Arrays.sort(all);
+        return SnpSet.of(all);
+    }
+
+    @Override
+    public String toString() {
+        return toSnpSet().toString();
+    }
+
+    private final SnpLineage parent;
+    private final SnpSet snps;
+    private final int size;
+    private final int depth;
+    public static final SnpLineage EMPTY = new SnpLineage(null, SnpSet.EMPTY);
+    private static final int MAX_DEPTH = 64;
+    private static final long serialVersionUID = 1L;
+}
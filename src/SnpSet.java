@@ -0,0 +1,193 @@
+package btbcluster;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * An immutable set of SNPs stored as a sorted array of ints. As the set cannot be changed it can be shared between
+ * the animals (and tree nodes) that carry the same strain instead of being copied, adding SNPs creates a new set.
+ */
+public final class SnpSet implements Serializable {
+
+    private SnpSet(final int[] snps) {
+        this.snps = snps;
+    }
+
+    /**
+     * Create a set from an array of distinct SNPs, the array must be sorted in increasing order and is not copied.
+     * @param sortedSnps the SNPs.
+     * @return the set of SNPs.
+     */
+    static SnpSet of(final int[] sortedSnps) {
+        return sortedSnps.length == 0 ? EMPTY : new SnpSet(sortedSnps);
+    }
+
+    /**
+     * Create the set of SNPs in a range of consecutive ids.
+     * @param first the first SNP in the range.
+     * @param count the number of SNPs in the range.
+     * @return the set of SNPs.
+     */
+    public static SnpSet range(final int first, final int count) {
+        if (count == 0) {
+            return EMPTY;
+        }
+        final int[] snps = new int[count];
+        for (int i = 0; i < count; i++) {
+            snps[i] = first + i;
+        }
+        return new SnpSet(snps);
+    }
+
+    /**
+     * Get the number of SNPs in the set.
+     * @return the number of SNPs.
+     */
+    public int size() {
+        return snps.length;
+    }
+
+    /**
+     * Check if the set is empty.
+     * @return true if there are no SNPs in the set.
+     */
+    public boolean isEmpty() {
+        return snps.length == 0;
+    }
+
+    /**
+     * Get a SNP from the set, the SNPs are sorted in increasing order.
+     * @param i the position of the SNP in the set.
+     * @return the SNP.
+     */
+    public int get(final int i) {
+        return snps[i];
+    }
+
+    /**
+     * Check if a SNP is in the set.
+     * @param snp the SNP.
+     * @return true if the set contains the SNP.
+     */
+    public boolean contains(final int snp) {
+        return Arrays.binarySearch(snps, snp) >= 0;
+    }
+
+    /**
+     * Create the union of this set and another.
+     * @param other the other set.
+     * @return a set containing the SNPs of both sets.
+     */
+    public SnpSet union(final SnpSet other) {
+        if (other.snps.length == 0 || other == this) {
+            return this;
+        }
+        if (snps.length == 0) {
+            return other;
+        }
+        // new SNPs are usually more recent (larger ids) than the ones in the set so try to append them.
+        if (other.snps[0] > snps[snps.length - 1]) {
+            final int[] merged = Arrays.copyOf(snps, snps.length + other.snps.length);
+            System.arraycopy(other.snps, 0, merged, snps.length, other.snps.length);
+            return new SnpSet(merged);
+        }
+
+        final int[] merged = new int[snps.length + other.snps.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < snps.length && j < other.snps.length) {
+            if (snps[i] < other.snps[j]) {
+                merged[n++] = snps[i++];
+            } else if (snps[i] > other.snps[j]) {
+                merged[n++] = other.snps[j++];
+            } else {
+                merged[n++] = snps[i++];
+                j++;
+            }
+        }
+        while (i < snps.length) {
+            merged[n++] = snps[i++];
+        }
+        while (j < other.snps.length) {
+            merged[n++] = other.snps[j++];
+        }
+        return new SnpSet(n == merged.length ? merged : Arrays.copyOf(merged, n));
+    }
+
+    /**
+     * Count the SNPs that are in one, but not both, of this set and another, i.e. the SNP distance between them.
+     * @param other the other set.
+     * @return the size of the symmetric difference of the sets.
+     */
+    public int symmetricDifferenceSize(final SnpSet other) {
+        if (other == this) {
+            return 0;
+        }
+        int i = 0;
+        int j = 0;
+        int common = 0;
+        while (i < snps.length && j < other.snps.length) {
+            if (snps[i] < other.snps[j]) {
+                i++;
+            } else if (snps[i] > other.snps[j]) {
+                j++;
+            } else {
+                common++;
+                i++;
+                j++;
+            }
+        }
+        return snps.length + other.snps.length - 2 * common;
+    }
+
+    /**
+     * Get a copy of the SNPs in the set.
+     * @return the SNPs, in increasing order.
+     */
+    public int[] toArray() {
+        return snps.clone();
+    }
+
+    /**
+     * Create a string of the SNPs in the set.
+     * @param separator the separator placed between each SNP.
+     * @return the SNPs as a string.
+     */
+    public String toString(final String separator) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < snps.length; i++) {
+            if (i > 0) {
+                sb.append(separator);
+            }
+            sb.append(snps[i]);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "[" + toString(", ") + "]";
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(snps);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+
+        return Arrays.equals(((SnpSet) obj).snps, snps);
+    }
+
+    private final int[] snps;
+    public static final SnpSet EMPTY = new SnpSet(new int[0]);
+    private static final long serialVersionUID = 1L;
+}
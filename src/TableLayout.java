@@ -0,0 +1,76 @@
+package btbcluster;
+
+/**
+ * The layout of the rows of a table of records stored in columns (see EventLog) in the output files; the csv row of
+ * each row of the table and the columns in which it is written in a columnar file. No object is created per record.
+ * @param <T> the type of the table.
+ */
+public final class TableLayout<T> extends ColumnLayout {
+
+    /**
+     * Create the layout.
+     * @param header    the csv header of the records, ending with a newline.
+     * @param types     the type of each column in the header.
+     * @param csvFormat the function that formats a row of the table as a csv row (without the newline).
+     * @param columns   the function that writes the columns of a row of the table, in order, to a columnar file.
+     */
+    public TableLayout(final String header, final ColumnType[] types, final RowFormat<? super T> csvFormat,
+                       final RowWriter<? super T> columns) {
+        super(header, types);
+        this.csvFormat = csvFormat;
+        this.columns = columns;
+    }
+
+    /**
+     * Format a row of a table as a csv row.
+     * @param table the table.
+     * @param row   the row.
+     * @return the csv row, without the newline.
+     */
+    public String format(final T table, final int row) {
+        return csvFormat.format(table, row);
+    }
+
+    /**
+     * Write the columns of a row of a table to a columnar file, the caller ends the row.
+     * @param table  the table.
+     * @param row    the row.
+     * @param writer the writer of the columnar file.
+     */
+    public void write(final T table, final int row, final ColumnarWriter writer) {
+        columns.write(table, row, writer);
+    }
+
+    /**
+     * Format a row of a table as csv.
+     * @param <T> the type of the table.
+     */
+    public interface RowFormat<T> {
+
+        /**
+         * Format a row of a table.
+         * @param table the table.
+         * @param row   the row.
+         * @return the csv row, without the newline.
+         */
+        String format(T table, int row);
+    }
+
+    /**
+     * Write a row of a table to a columnar file.
+     * @param <T> the type of the table.
+     */
+    public interface RowWriter<T> {
+
+        /**
+         * Write the columns of a row of a table.
+         * @param table  the table.
+         * @param row    the row.
+         * @param writer the writer of the columnar file.
+         */
+        void write(T table, int row, ColumnarWriter writer);
+    }
+
+    private final RowFormat<? super T> csvFormat;
+    private final RowWriter<? super T> columns;
+}
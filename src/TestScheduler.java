@@ -0,0 +1,166 @@
+package btbcluster;
+
+import java.util.Arrays;
+
+/**
+ * The dates of the next whole herd tests of the farms, kept in a priority queue so that each step only visits the
+ * farms whose tests are due rather than every farm.
+ * <p>
+ * A herd that is clear to trade is next tested testInterval days after its last clear test, a herd under restriction
+ * 60 days after its last positive test. Each time the test dates of a farm change its new test is pushed onto the
+ * queue; the tests it replaces are left in the queue and dropped when they reach the head of the queue.
+ */
+public class TestScheduler {
+
+    /**
+     * Create the scheduler.
+     * @param numFarms            the number of farms.
+     * @param testIntervalInDays  the interval between the tests of a herd that is clear to trade.
+     */
+    public TestScheduler(final int numFarms, final double testIntervalInDays) {
+        this.testIntervalInDays = testIntervalInDays;
+        this.nextTestDates = new int[2 * numFarms];
+        this.queue = new long[INITIAL_CAPACITY];
+        this.due = new long[INITIAL_CAPACITY];
+        reset();
+    }
+
+    /**
+     * Remove all the tests from the schedule.
+     */
+    public final void reset() {
+        Arrays.fill(nextTestDates, NO_TEST);
+        size = 0;
+    }
+
+    /**
+     * Schedule the next test of a farm after its test dates have changed.
+     * @param farm                 the index of the farm.
+     * @param lastClearTestDate    the date of the last clear test (-1 if the last test was positive).
+     * @param lastPositiveTestDate the date of the last positive test (-1 if the last test was clear).
+     */
+    public void schedule(final int farm, final int lastClearTestDate, final int lastPositiveTestDate) {
+        // the herd is clear to trade.
+        final int clearTest = lastPositiveTestDate == -1
+                              ? (int) Math.round(lastClearTestDate + testIntervalInDays) : NO_TEST;
+        // the herd is under restriction.
+        final int restrictedTest = lastClearTestDate == -1 ? lastPositiveTestDate + 60 : NO_TEST;
+
+        update(2 * farm, clearTest);
+        update(2 * farm + 1, restrictedTest);
+    }
+
+    /**
+     * Remove the tests that are due before a given date from the schedule, tests that were due before the start date
+     * have been missed and are dropped.
+     * @param from the start date of the period.
+     * @param to   the date after the end of the period.
+     * @param farms the array to which the indices of the farms with a test due are written, it must be able to hold
+     *              twice the number of farms.
+     * @param dates the array to which the dates of the tests are written.
+     * @return the number of tests due in the period, the tests are ordered by the index of the farm.
+     */
+    public int pollDue(final int from, final int to, final int[] farms, final int[] dates) {
+        int numDue = 0;
+        while (size > 0 && dateOf(queue[0]) < to) {
+            final long test = poll();
+            final int date = dateOf(test);
+            final int slot = slotOf(test);
+            if (date >= from && nextTestDates[slot] == date) {
+                if (numDue == due.length) {
+                    due = Arrays.copyOf(due, 2 * numDue);
+                }
+                // order the tests by farm (and clear tests before restricted ones) as they are registered.
+                due[numDue++] = ((long) slot << 32) | (date & 0xffffffffL);
+            }
+        }
+        Arrays.sort(due, 0, numDue);
+
+        int n = 0;
+        for (int i = 0; i < numDue; i++) {
+            // the same test may have been scheduled more than once.
+            if (i > 0 && due[i] == due[i - 1]) {
+                continue;
+            }
+            farms[n] = (int) (due[i] >>> 33);
+            dates[n] = (int) due[i];
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Get the number of tests in the queue, including those that have been replaced.
+     * @return the size of the queue.
+     */
+    public int size() {
+        return size;
+    }
+
+    private void update(final int slot, final int date) {
+        if (nextTestDates[slot] == date) {
+            return;
+        }
+        nextTestDates[slot] = date;
+        if (date != NO_TEST) {
+            push(((long) date << 32) | slot);
+        }
+    }
+
+    private void push(final long test) {
+        if (size == queue.length) {
+            queue = Arrays.copyOf(queue, 2 * size);
+        }
+        int i = size++;
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+            if (queue[parent] <= test) {
+                break;
+            }
+            queue[i] = queue[parent];
+            i = parent;
+        }
+        queue[i] = test;
+    }
+
+    private long poll() {
+        final long head = queue[0];
+        final long last = queue[--size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && queue[child + 1] < queue[child]) {
+                child++;
+            }
+            if (last <= queue[child]) {
+                break;
+            }
+            queue[i] = queue[child];
+            i = child;
+        }
+        queue[i] = last;
+        return head;
+    }
+
+    private static int dateOf(final long test) {
+        return (int) (test >> 32);
+    }
+
+    private static int slotOf(final long test) {
+        return (int) test;
+    }
+
+    private final double testIntervalInDays;
+    // the date of the next test of each farm, a farm has two slots (2 * farm for the test of a herd that is clear to
+    // trade and 2 * farm + 1 for a restricted herd), NO_TEST if the farm has no test of that kind.
+    private final int[] nextTestDates;
+    // a binary heap of the tests, each stored as the date (high 32 bits) and the slot of the farm.
+    private long[] queue;
+    private int size;
+    private long[] due;
+    private static final int NO_TEST = Integer.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 1024;
+}
@@ -0,0 +1,327 @@
+package btbcluster;
+
+import broadwick.BroadwickException;
+import broadwick.stochastic.TransitionKernel;
+import btbcluster.TransmissionEvent.Route;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the transition events of every infected animal in a scenario between kernel updates. Rather than re-creating
+ * every event for every infected cow and badger when the kernel is updated, the events are cached and only the rates
+ * of the events belonging to animals on (or connected to) a farm/reservoir that changed since the last update are
+ * recalculated. The events are added to the kernel in the same order, and with the same rates, as a full rebuild.
+ */
+@Slf4j
+class TransitionKernelCache {
+
+    /**
+     * Create the cache for a scenario.
+     * @param scenario the scenario whose infected animals populate the kernel.
+     */
+    TransitionKernelCache(final MyMonteCarloScenario scenario) {
+        this.scenario = scenario;
+        this.entries = new IdentityHashMap<>();
+        this.changedFarms = new BitSet();
+        this.changedReservoirs = new BitSet();
+        this.generation = 0;
+    }
+
+    /**
+     * Flag a farm whose infections, herd size or infected animals changed since the last update.
+     * @param farm the index of the farm.
+     */
+    void farmChanged(final int farm) {
+        changedFarms.set(farm);
+    }
+
+    /**
+     * Flag a reservoir whose infections, size or infected animals changed since the last update.
+     * @param reservoir the index of the reservoir.
+     */
+    void reservoirChanged(final int reservoir) {
+        changedReservoirs.set(reservoir);
+    }
+
+    /**
+     * Discard all the cached events, the next update will re-create every event.
+     */
+    void clear() {
+        entries.clear();
+        changedFarms.clear();
+        changedReservoirs.clear();
+    }
+
+    /**
+     * Re-create every event for every infected animal and add them to the kernel, nothing is cached.
+     * @param kernel the (empty) kernel to fill.
+     */
+    void rebuild(final TransitionKernel kernel) {
+        clear();
+        for (InfectedCow cow : scenario.getInfectedCows().values()) {
+            createCowEntry(cow).addTo(kernel);
+        }
+        if (scenario.getSettings().isIncludeReservoir()) {
+            for (InfectedBadger badger : scenario.getInfectedBadgers().values()) {
+                createBadgerEntry(badger).addTo(kernel);
+            }
+        }
+    }
+
+    /**
+     * Add the cached events to the kernel, recalculating the rates of the events affected by the farms and reservoirs
+     * that changed since the last update and creating the events of animals that are new or whose infection status or
+     * location changed.
+     * @param kernel the (empty) kernel to fill.
+     */
+    void update(final TransitionKernel kernel) {
+        final Set<Object> affected = findAffectedAnimals();
+        generation++;
+
+        int numRecalculated = 0;
+        for (InfectedCow cow : scenario.getInfectedCows().values()) {
+            Entry entry = entries.get(cow);
+            if (entry == null || entry.status != cow.getInfectionStatus() || entry.unit != cow.getFarm()) {
+                entry = createCowEntry(cow);
+                entries.put(cow, entry);
+                numRecalculated++;
+            } else if (affected.contains(cow)) {
+                updateRates(entry);
+                numRecalculated++;
+            }
+            entry.generation = generation;
+            entry.addTo(kernel);
+        }
+
+        if (scenario.getSettings().isIncludeReservoir()) {
+            for (InfectedBadger badger : scenario.getInfectedBadgers().values()) {
+                Entry entry = entries.get(badger);
+                if (entry == null || entry.unit != badger.getReservoir()) {
+                    entry = createBadgerEntry(badger);
+                    entries.put(badger, entry);
+                    numRecalculated++;
+                } else if (affected.contains(badger)) {
+                    updateRates(entry);
+                    numRecalculated++;
+                }
+                entry.generation = generation;
+                entry.addTo(kernel);
+            }
+        }
+
+        // forget the animals that have been removed (culled, died) since the last update.
+        entries.values().removeIf(entry -> entry.generation != generation);
+        changedFarms.clear();
+        changedReservoirs.clear();
+        log.trace("Recalculated the events of {}/{} infected animals", numRecalculated, entries.size());
+
+        if (scenario.getSettings().isCheckIncrementalKernel()) {
+            crossCheck();
+        }
+    }
+
+    /**
+     * Find the animals whose event rates depend on the farms and reservoirs that changed since the last update, i.e.
+     * the animals on the changed units and those on units connected to them.
+     * @return the set of affected animals.
+     */
+    private Set<Object> findAffectedAnimals() {
+        final Set<Object> affected = Collections.newSetFromMap(new IdentityHashMap<>());
+        final boolean includeReservoir = scenario.getSettings().isIncludeReservoir();
+        final UnitNeighbours farmReservoirs = scenario.getTopology().getFarmReservoirs();
+        final UnitNeighbours connectedFarms = scenario.getTopology().getConnectedFarms();
+
+        for (int farm = changedFarms.nextSetBit(0); farm >= 0; farm = changedFarms.nextSetBit(farm + 1)) {
+            affected.addAll(scenario.getFarmInfections().get(farm));
+            if (includeReservoir) {
+                for (int i = farmReservoirs.getFirst(farm); i < farmReservoirs.getEnd(farm); i++) {
+                    affected.addAll(scenario.getReservoirInfections().get(farmReservoirs.get(i)));
+                }
+            }
+        }
+        if (includeReservoir) {
+            for (int reservoir = changedReservoirs.nextSetBit(0); reservoir >= 0;
+                 reservoir = changedReservoirs.nextSetBit(reservoir + 1)) {
+                affected.addAll(scenario.getReservoirInfections().get(reservoir));
+                for (int i = connectedFarms.getFirst(reservoir); i < connectedFarms.getEnd(reservoir); i++) {
+                    affected.addAll(scenario.getFarmInfections().get(connectedFarms.get(i)));
+                }
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * Check that the cached events are identical to those of a full rebuild.
+     */
+    private void crossCheck() {
+        for (InfectedCow cow : scenario.getInfectedCows().values()) {
+            checkEntry(cow.toString(), entries.get(cow), createCowEntry(cow));
+        }
+        if (scenario.getSettings().isIncludeReservoir()) {
+            for (InfectedBadger badger : scenario.getInfectedBadgers().values()) {
+                checkEntry(badger.toString(), entries.get(badger), createBadgerEntry(badger));
+            }
+        }
+        log.trace("Incremental kernel matches full rebuild for {} animals", entries.size());
+    }
+
+    private void checkEntry(final String animal, final Entry cached, final Entry rebuilt) {
+        if (cached == null || cached.size != rebuilt.size) {
+            throw new BroadwickException(String.format("Incremental kernel has a different number of events to the full rebuild for %s", animal));
+        }
+        for (int i = 0; i < rebuilt.size; i++) {
+            final TransmissionEvent event = cached.events[i];
+            final TransmissionEvent expected = rebuilt.events[i];
+            if (event.getRoute() != expected.getRoute() || event.getTarget() != expected.getTarget()
+                || Double.compare(cached.rates[i], rebuilt.rates[i]) != 0) {
+                throw new BroadwickException(String.format("Incremental kernel differs from full rebuild for %s: %s[%d]=%g, expected %s[%d]=%g",
+                                                           animal, event.getRoute(), event.getTarget(), cached.rates[i],
+                                                           expected.getRoute(), expected.getTarget(), rebuilt.rates[i]));
+            }
+        }
+    }
+
+    /**
+     * Create the events (and rates) for an infected cow.
+     * @param cow the infected cow.
+     * @return the cached entry for the cow.
+     */
+    private Entry createCowEntry(final InfectedCow cow) {
+        final int farm = cow.getFarm();
+        Entry entry;
+        switch (cow.getInfectionStatus()) {
+            case EXPOSED:
+                // Add E->T event
+                entry = new Entry(cow.getInfectionStatus(), farm, 1);
+                entry.add(new TransmissionEvent(cow, Route.EXPOSED_TO_TESTSENSITIVE, farm));
+                break;
+            case TESTSENSITIVE:
+                // Add T->I event
+                entry = new Entry(cow.getInfectionStatus(), farm, 1);
+                entry.add(new TransmissionEvent(cow, Route.TESTSENSITIVE_TO_INFECTIOUS, farm));
+                break;
+            case INFECTIOUS:
+                // Cattle -> Cattle transmission
+                // Add S->E event, the newly infected cow is only created (and given an id) when the event is
+                // performed as we're not tracking susceptible animals.
+                final UnitNeighbours reservoirs = scenario.getTopology().getFarmReservoirs();
+                final int numReservoirs = scenario.getSettings().isIncludeReservoir() ? reservoirs.size(farm) : 0;
+                entry = new Entry(cow.getInfectionStatus(), farm, 1 + numReservoirs);
+                entry.add(new TransmissionEvent(cow, Route.COW_TO_COW, farm));
+
+                // Cattle -> Badger transmission
+                for (int i = reservoirs.getFirst(farm); i < reservoirs.getFirst(farm) + numReservoirs; i++) {
+                    entry.add(new TransmissionEvent(cow, Route.COW_TO_BADGER, reservoirs.get(i)));
+                }
+                break;
+            default:
+                entry = new Entry(cow.getInfectionStatus(), farm, 0);
+                break;
+        }
+        updateRates(entry);
+        return entry;
+    }
+
+    /**
+     * Create the events (and rates) for an infected badger.
+     * @param badger the infected badger.
+     * @return the cached entry for the badger.
+     */
+    private Entry createBadgerEntry(final InfectedBadger badger) {
+        final int reservoir = badger.getReservoir();
+        final UnitNeighbours connectedFarms = scenario.getTopology().getConnectedFarms();
+        final Entry entry = new Entry(InfectionStateBadger.INFECTIOUS, reservoir, 1 + connectedFarms.size(reservoir));
+
+        // Badger -> Badger transmission
+        entry.add(new TransmissionEvent(badger, Route.BADGER_TO_BADGER, reservoir));
+
+        // Badger -> Cattle transmission
+        for (int i = connectedFarms.getFirst(reservoir); i < connectedFarms.getEnd(reservoir); i++) {
+            entry.add(new TransmissionEvent(badger, Route.BADGER_TO_COW, connectedFarms.get(i)));
+        }
+        updateRates(entry);
+        return entry;
+    }
+
+    /**
+     * Recalculate the rates of all the events in an entry from the current state of the scenario.
+     * @param entry the entry to update.
+     */
+    private void updateRates(final Entry entry) {
+        final Map<String, Double> coordinates = scenario.getStep().getCoordinates();
+        for (int i = 0; i < entry.size; i++) {
+            final int target = entry.events[i].getTarget();
+            switch (entry.events[i].getRoute()) {
+                case EXPOSED_TO_TESTSENSITIVE:
+                    // SIGMA
+                    entry.rates[i] = scenario.getSettings().getSigma();
+                    break;
+                case TESTSENSITIVE_TO_INFECTIOUS:
+                    entry.rates[i] = coordinates.get("gamma");
+                    break;
+                case COW_TO_COW:
+                    entry.rates[i] = numSusceptibleCows(target) * coordinates.get("beta_CC");
+                    break;
+                case COW_TO_BADGER:
+                    entry.rates[i] = numSusceptibleBadgers(target) * coordinates.get("beta_CB");
+                    break;
+                case BADGER_TO_BADGER:
+                    entry.rates[i] = numSusceptibleBadgers(target) * coordinates.get("beta_BB");
+                    break;
+                case BADGER_TO_COW:
+                    entry.rates[i] = numSusceptibleCows(target) * coordinates.get("beta_BC");
+                    break;
+            }
+        }
+    }
+
+    private int numSusceptibleCows(final int farm) {
+        return scenario.getHerdSize(farm) - scenario.getNumInfectedCows(farm);
+    }
+
+    private int numSusceptibleBadgers(final int reservoir) {
+        return scenario.getReservoirSize(reservoir) - scenario.getNumInfectedBadgers(reservoir);
+    }
+
+    /**
+     * The events of a single infected animal, created for a given infection status and location of the animal.
+     */
+    private static final class Entry {
+
+        Entry(final Object status, final int unit, final int capacity) {
+            this.status = status;
+            this.unit = unit;
+            this.events = new TransmissionEvent[capacity];
+            this.rates = new double[capacity];
+            this.size = 0;
+        }
+
+        void add(final TransmissionEvent event) {
+            events[size++] = event;
+        }
+
+        void addTo(final TransitionKernel kernel) {
+            for (int i = 0; i < size; i++) {
+                kernel.addToKernel(events[i], rates[i]);
+            }
+        }
+
+        private final Object status;
+        private final int unit;
+        private final TransmissionEvent[] events;
+        private final double[] rates;
+        private int size;
+        private long generation;
+    }
+
+    private final MyMonteCarloScenario scenario;
+    private final Map<Object, Entry> entries;
+    private final BitSet changedFarms;
+    private final BitSet changedReservoirs;
+    private long generation;
+}
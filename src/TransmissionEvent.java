@@ -0,0 +1,96 @@
+package btbcluster;
+
+import broadwick.stochastic.SimulationEvent;
+import broadwick.stochastic.SimulationState;
+import lombok.Getter;
+
+/**
+ * A transition of an infected animal: the progression of a cow's infection or the transmission of the infection from
+ * an animal to a farm or reservoir. The event only refers to its source animal, its route and the index of the target
+ * unit; the events are created once for each infected animal (and its infection status and location) and kept by the
+ * TransitionKernelCache, and MyAmountManager performs them according to their route.
+ * <p>
+ * The final state of the event is the cow itself for a progression and a shared state for a new infection; they are
+ * equal to (and have the same hash as) the cow, or new infected animal, that used to be created for each event so
+ * that the kernel treats the events as it always has.
+ */
+public class TransmissionEvent extends SimulationEvent {
+
+    /**
+     * Create the event.
+     * @param source the infected animal.
+     * @param route  the route of the transition.
+     * @param target the index of the farm or reservoir the route leads to.
+     */
+    TransmissionEvent(final SimulationState source, final Route route, final int target) {
+        super(source, finalStateOf(source, route));
+        this.route = route;
+        this.target = target;
+    }
+
+    private static SimulationState finalStateOf(final SimulationState source, final Route route) {
+        switch (route) {
+            case COW_TO_COW:
+            case BADGER_TO_COW:
+                return NewInfection.COW;
+            case COW_TO_BADGER:
+            case BADGER_TO_BADGER:
+                return NewInfection.BADGER;
+            default:
+                return source;
+        }
+    }
+
+    /**
+     * The type of transition an event describes, this determines how its rate is calculated and how it is performed.
+     */
+    public enum Route {
+        EXPOSED_TO_TESTSENSITIVE,
+        TESTSENSITIVE_TO_INFECTIOUS,
+        COW_TO_COW,
+        COW_TO_BADGER,
+        BADGER_TO_BADGER,
+        BADGER_TO_COW;
+    }
+
+    /**
+     * The (shared) final state of the events that infect a new animal, since susceptible animals are not tracked the
+     * new animal has no id until the event is performed.
+     */
+    private static final class NewInfection implements SimulationState {
+
+        private NewInfection(final String species) {
+            this.species = species;
+        }
+
+        @Override
+        public String getStateName() {
+            return "new infected " + species;
+        }
+
+        @Override
+        public String toString() {
+            return getStateName();
+        }
+
+        @Override
+        public int hashCode() {
+            // the hash of the (empty) id of the animals that were created for these events.
+            return "".hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof NewInfection && ((NewInfection) obj).species.equals(species);
+        }
+
+        private final String species;
+        private static final NewInfection COW = new NewInfection("cow");
+        private static final NewInfection BADGER = new NewInfection("badger");
+    }
+
+    @Getter
+    private final Route route;
+    @Getter
+    private final int target;
+}
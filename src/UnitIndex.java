@@ -0,0 +1,64 @@
+package btbcluster;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns the ids of the units (farms or reservoirs) in the simulation into dense integer indices. The indices are
+ * assigned in the order the ids are first added and are used to index the per-scenario state of the units; the ids
+ * themselves are only needed again when writing output.
+ */
+public class UnitIndex {
+
+    public UnitIndex() {
+        this.ids = new ArrayList<>();
+        this.indices = new HashMap<>();
+    }
+
+    /**
+     * Add a unit id to the index, if the id is already known its existing index is returned.
+     * @param id the id of the unit.
+     * @return the index of the unit.
+     */
+    public int add(final String id) {
+        Integer index = indices.get(id);
+        if (index == null) {
+            index = ids.size();
+            ids.add(id);
+            indices.put(id, index);
+        }
+        return index;
+    }
+
+    /**
+     * Get the index of a unit.
+     * @param id the id of the unit.
+     * @return the index of the unit or -1 if the id is not known.
+     */
+    public int indexOf(final String id) {
+        final Integer index = indices.get(id);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Get the id of the unit at a given index.
+     * @param index the index of the unit.
+     * @return the id of the unit.
+     */
+    public String getId(final int index) {
+        return ids.get(index);
+    }
+
+    /**
+     * Get the number of units in the index.
+     * @return the number of units.
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    private final List<String> ids;
+    private final Map<String, Integer> indices;
+}
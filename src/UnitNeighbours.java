@@ -0,0 +1,93 @@
+package btbcluster;
+
+/**
+ * The neighbours of each unit of one kind in the farm-reservoir contact network, e.g. the reservoirs each farm is
+ * attached to. The neighbours are stored in compressed sparse row form: the neighbours of every unit one after the
+ * other in a single array, with the position of the first neighbour of each unit, so they are walked without
+ * allocating or following references.
+ * <p>
+ * The neighbours of unit u are at positions getFirst(u) to getEnd(u) - 1, in the order the links were read.
+ */
+public class UnitNeighbours {
+
+    /**
+     * Create the neighbours from a list of links.
+     * @param numUnits   the number of units.
+     * @param units      the unit of each link.
+     * @param neighbours the neighbour of each link.
+     * @param numLinks   the number of links.
+     */
+    UnitNeighbours(final int numUnits, final int[] units, final int[] neighbours, final int numLinks) {
+        this.offsets = new int[numUnits + 1];
+        for (int i = 0; i < numLinks; i++) {
+            offsets[units[i] + 1]++;
+        }
+        for (int unit = 0; unit < numUnits; unit++) {
+            offsets[unit + 1] += offsets[unit];
+        }
+
+        // a (stable) counting sort of the links by unit.
+        this.neighbours = new int[numLinks];
+        final int[] next = new int[numUnits];
+        System.arraycopy(offsets, 0, next, 0, numUnits);
+        for (int i = 0; i < numLinks; i++) {
+            this.neighbours[next[units[i]]++] = neighbours[i];
+        }
+    }
+
+    /**
+     * Get the position of the first neighbour of a unit.
+     * @param unit the index of the unit.
+     * @return the position of the first neighbour.
+     */
+    public int getFirst(final int unit) {
+        return offsets[unit];
+    }
+
+    /**
+     * Get the position after the last neighbour of a unit.
+     * @param unit the index of the unit.
+     * @return the position after the last neighbour.
+     */
+    public int getEnd(final int unit) {
+        return offsets[unit + 1];
+    }
+
+    /**
+     * Get the neighbour at a position.
+     * @param position the position of the neighbour.
+     * @return the index of the neighbour.
+     */
+    public int get(final int position) {
+        return neighbours[position];
+    }
+
+    /**
+     * Get the number of neighbours of a unit.
+     * @param unit the index of the unit.
+     * @return the number of neighbours.
+     */
+    public int size(final int unit) {
+        return offsets[unit + 1] - offsets[unit];
+    }
+
+    /**
+     * Get the number of units.
+     * @return the number of units.
+     */
+    public int getNumUnits() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Get the total number of neighbours of all the units.
+     * @return the number of links.
+     */
+    public int getNumLinks() {
+        return neighbours.length;
+    }
+
+    // the neighbours of unit u are at positions offsets[u] to offsets[u + 1] - 1 of neighbours.
+    private final int[] offsets;
+    private final int[] neighbours;
+}
@@ -29,15 +29,17 @@ import broadwick.montecarlo.markovchain.SequentialMonteCarlo;
 import broadwick.montecarlo.markovchain.controller.MarkovChainMaxNumStepController;
 import broadwick.rng.RNG;
 import broadwick.statistics.distributions.IntegerDistribution;
-import broadwick.utils.Pair;
 import com.google.common.base.Throwables;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.StopWatch;
@@ -74,12 +76,22 @@ public class WPBtbClusterModel extends Model {
                     .setFilterShortMovements(this.getParameterValueAsBoolean("filterShortEpidemics"))
                     .setHerdSizeDistribution(readDistribution(this.getParameterValue("initialHerdSizes")))
                     .setReservoirSizeDistribution(readDistribution(this.getParameterValue("initialReservoirSizes")))
-                    .setCattleDeathDistribution(readBirthDeathDistributions(this.getParameterValue("CattleDeathDistribution")))
                     .setBadgerDeathRate(this.getParameterValueAsDouble("badgerDeathRate"))
                     .setSigma(this.getParameterValueAsDouble("sigma"))
                     .setCattleSamplingRate(readSamplingRatesPerYear(this.getParameterValue("CattleSamplingRatesPerYear")))
                     .setBadgerSamplingRate(readSamplingRatesPerYear(this.getParameterValue("BadgerSamplingRatesPerYear")))
                     .setObservedPairwiseDistanceDistribution(readDistribution(this.getParameterValue("observedPairwiseDistanceFile")))
+                    .setIncrementalKernel(this.hasParameter("incrementalKernel") && this.getParameterValueAsBoolean("incrementalKernel"))
+                    .setCheckIncrementalKernel(this.hasParameter("checkIncrementalKernel") && this.getParameterValueAsBoolean("checkIncrementalKernel"))
+                    .setOverlayMutations(this.hasParameter("overlayMutations") && this.getParameterValueAsBoolean("overlayMutations"))
+                    .setCalibrationOnly(this.hasParameter("calibrationOnly") && this.getParameterValueAsBoolean("calibrationOnly"))
+                    .setColumnarOutput(this.hasParameter("columnarOutput") && this.getParameterValueAsBoolean("columnarOutput"))
+                    .setOutputProfile(new OutputProfile(
+                            this.hasParameter("outputProfile") ? this.getParameterValue("outputProfile") : "full",
+                            this.hasParameter("outputStreams") ? this.getParameterValue("outputStreams") : "",
+                            this.hasParameter("recordFraction") ? this.getParameterValueAsDouble("recordFraction") : 1.0,
+                            this.hasParameter("recordAcceptedStepsOnly") && this.getParameterValueAsBoolean("recordAcceptedStepsOnly")))
+                    .setFocusedMovements(this.hasParameter("focusedMovements") && this.getParameterValueAsBoolean("focusedMovements"))
                     .setSeed(this.getParameterValueAsInteger("seed"));
 
             if (settings.getStartDate() > settings.getEndDate()) {
@@ -92,35 +104,36 @@ public class WPBtbClusterModel extends Model {
                                                                  this.getParameterValue("startDateMovements"), this.getParameterValue("endDateMovements")));
             }
 
-            // We create lookups of farm-infected cattle, reservoir-infected badgers which will be cloned and given to 
-            // each scenario.
-            farmInfections = new HashMap<>();
-            reservoirInfections = new HashMap<>();
-            infectedCows = new HashMap<>();
-            infectedBadgers = new HashMap<>();
-            connectedReservoirs = new HashMap<>();
+            // The network topology is shared (read-only) by every scenario. The ids of the farms and reservoirs are
+            // interned into dense indices as they are read, everything after this refers to a farm or reservoir by
+            // its index.
+            topology = new NetworkTopology();
 
             readFarmData(); // assign to farms
-            log.trace("Farms {}", farms.toString());
+            log.trace("Farms {}", topology.getFarmIndex().size());
+
+            // The slaughterhouse moves refer to the farms so we can only read them now.
+            settings.setSlaughterSchedule(readBirthDeathDistributions(this.getParameterValue("CattleDeathDistribution")));
 
             // Read the list of movements and update the cattle movement distribution for each farm.
             // DB: [numM] record the return value, pass to scenario
             numCattleMovements = readMovementFrequencies("Cattle");
-            log.trace("Cattle Movements {}", settings.getCattleMovementFrequencies().toString());
+            log.trace("Cattle Movements {}", topology.getCattleMovements().toString());
 
             
             readReservoirData(); // assign to reservoirs
-            log.trace("Reservoirs {}", reservoirs.toString());
+            log.trace("Reservoirs {}", topology.getReservoirIndex().size());
             
             // Read the list of movements and update the badger movement distribution for each reservoir.
             // DB: [numM] record the return value, pass to scenario
             numBadgerMovements = readMovementFrequencies("Badger");
-            log.trace("Badger Movements {}", settings.getBadgerMovementFrequencies().toString());
+            log.trace("Badger Movements {}", topology.getBadgerMovements().toString());
+            topology.createMovementSamplers();
 
             // Read the reservoir to farm network
             readReservoirDefinitions(this.getParameterValue("reservoirLocations"));
 //            settings.setReservoirData(reservoirs);
-            settings.setFarmReservoirs(connectedReservoirs);
+            log.info("Network {}", topology);
             
         } catch (IllegalArgumentException | BroadwickException ex) {
             log.error("Error initialising BtbIbmClusterDynamics. {}", ex.getLocalizedMessage());
@@ -163,16 +176,30 @@ public class WPBtbClusterModel extends Model {
 //            pathGenerator = new MonteCarloAMPathGenerator(this.getPriors(),
 //                                                              this.getParameterValueAsDouble("percentageDeviation"),
 //                                                              generator);
+            // The numScenarios replicates of each step are run as a single batch on a pool of numThreads threads
+            // (by default one per processor), the sequential Monte Carlo sees the batch as a single scenario.
+            final int numScenarios = this.getParameterValueAsInteger("numScenarios");
+            final int numThreads = Math.max(1, Math.min(numScenarios,
+                    this.hasParameter("numThreads") ? this.getParameterValueAsInteger("numThreads")
+                    : Runtime.getRuntime().availableProcessors()));
+            executor = Executors.newFixedThreadPool(numThreads);
+            log.info("Running {} scenarios per step on {} threads", numScenarios, numThreads);
+
+            // the records (tests, movements, infected animals...) of the scenarios are written to the files of their
+            // chain as each step finishes rather than being kept until the end of the run, each scenario of the run
+            // has its own id.
+            log.info("Output profile {}", settings.getOutputProfile());
+
             // DB: [numM] pass numCattleMovements
-            MonteCarloScenario scenario = new MyMonteCarloScenario(null, settings, farms, reservoirs,
-                                                                   farmInfections, reservoirInfections,
-                                                                   infectedCows, infectedBadgers,
-                                                                   numCattleMovements, numBadgerMovements);
+            MonteCarloScenario scenario = new MyMonteCarloScenarioBatch(null, settings, topology,
+                                                                        numCattleMovements, numBadgerMovements,
+                                                                        numScenarios, executor,
+                                                                        new AtomicInteger());
             SequentialMonteCarlo smc = new SequentialMonteCarlo(
                     this.getPriors(),
                     this.getParameterValueAsInteger("numParticles"),
                     scenario,
-                    this.getParameterValueAsInteger("numScenarios"),
+                    1,
                     new MyMonteCarloScenarioResults(settings.getObservedPairwiseDistanceDistribution()),
                     new MarkovChainMaxNumStepController(this.getParameterValueAsInteger("numMcSteps")),
                     pathGenerator,
@@ -205,12 +232,18 @@ public class WPBtbClusterModel extends Model {
 
             MyMarkovChainObserver myMcObserver = new MyMarkovChainObserver(this.getParameterValue("transmissionNetworkFile"),
                                                                            this.getParameterValue("observedTransmissionNetworkFile"),
-                                                                           this.getParameterValue("snpDistanceDistributionFile"));
+                                                                           this.getParameterValue("snpDistanceDistributionFile"),
+                                                                           settings.getOutputProfile(),
+                                                                           settings.isColumnarOutput());
             smc.addParticleObserver(myMcObserver);
             smc.run();
 
         } catch (NumberFormatException e) {
             log.error("Found error running scenarios. {}", Throwables.getStackTraceAsString(e));
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
         }
     }
 
@@ -219,20 +252,17 @@ public class WPBtbClusterModel extends Model {
     }
 
     /**
-     * Read the farm data. Right now it is just a list of the ids of the farms in the simulation.
-     * @return a lookup table of farm id to the farm object.
+     * Read the farm data. Right now it is just a list of the ids of the farms in the simulation, each farm is given
+     * an index in the order it is read.
      */
     private void readFarmData() {
-        farms = new HashMap<>();
         try {
             log.info("Reading Farm data from {}", this.getParameterValue("FarmData"));
             final FileInputIterator fle = new FileInput(this.getParameterValue("FarmData")).iterator();
             while (fle.hasNext()) {
                 final String[] split = fle.next().split(",");
                 final String id = split[0].trim();
-                farms.put(id, new Farm(id));
-                farmInfections.put(id, new ArrayList<>());
-                connectedReservoirs.put(id, new ArrayList<>());
+                topology.addFarm(id);
             }
         } catch (IOException e) {
             log.error("Could not create farm lookup table {}", Throwables.getStackTraceAsString(e));
@@ -240,11 +270,10 @@ public class WPBtbClusterModel extends Model {
     }
 
     /**
-     * Read the reservoir data. Right now it is just a list of the ids of the reservoirs in the simulation.
-     * @return a lookup table of farm id to the farm object.
+     * Read the reservoir data. Right now it is just a list of the ids of the reservoirs in the simulation, each
+     * reservoir is given an index in the order it is read.
      */
     private void readReservoirData() {
-        reservoirs = new HashMap<>();
         try {
             log.info("Reading Reservoir data from {}", this.getParameterValue("ReservoirData"));
             final FileInputIterator fle = new FileInput(this.getParameterValue("ReservoirData")).iterator();
@@ -252,14 +281,39 @@ public class WPBtbClusterModel extends Model {
                 final String[] split = fle.next().split(",");
                 final String id = split[0].trim();
 //                final String id = String.format("RESERVOIR_%03d", Integer.parseInt(split[0].trim()));
-                reservoirs.put(id, new Reservoir(id));
-                reservoirInfections.put(id, new ArrayList<>());
+                topology.addReservoir(id);
             }
         } catch (IOException e) {
             log.error("Could not create farm lookup table {}", Throwables.getStackTraceAsString(e));
         }
     }
 
+    /**
+     * Get the index of a farm.
+     * @param id the id of the farm.
+     * @return the index of the farm.
+     */
+    private int farmIndexOf(final String id) {
+        final int index = topology.getFarmIndex().indexOf(id);
+        if (index < 0) {
+            throw new BroadwickException(String.format("Unknown farm %s", id));
+        }
+        return index;
+    }
+
+    /**
+     * Get the index of a reservoir.
+     * @param id the id of the reservoir.
+     * @return the index of the reservoir.
+     */
+    private int reservoirIndexOf(final String id) {
+        final int index = topology.getReservoirIndex().indexOf(id);
+        if (index < 0) {
+            throw new BroadwickException(String.format("Unknown reservoir %s", id));
+        }
+        return index;
+    }
+
     /**
      * Read the movement frequencies. The movement frequency data contains the ids of the farms and the number of
      * animals moved in each movement, the data is in the format departure-destination n1,n2,n3,n4,n5 etc
@@ -281,15 +335,17 @@ public class WPBtbClusterModel extends Model {
                     // ignore self moves - if they are legitimate moves then they would probably be
                     // covered by CTS links so would not be tested!
                     if (species.equals("Cattle")) {
-                        settings.getCattleMovementFrequencies().add(new Pair<>(unitIds[0], unitIds[1]));
+                        final int departure = farmIndexOf(unitIds[0]);
+                        topology.getCattleMovements().add(departure, farmIndexOf(unitIds[1]));
                         for (int num : numAnimalsMoved) {
-                            farms.get(unitIds[0]).getOffMovementDistribution().setFrequency(num);
+                            topology.getFarm(departure).getOffMovementDistribution().setFrequency(num);
                             numMoves += num;
                         }
                     } else if (species.equals("Badger")) {
-                        settings.getBadgerMovementFrequencies().add(new Pair<>(unitIds[0], unitIds[1]));
+                        final int departure = reservoirIndexOf(unitIds[0]);
+                        topology.getBadgerMovements().add(departure, reservoirIndexOf(unitIds[1]));
                         for (int num : numAnimalsMoved) {
-                            reservoirs.get(unitIds[0]).getOffMovementDistribution().setFrequency(num);
+                            topology.getReservoir(departure).getOffMovementDistribution().setFrequency(num);
                             numMoves += num;
                         }
                     }
@@ -338,12 +394,12 @@ public class WPBtbClusterModel extends Model {
      * Read the file containing the distribution of dates farms move animals to slaughter (this file contains also
      * known animals date of death in the cases this isn't a slaughter - no account is made of the difference).
      * @param distributionFilename the name of the file containing the distribution.
-     * @return the distribution (date:Collection(farm ids)).
+     * @return the moves to slaughter in each step of the simulation.
      */
-    private Map<Integer, Collection<String>> readBirthDeathDistributions(final String distributionFilename) {
+    private SlaughterSchedule readBirthDeathDistributions(final String distributionFilename) {
         log.debug("Reading B/D distribution from  {} ", distributionFilename);
 
-        final Map<Integer, Collection<String>> dist = new HashMap<>();
+        final Map<Integer, int[]> dist = new HashMap<>();
         try {
             final FileInputIterator distribIterator = (new FileInput(distributionFilename)).iterator();
             while (distribIterator.hasNext()) {
@@ -352,15 +408,22 @@ public class WPBtbClusterModel extends Model {
                     final String[] tokens = line.split(":");
                     int date = Integer.parseInt(tokens[0].trim());
                     if (date >= settings.getStartDate() && date <= settings.getEndDate()) {
-                        List<String> unitIds = Arrays.asList(tokens[1].trim().split(","));
-                        dist.put(date, unitIds);
+                        final int[] units = Arrays.stream(tokens[1].trim().split(","))
+                                .mapToInt(this::farmIndexOf)
+                                .toArray();
+                        dist.put(date, units);
                     }
                 }
             }
         } catch (IOException e) {
             log.error("Could not read distribution from {}", distributionFilename);
         }
-        return dist;
+
+        // bucket the moves into the steps of the simulation now so that each step only walks its own moves.
+        final SlaughterSchedule schedule = new SlaughterSchedule(dist, settings.getStartDate(), settings.getEndDate(),
+                                                                 settings.getStepSize(), topology.getNumFarms());
+        log.debug("Read {} moves to slaughter ({} farm-steps)", dist.size(), schedule.size());
+        return schedule;
     }
 
     /**
@@ -404,16 +467,16 @@ public class WPBtbClusterModel extends Model {
             while (fle.hasNext()) {
                 final String[] split = fle.next().split(":");
                 final String reservoirId = Integer.toString(Integer.parseInt(split[0].split("_")[1]));
-                String[] connectedFarms = split[1].split(",");
-                Reservoir reservoir = reservoirs.get(reservoirId);
-                reservoir.getConnectedFarms().addAll(Arrays.asList(connectedFarms));
-                for (String connectedFarm : connectedFarms) {
-                    connectedReservoirs.get(connectedFarm.trim()).add(reservoir);
-                }
+                final int reservoir = reservoirIndexOf(reservoirId);
+                final int[] connectedFarms = Arrays.stream(split[1].split(","))
+                        .mapToInt(farmId -> farmIndexOf(farmId.trim()))
+                        .toArray();
+                topology.connect(reservoir, connectedFarms);
             }
         } catch (IOException e) {
             log.error("Could not read reservoir definitions from {}", network);
         }
+        topology.createContactNetwork();
     }
     
     /**
@@ -424,35 +487,31 @@ public class WPBtbClusterModel extends Model {
      */
     private void readReservoirDefinitions_AOH(final String network) {
         log.info("Reading reservoir definition from  {} ", network);
-        reservoirs = new HashMap<>();
+        final BitSet farmsWithReservoirs = new BitSet();
         try {
             final FileInputIterator fle = new FileInput(network).iterator();
             while (fle.hasNext()) {
 
                 final String[] split = fle.next().split(":");
                 final String reservoirId = split[0];
-                Reservoir newReservoir = new Reservoir(reservoirId);
-                String[] connectedFarms = split[1].split(",");
-                newReservoir.getConnectedFarms().addAll(Arrays.asList(connectedFarms));
-                for (String connectedFarm : connectedFarms) {
-                    connectedReservoirs.get(connectedFarm.trim()).add(newReservoir);
+                topology.addReservoir(reservoirId);
+                final int reservoir = topology.getReservoirIndex().indexOf(reservoirId);
+                final int[] connectedFarms = Arrays.stream(split[1].split(","))
+                        .mapToInt(farmId -> farmIndexOf(farmId.trim()))
+                        .toArray();
+                topology.connect(reservoir, connectedFarms);
+                for (int farm : connectedFarms) {
+                    farmsWithReservoirs.set(farm);
                 }
-                reservoirInfections.put(reservoirId, new ArrayList<>());
-                // and create the list of infected badgers in this reservoir
-                reservoirs.put(reservoirId, newReservoir);
             }
 
             // Now add connectedReservoirs to those farms without one.
             int reservoirId = 0;
-            for (Map.Entry<String, Collection<Reservoir>> entry : connectedReservoirs.entrySet()) {
-                if (connectedReservoirs.get(entry.getKey()).isEmpty()) {
+            for (int farm = 0; farm < topology.getNumFarms(); farm++) {
+                if (!farmsWithReservoirs.get(farm)) {
                     final String id = String.format("RESERVOIR_X%07d", ++reservoirId);
-                    Reservoir newReservoir = new Reservoir(id);
-                    newReservoir.getConnectedFarms().add(entry.getKey());
-                    // and create the list of infected badgers in this reservoir
-                    reservoirInfections.put(id, new ArrayList<InfectedBadger>());
-                    reservoirs.put(id, newReservoir);
-                    connectedReservoirs.get(entry.getKey()).add(newReservoir);
+                    topology.addReservoir(id);
+                    topology.connect(topology.getReservoirIndex().indexOf(id), new int[]{farm});
                 }
             }
 
@@ -460,17 +519,13 @@ public class WPBtbClusterModel extends Model {
         } catch (IOException e) {
             log.error("Could not read reservoir definitions from {}", network);
         }
+        topology.createContactNetwork();
     }
 
     private ProjectSettings settings;
-    private Map<String, Farm> farms;
-    private Map<String, Reservoir> reservoirs;
-    private Map<String, Collection<InfectedCow>> farmInfections;
-    private Map<String, Collection<InfectedBadger>> reservoirInfections;
-    private Map<String, InfectedCow> infectedCows;
-    private Map<String, InfectedBadger> infectedBadgers;
-    private Map<String, Collection<Reservoir>> connectedReservoirs;   // Map<farmId, Collection<connected connectedReservoirs>>
+    private NetworkTopology topology;
     // DB: [numM] numCattleMovements
     private int numCattleMovements;
     private int numBadgerMovements;
+    private ExecutorService executor;
 }